@@ -0,0 +1,17 @@
+package com.augurworks.alfred;
+
+/**
+ * Sigmoid implementation a net's neurons use.
+ */
+public enum Activation {
+    /**
+     * Math.exp based sigmoid.
+     */
+    SIGMOID,
+    /**
+     * Interpolated lookup table, see FastSigmoid for the error bound.
+     * Only primitive precision nets use it.
+     */
+    FAST_SIGMOID,
+    ;
+}
@@ -0,0 +1,108 @@
+package com.augurworks.alfred;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.commons.lang3.Validate;
+
+import com.augurworks.alfred.util.TextBuffer;
+
+/**
+ * Results of a trained net, row for row what the augout file holds: the
+ * training rows with their target and estimate, then the prediction rows
+ * with their estimate. Values are on the scale of the training targets.
+ */
+public class Augout {
+
+    private static final int CHUNK_BYTES = 8192;
+
+    // training rows, then prediction rows
+    private final String[] dates;
+    // one per training row
+    private final double[] targets;
+    // one per row, in the order of dates
+    private final double[] estimates;
+
+    public Augout(String[] dates, double[] targets, double[] estimates) {
+        Validate.isTrue(estimates.length == dates.length, "Expected an estimate per date");
+        Validate.isTrue(targets.length <= dates.length, "More targets than dates");
+        this.dates = dates;
+        this.targets = targets;
+        this.estimates = estimates;
+    }
+
+    public int getTrainRows() {
+        return targets.length;
+    }
+
+    public int getPredictionRows() {
+        return dates.length - targets.length;
+    }
+
+    public String[] getDates() {
+        return dates;
+    }
+
+    public double[] getTargets() {
+        return targets;
+    }
+
+    public double[] getEstimates() {
+        return estimates;
+    }
+
+    /**
+     * The augout file: date, target, estimate and error for training rows,
+     * NULL in place of the target and error for prediction rows.
+     */
+    public String toText() {
+        TextBuffer text = new TextBuffer(estimatedTextLength());
+        writeTo(text);
+        return text.toString();
+    }
+
+    /**
+     * Appends the augout file to text.
+     */
+    public void writeTo(TextBuffer text) {
+        for (int i = 0; i < dates.length; i++) {
+            writeLine(text, i);
+        }
+    }
+
+    /**
+     * Streams the augout file to out a chunk at a time.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        TextBuffer chunk = new TextBuffer(CHUNK_BYTES);
+        for (int i = 0; i < dates.length; i++) {
+            writeLine(chunk, i);
+            if (chunk.size() >= CHUNK_BYTES - 128) {
+                chunk.flushTo(out);
+            }
+        }
+        chunk.flushTo(out);
+    }
+
+    /**
+     * Roughly the length of the augout file, enough for most to be written
+     * without growing a buffer.
+     */
+    public int estimatedTextLength() {
+        return dates.length * 64;
+    }
+
+    private void writeLine(TextBuffer text, int row) {
+        text.append(dates[row]).append(' ');
+        if (row < targets.length) {
+            text.append(targets[row]).append(' ');
+            text.append(estimates[row]).append(' ');
+            text.append(Math.abs(targets[row] - estimates[row]));
+        } else {
+            text.append("NULL").append(' ');
+            text.append(estimates[row]).append(' ');
+            text.append("NULL");
+        }
+        text.append('\n');
+    }
+}
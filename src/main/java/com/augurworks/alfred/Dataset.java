@@ -0,0 +1,286 @@
+package com.augurworks.alfred;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Rows of a training file stored by column: every row's inputs back to back
+ * in one row-major double[], the targets in another and the dates in a
+ * column of their own. Row i's inputs are inputs[i * side, (i + 1) * side).
+ *
+ * Dates that are all plain ISO days (2016-01-31) are kept as epoch days and
+ * turned back into the same text on request, anything else is kept as
+ * given.
+ *
+ * A dataset never changes after it is built. getInputs and getTargets hand
+ * out the backing arrays, which must not be modified.
+ */
+public class Dataset {
+
+    private final int side;
+    private final int size;
+    private final double[] inputs;
+    // null for prediction rows, which have no target
+    private final double[] targets;
+    // exactly one of epochDays and dates is set
+    private final int[] epochDays;
+    private final String[] dates;
+
+    private Dataset(int side, int size, double[] inputs, double[] targets, int[] epochDays, String[] dates) {
+        this.side = side;
+        this.size = size;
+        this.inputs = inputs;
+        this.targets = targets;
+        this.epochDays = epochDays;
+        this.dates = dates;
+    }
+
+    public static class Builder {
+
+        private static final int INITIAL_ROWS = 64;
+
+        private final int side;
+        private final boolean hasTargets;
+        private double[] inputs;
+        private double[] targets;
+        private int[] epochDays;
+        private String[] dates;
+        private int size;
+
+        /**
+         * Builder for rows of side inputs, with a target per row unless
+         * hasTargets is false.
+         */
+        public Builder(int side, boolean hasTargets) {
+            Validate.isTrue(side >= 1, "Side must be >= 1");
+            this.side = side;
+            this.hasTargets = hasTargets;
+            this.inputs = new double[INITIAL_ROWS * side];
+            this.targets = hasTargets ? new double[INITIAL_ROWS] : null;
+            this.epochDays = new int[INITIAL_ROWS];
+        }
+
+        /**
+         * Appends a row, inputs is copied so the caller may reuse it.
+         */
+        public Builder add(String date, double target, double[] inputs) {
+            Validate.isTrue(this.hasTargets, "Rows of this dataset have no target");
+            ensureCapacity();
+            this.targets[this.size] = target;
+            return append(date, inputs);
+        }
+
+        /**
+         * Appends a row without a target, inputs is copied so the caller may
+         * reuse it.
+         */
+        public Builder add(String date, double[] inputs) {
+            Validate.isTrue(!this.hasTargets, "Rows of this dataset need a target");
+            ensureCapacity();
+            return append(date, inputs);
+        }
+
+        private Builder append(String date, double[] inputs) {
+            Validate.isTrue(inputs.length == this.side, "Expected %d inputs, got %d", this.side, inputs.length);
+            System.arraycopy(inputs, 0, this.inputs, this.size * this.side, this.side);
+            if (this.epochDays != null) {
+                long epochDay = parseIsoDay(date);
+                if (epochDay == Long.MIN_VALUE) {
+                    switchToStrings();
+                } else {
+                    this.epochDays[this.size] = (int) epochDay;
+                }
+            }
+            if (this.dates != null) {
+                this.dates[this.size] = date;
+            }
+            this.size++;
+            return this;
+        }
+
+        private void ensureCapacity() {
+            int capacity = this.hasTargets ? this.targets.length : this.inputs.length / this.side;
+            if (this.size < capacity) {
+                return;
+            }
+            int newCapacity = Math.max(capacity + (capacity >> 1), INITIAL_ROWS);
+            this.inputs = Arrays.copyOf(this.inputs, newCapacity * this.side);
+            if (this.hasTargets) {
+                this.targets = Arrays.copyOf(this.targets, newCapacity);
+            }
+            if (this.epochDays != null) {
+                this.epochDays = Arrays.copyOf(this.epochDays, newCapacity);
+            } else {
+                this.dates = Arrays.copyOf(this.dates, newCapacity);
+            }
+        }
+
+        /**
+         * Falls back to keeping dates as text once one isn't an ISO day.
+         */
+        private void switchToStrings() {
+            this.dates = new String[this.epochDays.length];
+            for (int i = 0; i < this.size; i++) {
+                this.dates[i] = LocalDate.ofEpochDay(this.epochDays[i]).toString();
+            }
+            this.epochDays = null;
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        /**
+         * The targets added so far, trimmed to size. Null if the rows have
+         * no target.
+         */
+        public double[] getTargets() {
+            return this.hasTargets ? Arrays.copyOf(this.targets, this.size) : null;
+        }
+
+        public Dataset build() {
+            return build(getTargets());
+        }
+
+        /**
+         * Builds the dataset with targets in place of the ones added, for
+         * instance after scaling them.
+         */
+        public Dataset build(double[] targets) {
+            Validate.isTrue(this.hasTargets == (targets != null), "Targets don't match the rows");
+            Validate.isTrue(targets == null || targets.length == this.size, "Expected %d targets", this.size);
+            return new Dataset(this.side, this.size,
+                    Arrays.copyOf(this.inputs, this.size * this.side),
+                    targets,
+                    this.epochDays == null ? null : Arrays.copyOf(this.epochDays, this.size),
+                    this.dates == null ? null : Arrays.copyOf(this.dates, this.size));
+        }
+    }
+
+    /**
+     * Epoch day of a yyyy-MM-dd date, Long.MIN_VALUE if date is anything
+     * else. Only dates LocalDate prints back exactly as given qualify.
+     */
+    public static long parseIsoDay(String date) {
+        if (date.length() != 10 || date.charAt(4) != '-' || date.charAt(7) != '-') {
+            return Long.MIN_VALUE;
+        }
+        int year = digits(date, 0, 4);
+        int month = digits(date, 5, 7);
+        int day = digits(date, 8, 10);
+        if (year < 0 || month < 0 || day < 0) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return LocalDate.of(year, month, day).toEpochDay();
+        } catch (DateTimeException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    public int getSide() {
+        return this.side;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean hasTargets() {
+        return this.targets != null;
+    }
+
+    /**
+     * Every row's inputs, row-major. Must not be modified.
+     */
+    public double[] getInputs() {
+        return this.inputs;
+    }
+
+    /**
+     * Offset of the row's first input in getInputs().
+     */
+    public int offset(int row) {
+        return row * this.side;
+    }
+
+    public double getInput(int row, int column) {
+        return this.inputs[row * this.side + column];
+    }
+
+    /**
+     * One target per row, must not be modified. Null if the rows have no
+     * target.
+     */
+    public double[] getTargets() {
+        return this.targets;
+    }
+
+    public double getTarget(int row) {
+        return this.targets[row];
+    }
+
+    public String getDate(int row) {
+        if (this.epochDays != null) {
+            return LocalDate.ofEpochDay(this.epochDays[row]).toString();
+        }
+        return this.dates[row];
+    }
+
+    /**
+     * The row as a legacy InputsAndTarget, with a null target if the rows
+     * have none.
+     */
+    public InputsAndTarget get(int row) {
+        if (row < 0 || row >= this.size) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + this.size);
+        }
+        BigDecimal[] rowInputs = new BigDecimal[this.side];
+        int offset = row * this.side;
+        for (int i = 0; i < this.side; i++) {
+            rowInputs[i] = BigDecimal.valueOf(this.inputs[offset + i]);
+        }
+        BigDecimal target = this.targets == null ? null : BigDecimal.valueOf(this.targets[row]);
+        return new InputsAndTarget(getDate(row), target, rowInputs);
+    }
+
+    /**
+     * Read-only List view of the rows, each built by get(int) when it is
+     * read, for code that still works on InputsAndTarget.
+     */
+    public List<InputsAndTarget> asList() {
+        return new RowList();
+    }
+
+    private class RowList extends AbstractList<InputsAndTarget> implements RandomAccess {
+
+        @Override
+        public InputsAndTarget get(int index) {
+            return Dataset.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return Dataset.this.size;
+        }
+    }
+}
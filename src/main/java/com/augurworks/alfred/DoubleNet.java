@@ -0,0 +1,619 @@
+package com.augurworks.alfred;
+
+import com.augurworks.alfred.util.FastSigmoid;
+import org.apache.commons.lang3.Validate;
+
+import java.util.Random;
+
+/**
+ * Primitive double version of the {@link FixedNeuron} grid used by
+ * {@link RectNetFixed}. Same topology and same back-propagation rules, but
+ * every multiply and add happens on doubles instead of allocating a new
+ * BigDecimal.
+ *
+ * Weights live in a {@link NetWeights}, and the per-neuron state (last
+ * output, back-propagated delta) lives in one vector per column, so the
+ * training loops walk contiguous arrays.
+ *
+ * For mini-batch training the same state is kept per sample in row-major
+ * batch x side matrices, so each layer of a batch is one matrix-matrix
+ * multiply and each batch applies one averaged weight update.
+ *
+ * Very wide nets can split each layer of the per-row passes across cores
+ * with a {@link LayerSplitter}.
+ */
+class DoubleNet implements PrimitiveNet {
+
+    // Weight rows per tile in the batch loops. A tile of a side 100 net is
+    // 12.8KB, small enough to stay in L1 while every sample streams past it.
+    private static final int TILE_ROWS = 16;
+
+    private final int side;
+    private final int depth;
+    private final int batchSize;
+    private final boolean fastSigmoid;
+    // Null unless the net is wide enough to split layers across cores.
+    private final LayerSplitter layerSplitter;
+    // Splits of the three per-row layer loops, null with no splitter. They
+    // are built once and read the layer they work on from the split fields.
+    private final LayerSplitter.Split forwardSplit;
+    private final LayerSplitter.Split backwardSplit;
+    private final LayerSplitter.Split updateSplit;
+    private double[] splitBlock;
+    private double[] splitIns;
+    private double[] splitOuts;
+    private double[] splitDeltas;
+    private double splitLearningConstant;
+
+    private final NetWeights weights;
+    private final double[] inputs;
+    // Indexed as [col][row].
+    private final double[][] activations;
+    private final double[][] deltas;
+    private double lastOutput;
+    // Indexed as [col][sample * side + row], only allocated when batchSize > 1.
+    private final double[][] batchActivations;
+    private final double[][] batchDeltas;
+    private final double[] batchOutputDeltas;
+    // Summed weight changes for synchronous data-parallel training, only
+    // allocated once a gradient is accumulated.
+    private NetWeights gradient;
+
+    DoubleNet(int side, int depth) {
+        this(side, depth, 1, Activation.SIGMOID);
+    }
+
+    DoubleNet(int side, int depth, int batchSize, Activation activation) {
+        this(side, depth, batchSize, activation, new Random());
+    }
+
+    DoubleNet(int side, int depth, int batchSize, Activation activation, Random random) {
+        this(side, depth, batchSize, activation, random, null);
+    }
+
+    DoubleNet(int side, int depth, int batchSize, Activation activation, Random random,
+            LayerSplitter layerSplitter) {
+        this(new NetWeights(side, depth), batchSize, activation == Activation.FAST_SIGMOID, layerSplitter);
+        init(random);
+    }
+
+    private DoubleNet(NetWeights weights, int batchSize, boolean fastSigmoid, LayerSplitter layerSplitter) {
+        Validate.isTrue(batchSize >= 1);
+        this.side = weights.getSide();
+        this.depth = weights.getDepth();
+        this.batchSize = batchSize;
+        this.fastSigmoid = fastSigmoid;
+        this.layerSplitter = layerSplitter;
+        this.weights = weights;
+        this.inputs = new double[side];
+        this.activations = new double[depth][side];
+        this.deltas = new double[depth][side];
+        if (batchSize > 1) {
+            this.batchActivations = new double[depth][batchSize * side];
+            this.batchDeltas = new double[depth][batchSize * side];
+            this.batchOutputDeltas = new double[batchSize];
+        } else {
+            this.batchActivations = null;
+            this.batchDeltas = null;
+            this.batchOutputDeltas = null;
+        }
+        if (layerSplitter != null) {
+            this.forwardSplit = layerSplitter.split(side,
+                    (from, to) -> forwardRange(splitBlock, splitIns, splitOuts, from, to));
+            this.backwardSplit = layerSplitter.split(side,
+                    (from, to) -> backwardRange(splitBlock, splitDeltas, splitOuts, splitIns, from, to));
+            this.updateSplit = layerSplitter.split(side,
+                    (from, to) -> updateRange(splitBlock, splitDeltas, splitIns, splitLearningConstant, from, to));
+        } else {
+            this.forwardSplit = null;
+            this.backwardSplit = null;
+            this.updateSplit = null;
+        }
+    }
+
+    /**
+     * First column neurons see one input each with a fixed weight of 1, every
+     * other connection starts at initNum().
+     */
+    private void init(Random random) {
+        double[] inputBlock = this.weights.getBlock(0);
+        for (int j = 0; j < side; j++) {
+            inputBlock[j] = 1.0;
+        }
+        for (int col = 1; col <= depth; col++) {
+            double[] block = this.weights.getBlock(col);
+            for (int k = 0; k < block.length; k++) {
+                block[k] = initNum(random);
+            }
+        }
+    }
+
+    private double initNum(Random random) {
+        return (random.nextDouble() - .5) * 1.0;
+    }
+
+    NetWeights getWeights() {
+        return weights;
+    }
+
+    @Override
+    public DoubleNet fork() {
+        return new DoubleNet(this.weights, this.batchSize, this.fastSigmoid, this.layerSplitter);
+    }
+
+    @Override
+    public double getWeight(int leftCol, int leftRow, int rightCol, int rightRow) {
+        return this.weights.getWeight(leftCol, leftRow, rightCol, rightRow);
+    }
+
+    @Override
+    public void changeWeight(int leftCol, int leftRow, int rightCol, int rightRow, double dw) {
+        this.weights.changeWeight(leftCol, leftRow, rightCol, rightRow, dw);
+    }
+
+    @Override
+    public void copyWeightsTo(NetWeights target) {
+        copyBlocks(this.weights, target);
+    }
+
+    @Override
+    public void copyWeightsFrom(NetWeights source) {
+        copyBlocks(source, this.weights);
+    }
+
+    private void copyBlocks(NetWeights from, NetWeights to) {
+        Validate.isTrue(from.getSide() == side && from.getDepth() == depth
+                && to.getSide() == side && to.getDepth() == depth, "Weights must match the net's side and depth");
+        for (int col = 0; col <= depth; col++) {
+            System.arraycopy(from.getBlock(col), 0, to.getBlock(col), 0, from.getBlock(col).length);
+        }
+    }
+
+    @Override
+    public void setInputs(double[] inputs) {
+        Validate.isTrue(inputs.length == side);
+        setInputs(inputs, 0);
+    }
+
+    @Override
+    public void setInputs(double[] rows, int offset) {
+        System.arraycopy(rows, offset, this.inputs, 0, side);
+    }
+
+    @Override
+    public double getOutput() {
+        double[] inputBlock = this.weights.getBlock(0);
+        double[] first = this.activations[0];
+        for (int j = 0; j < side; j++) {
+            first[j] = sigmoid(inputBlock[j] * this.inputs[j]);
+        }
+        for (int col = 1; col < depth; col++) {
+            double[] block = this.weights.getBlock(col);
+            double[] ins = this.activations[col - 1];
+            double[] outs = this.activations[col];
+            if (this.forwardSplit != null) {
+                this.splitBlock = block;
+                this.splitIns = ins;
+                this.splitOuts = outs;
+                this.forwardSplit.run();
+            } else {
+                forwardRange(block, ins, outs, 0, side);
+            }
+        }
+        this.lastOutput = sigmoid(dot(this.weights.getBlock(depth), 0, this.activations[depth - 1], 0));
+        return this.lastOutput;
+    }
+
+    private void forwardRange(double[] block, double[] ins, double[] outs, int from, int to) {
+        for (int j = from; j < to; j++) {
+            outs[j] = sigmoid(dot(block, j * side, ins, 0));
+        }
+    }
+
+    private double dot(double[] a, int aOffset, double[] b, int bOffset) {
+        double sum = 0;
+        for (int k = 0; k < side; k++) {
+            sum += a[aOffset + k] * b[bOffset + k];
+        }
+        return sum;
+    }
+
+    /**
+     * y[yOffset..] += scale * x[xOffset..] over one row of side values.
+     */
+    private void axpy(double scale, double[] x, int xOffset, double[] y, int yOffset) {
+        axpy(scale, x, xOffset, y, yOffset, side);
+    }
+
+    private static void axpy(double scale, double[] x, int xOffset, double[] y, int yOffset, int length) {
+        for (int k = 0; k < length; k++) {
+            y[yOffset + k] += scale * x[xOffset + k];
+        }
+    }
+
+    /**
+     * Back-propagation step, see RectNetFixed.doIteration for the BigDecimal
+     * original this mirrors.
+     */
+    @Override
+    public double train(double[] rows, int offset, double desired, double learningConstant) {
+        setInputs(rows, offset);
+        double deltaF = getOutputError(desired);
+        double output = this.lastOutput;
+        computeInteriorDeltas(deltaF);
+        updateLastNeuronWeights(this.weights, learningConstant, deltaF);
+        updateInteriorNodeWeights(this.weights, learningConstant);
+        return output;
+    }
+
+    private double getOutputError(double desired) {
+        getOutput();
+        double last = this.lastOutput;
+        return RectNetFixed.SIGMOID_ALPHA * last * (1 - last) * (desired - last);
+    }
+
+    private void computeInteriorDeltas(double deltaF) {
+        int lastCol = depth - 1;
+        double[] outputBlock = this.weights.getBlock(depth);
+        for (int leftRow = 0; leftRow < side; leftRow++) {
+            double lastOutput = this.activations[lastCol][leftRow];
+            this.deltas[lastCol][leftRow] = RectNetFixed.SIGMOID_ALPHA * lastOutput * (1 - lastOutput)
+                    * (outputBlock[leftRow] * deltaF);
+        }
+        // Column 0 is skipped, its single input weight is never trained.
+        for (int leftCol = depth - 2; leftCol >= 1; leftCol--) {
+            double[] block = this.weights.getBlock(leftCol + 1);
+            double[] rightDeltas = this.deltas[leftCol + 1];
+            double[] leftDeltas = this.deltas[leftCol];
+            double[] leftOutputs = this.activations[leftCol];
+            if (this.backwardSplit != null) {
+                this.splitBlock = block;
+                this.splitDeltas = rightDeltas;
+                this.splitOuts = leftDeltas;
+                this.splitIns = leftOutputs;
+                this.backwardSplit.run();
+            } else {
+                backwardRange(block, rightDeltas, leftDeltas, leftOutputs, 0, side);
+            }
+        }
+    }
+
+    /**
+     * Deltas of left neurons [from, to).
+     */
+    private void backwardRange(double[] block, double[] rightDeltas, double[] leftDeltas, double[] leftOutputs,
+            int from, int to) {
+        // Walk the block row by row so reads stay sequential, the summed
+        // weight * delta for every left neuron in the range builds up at once.
+        for (int leftRow = from; leftRow < to; leftRow++) {
+            leftDeltas[leftRow] = 0;
+        }
+        for (int rightRow = 0; rightRow < side; rightRow++) {
+            axpy(rightDeltas[rightRow], block, rightRow * side + from, leftDeltas, from, to - from);
+        }
+        for (int leftRow = from; leftRow < to; leftRow++) {
+            double lastOutput = leftOutputs[leftRow];
+            leftDeltas[leftRow] = RectNetFixed.SIGMOID_ALPHA * lastOutput * (1 - lastOutput)
+                    * leftDeltas[leftRow];
+        }
+    }
+
+    /**
+     * Adds the output neuron's weight changes to target, either the weights
+     * themselves or a gradient.
+     */
+    private void updateLastNeuronWeights(NetWeights target, double learningConstant, double deltaF) {
+        double[] outputBlock = target.getBlock(depth);
+        double[] lastOutputs = this.activations[depth - 1];
+        axpy(learningConstant * deltaF, lastOutputs, 0, outputBlock, 0);
+    }
+
+    private void updateInteriorNodeWeights(NetWeights target, double learningConstant) {
+        for (int leftCol = depth - 2; leftCol >= 0; leftCol--) {
+            double[] block = target.getBlock(leftCol + 1);
+            double[] rightDeltas = this.deltas[leftCol + 1];
+            double[] leftOutputs = this.activations[leftCol];
+            if (this.updateSplit != null) {
+                this.splitBlock = block;
+                this.splitDeltas = rightDeltas;
+                this.splitIns = leftOutputs;
+                this.splitLearningConstant = learningConstant;
+                this.updateSplit.run();
+            } else {
+                updateRange(block, rightDeltas, leftOutputs, learningConstant, 0, side);
+            }
+        }
+    }
+
+    /**
+     * Weights feeding right neurons [from, to).
+     */
+    private void updateRange(double[] block, double[] rightDeltas, double[] leftOutputs, double learningConstant,
+            int from, int to) {
+        for (int rightRow = from; rightRow < to; rightRow++) {
+            axpy(learningConstant * rightDeltas[rightRow], leftOutputs, 0, block, rightRow * side);
+        }
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * One mini-batch step over rows [from, from + count). Runs the whole
+     * batch forward, back-propagates every sample against the same weights,
+     * then applies the averaged update once.
+     */
+    @Override
+    public double trainBatch(double[] rowInputs, double[] targets, int from, int count, double learningConstant) {
+        Validate.isTrue(count >= 1 && count <= batchSize);
+        forwardBatch(rowInputs, from, count);
+        double errorsSquared = computeBatchDeltas(targets, from, count);
+        updateBatchWeights(this.weights, learningConstant / count, count);
+        return errorsSquared;
+    }
+
+    private void forwardBatch(double[] rowInputs, int from, int count) {
+        double[] inputBlock = this.weights.getBlock(0);
+        double[] first = this.batchActivations[0];
+        for (int b = 0; b < count; b++) {
+            int rowOffset = (from + b) * side;
+            int offset = b * side;
+            for (int j = 0; j < side; j++) {
+                first[offset + j] = sigmoid(inputBlock[j] * rowInputs[rowOffset + j]);
+            }
+        }
+        for (int col = 1; col < depth; col++) {
+            double[] outs = this.batchActivations[col];
+            multiplyTransposed(this.batchActivations[col - 1], this.weights.getBlock(col), outs, count);
+            for (int i = 0; i < count * side; i++) {
+                outs[i] = sigmoid(outs[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns the batch's summed squared error, which falls out of the
+     * output deltas for free.
+     */
+    private double computeBatchDeltas(double[] targets, int from, int count) {
+        double errorsSquared = 0;
+        int lastCol = depth - 1;
+        double[] outputBlock = this.weights.getBlock(depth);
+        double[] lastOutputs = this.batchActivations[lastCol];
+        double[] lastDeltas = this.batchDeltas[lastCol];
+        for (int b = 0; b < count; b++) {
+            int offset = b * side;
+            double last = sigmoid(dot(outputBlock, 0, lastOutputs, offset));
+            double difference = targets[from + b] - last;
+            errorsSquared += difference * difference;
+            double deltaF = RectNetFixed.SIGMOID_ALPHA * last * (1 - last) * difference;
+            this.batchOutputDeltas[b] = deltaF;
+            for (int leftRow = 0; leftRow < side; leftRow++) {
+                double lastOutput = lastOutputs[offset + leftRow];
+                lastDeltas[offset + leftRow] = RectNetFixed.SIGMOID_ALPHA * lastOutput * (1 - lastOutput)
+                        * (outputBlock[leftRow] * deltaF);
+            }
+        }
+        // Column 0 is skipped, its single input weight is never trained.
+        for (int leftCol = depth - 2; leftCol >= 1; leftCol--) {
+            double[] leftDeltas = this.batchDeltas[leftCol];
+            double[] leftOutputs = this.batchActivations[leftCol];
+            multiply(this.batchDeltas[leftCol + 1], this.weights.getBlock(leftCol + 1), leftDeltas, count);
+            for (int i = 0; i < count * side; i++) {
+                double lastOutput = leftOutputs[i];
+                leftDeltas[i] = RectNetFixed.SIGMOID_ALPHA * lastOutput * (1 - lastOutput) * leftDeltas[i];
+            }
+        }
+        return errorsSquared;
+    }
+
+    private void updateBatchWeights(NetWeights target, double scaledLearningConstant, int count) {
+        double[] outputBlock = target.getBlock(depth);
+        double[] lastOutputs = this.batchActivations[depth - 1];
+        for (int b = 0; b < count; b++) {
+            axpy(scaledLearningConstant * this.batchOutputDeltas[b], lastOutputs, b * side, outputBlock, 0);
+        }
+        for (int leftCol = depth - 2; leftCol >= 0; leftCol--) {
+            addTransposedProduct(scaledLearningConstant, this.batchDeltas[leftCol + 1],
+                    this.batchActivations[leftCol], target.getBlock(leftCol + 1), count);
+        }
+    }
+
+    @Override
+    public void clearGradient() {
+        if (this.gradient == null) {
+            this.gradient = new NetWeights(side, depth);
+            return;
+        }
+        for (int col = 1; col <= depth; col++) {
+            double[] block = this.gradient.getBlock(col);
+            for (int k = 0; k < block.length; k++) {
+                block[k] = 0;
+            }
+        }
+    }
+
+    @Override
+    public double accumulateGradient(double[] rowInputs, double[] targets, int from, int count) {
+        double errorsSquared = 0;
+        if (batchSize > 1) {
+            for (int start = from; start < from + count; start += batchSize) {
+                int size = Math.min(batchSize, from + count - start);
+                forwardBatch(rowInputs, start, size);
+                errorsSquared += computeBatchDeltas(targets, start, size);
+                updateBatchWeights(this.gradient, 1.0, size);
+            }
+            return errorsSquared;
+        }
+        for (int row = from; row < from + count; row++) {
+            setInputs(rowInputs, row * side);
+            double deltaF = getOutputError(targets[row]);
+            double difference = targets[row] - this.lastOutput;
+            errorsSquared += difference * difference;
+            computeInteriorDeltas(deltaF);
+            updateLastNeuronWeights(this.gradient, 1.0, deltaF);
+            updateInteriorNodeWeights(this.gradient, 1.0);
+        }
+        return errorsSquared;
+    }
+
+    @Override
+    public void applyGradients(PrimitiveNet[] forks, int count, double scale) {
+        for (int col = 1; col <= depth; col++) {
+            double[] sum = ((DoubleNet) forks[0]).gradient.getBlock(col);
+            for (int i = 1; i < count; i++) {
+                double[] block = ((DoubleNet) forks[i]).gradient.getBlock(col);
+                for (int k = 0; k < sum.length; k++) {
+                    sum[k] += block[k];
+                }
+            }
+            axpy(scale, sum, 0, this.weights.getBlock(col), 0, sum.length);
+        }
+    }
+
+    /*
+     * The three batch products below work on 4 x 4 blocks held in locals, so
+     * every value loaded feeds four multiply-adds instead of one. Edges that
+     * don't fill a block fall back to plain dot / axpy loops. Weight rows are
+     * visited one tile at a time so the tile stays cached across the batch.
+     */
+
+    /**
+     * out[b][j] = sum_k in[b][k] * w[j][k], i.e. out = in x w^T.
+     */
+    private void multiplyTransposed(double[] in, double[] w, double[] out, int count) {
+        for (int tileStart = 0; tileStart < side; tileStart += TILE_ROWS) {
+            int tileEnd = Math.min(tileStart + TILE_ROWS, side);
+            int b = 0;
+            for (; b + 4 <= count; b += 4) {
+                int i0 = b * side, i1 = i0 + side, i2 = i1 + side, i3 = i2 + side;
+                int j = tileStart;
+                for (; j + 4 <= tileEnd; j += 4) {
+                    int w0 = j * side, w1 = w0 + side, w2 = w1 + side, w3 = w2 + side;
+                    double s00 = 0, s01 = 0, s02 = 0, s03 = 0;
+                    double s10 = 0, s11 = 0, s12 = 0, s13 = 0;
+                    double s20 = 0, s21 = 0, s22 = 0, s23 = 0;
+                    double s30 = 0, s31 = 0, s32 = 0, s33 = 0;
+                    for (int k = 0; k < side; k++) {
+                        double x0 = in[i0 + k], x1 = in[i1 + k], x2 = in[i2 + k], x3 = in[i3 + k];
+                        double y0 = w[w0 + k], y1 = w[w1 + k], y2 = w[w2 + k], y3 = w[w3 + k];
+                        s00 += x0 * y0; s01 += x0 * y1; s02 += x0 * y2; s03 += x0 * y3;
+                        s10 += x1 * y0; s11 += x1 * y1; s12 += x1 * y2; s13 += x1 * y3;
+                        s20 += x2 * y0; s21 += x2 * y1; s22 += x2 * y2; s23 += x2 * y3;
+                        s30 += x3 * y0; s31 += x3 * y1; s32 += x3 * y2; s33 += x3 * y3;
+                    }
+                    out[i0 + j] = s00; out[i0 + j + 1] = s01; out[i0 + j + 2] = s02; out[i0 + j + 3] = s03;
+                    out[i1 + j] = s10; out[i1 + j + 1] = s11; out[i1 + j + 2] = s12; out[i1 + j + 3] = s13;
+                    out[i2 + j] = s20; out[i2 + j + 1] = s21; out[i2 + j + 2] = s22; out[i2 + j + 3] = s23;
+                    out[i3 + j] = s30; out[i3 + j + 1] = s31; out[i3 + j + 2] = s32; out[i3 + j + 3] = s33;
+                }
+                for (; j < tileEnd; j++) {
+                    out[i0 + j] = dot(w, j * side, in, i0);
+                    out[i1 + j] = dot(w, j * side, in, i1);
+                    out[i2 + j] = dot(w, j * side, in, i2);
+                    out[i3 + j] = dot(w, j * side, in, i3);
+                }
+            }
+            for (; b < count; b++) {
+                int offset = b * side;
+                for (int j = tileStart; j < tileEnd; j++) {
+                    out[offset + j] = dot(w, j * side, in, offset);
+                }
+            }
+        }
+    }
+
+    /**
+     * out[b][k] = sum_j in[b][j] * w[j][k], i.e. out = in x w.
+     */
+    private void multiply(double[] in, double[] w, double[] out, int count) {
+        for (int i = 0; i < count * side; i++) {
+            out[i] = 0;
+        }
+        for (int tileStart = 0; tileStart < side; tileStart += TILE_ROWS) {
+            int tileEnd = Math.min(tileStart + TILE_ROWS, side);
+            int b = 0;
+            for (; b + 4 <= count; b += 4) {
+                int o0 = b * side, o1 = o0 + side, o2 = o1 + side, o3 = o2 + side;
+                int j = tileStart;
+                for (; j + 4 <= tileEnd; j += 4) {
+                    int w0 = j * side, w1 = w0 + side, w2 = w1 + side, w3 = w2 + side;
+                    double c00 = in[o0 + j], c01 = in[o0 + j + 1], c02 = in[o0 + j + 2], c03 = in[o0 + j + 3];
+                    double c10 = in[o1 + j], c11 = in[o1 + j + 1], c12 = in[o1 + j + 2], c13 = in[o1 + j + 3];
+                    double c20 = in[o2 + j], c21 = in[o2 + j + 1], c22 = in[o2 + j + 2], c23 = in[o2 + j + 3];
+                    double c30 = in[o3 + j], c31 = in[o3 + j + 1], c32 = in[o3 + j + 2], c33 = in[o3 + j + 3];
+                    for (int k = 0; k < side; k++) {
+                        double y0 = w[w0 + k], y1 = w[w1 + k], y2 = w[w2 + k], y3 = w[w3 + k];
+                        out[o0 + k] += c00 * y0 + c01 * y1 + c02 * y2 + c03 * y3;
+                        out[o1 + k] += c10 * y0 + c11 * y1 + c12 * y2 + c13 * y3;
+                        out[o2 + k] += c20 * y0 + c21 * y1 + c22 * y2 + c23 * y3;
+                        out[o3 + k] += c30 * y0 + c31 * y1 + c32 * y2 + c33 * y3;
+                    }
+                }
+                for (; j < tileEnd; j++) {
+                    axpy(in[o0 + j], w, j * side, out, o0);
+                    axpy(in[o1 + j], w, j * side, out, o1);
+                    axpy(in[o2 + j], w, j * side, out, o2);
+                    axpy(in[o3 + j], w, j * side, out, o3);
+                }
+            }
+            for (; b < count; b++) {
+                int offset = b * side;
+                for (int j = tileStart; j < tileEnd; j++) {
+                    axpy(in[offset + j], w, j * side, out, offset);
+                }
+            }
+        }
+    }
+
+    /**
+     * w[j][k] += scale * sum_b d[b][j] * x[b][k], i.e. w += scale * d^T x.
+     */
+    private void addTransposedProduct(double scale, double[] d, double[] x, double[] w, int count) {
+        int j = 0;
+        for (; j + 4 <= side; j += 4) {
+            int w0 = j * side, w1 = w0 + side, w2 = w1 + side, w3 = w2 + side;
+            int b = 0;
+            for (; b + 4 <= count; b += 4) {
+                int x0 = b * side, x1 = x0 + side, x2 = x1 + side, x3 = x2 + side;
+                double c00 = scale * d[x0 + j], c01 = scale * d[x1 + j], c02 = scale * d[x2 + j], c03 = scale * d[x3 + j];
+                double c10 = scale * d[x0 + j + 1], c11 = scale * d[x1 + j + 1], c12 = scale * d[x2 + j + 1], c13 = scale * d[x3 + j + 1];
+                double c20 = scale * d[x0 + j + 2], c21 = scale * d[x1 + j + 2], c22 = scale * d[x2 + j + 2], c23 = scale * d[x3 + j + 2];
+                double c30 = scale * d[x0 + j + 3], c31 = scale * d[x1 + j + 3], c32 = scale * d[x2 + j + 3], c33 = scale * d[x3 + j + 3];
+                for (int k = 0; k < side; k++) {
+                    double y0 = x[x0 + k], y1 = x[x1 + k], y2 = x[x2 + k], y3 = x[x3 + k];
+                    w[w0 + k] += c00 * y0 + c01 * y1 + c02 * y2 + c03 * y3;
+                    w[w1 + k] += c10 * y0 + c11 * y1 + c12 * y2 + c13 * y3;
+                    w[w2 + k] += c20 * y0 + c21 * y1 + c22 * y2 + c23 * y3;
+                    w[w3 + k] += c30 * y0 + c31 * y1 + c32 * y2 + c33 * y3;
+                }
+            }
+            for (; b < count; b++) {
+                int offset = b * side;
+                axpy(scale * d[offset + j], x, offset, w, w0);
+                axpy(scale * d[offset + j + 1], x, offset, w, w1);
+                axpy(scale * d[offset + j + 2], x, offset, w, w2);
+                axpy(scale * d[offset + j + 3], x, offset, w, w3);
+            }
+        }
+        for (; j < side; j++) {
+            for (int b = 0; b < count; b++) {
+                int offset = b * side;
+                axpy(scale * d[offset + j], x, offset, w, j * side);
+            }
+        }
+    }
+
+    private double sigmoid(double input) {
+        return this.fastSigmoid ? FastSigmoid.sigmoid(input) : exactSigmoid(input);
+    }
+
+    /**
+     * Same function as BigDecimals.sigmoid without the BigDecimal round trip.
+     */
+    static double exactSigmoid(double input) {
+        return 1.0 / (1.0 + Math.exp(-RectNetFixed.SIGMOID_ALPHA * input));
+    }
+}
@@ -11,7 +11,7 @@ import java.math.BigDecimal;
 
 public class FixedNeuron implements Input {
 
-    Logger log = LoggerFactory.getLogger(FixedNeuron.class);
+    private static final Logger log = LoggerFactory.getLogger(FixedNeuron.class);
 
     private BigDecimal[] weights;
     private Input[] inputs;
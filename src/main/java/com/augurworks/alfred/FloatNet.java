@@ -0,0 +1,310 @@
+package com.augurworks.alfred;
+
+import com.augurworks.alfred.util.FastSigmoid;
+import org.apache.commons.lang3.Validate;
+
+import java.util.Random;
+
+/**
+ * Single precision version of {@link DoubleNet}. Same weight layout and
+ * back-propagation rules, with weights and activations stored as floats so
+ * a net takes half the memory and bandwidth. Sigmoids are still evaluated
+ * in double and rounded once.
+ *
+ * Mini-batches are processed one sample at a time against the frozen batch
+ * weights, with the averaged update accumulated in a gradient buffer and
+ * applied once at the end.
+ */
+class FloatNet implements PrimitiveNet {
+
+    private static final float ALPHA = (float) RectNetFixed.SIGMOID_ALPHA;
+
+    private final int side;
+    private final int depth;
+    private final int batchSize;
+    private final boolean fastSigmoid;
+
+    // Same layout as NetWeights, see there.
+    private final float[][] blocks;
+    private final float[] inputs;
+    // Indexed as [col][row].
+    private final float[][] activations;
+    private final float[][] deltas;
+    private float lastOutput;
+    // Summed weight changes of the current batch, allocated when batchSize
+    // > 1 or once a gradient is accumulated.
+    private float[][] gradients;
+
+    FloatNet(int side, int depth, int batchSize, Activation activation) {
+        this(side, depth, batchSize, activation, new Random());
+    }
+
+    FloatNet(int side, int depth, int batchSize, Activation activation, Random random) {
+        this(side, depth, batchSize, activation == Activation.FAST_SIGMOID, newBlocks(side, depth));
+        init(random);
+    }
+
+    private FloatNet(int side, int depth, int batchSize, boolean fastSigmoid, float[][] blocks) {
+        Validate.isTrue(side >= 1 && depth >= 1, "Depth and side must be >= 1");
+        Validate.isTrue(batchSize >= 1);
+        this.side = side;
+        this.depth = depth;
+        this.batchSize = batchSize;
+        this.fastSigmoid = fastSigmoid;
+        this.blocks = blocks;
+        this.inputs = new float[side];
+        this.activations = new float[depth][side];
+        this.deltas = new float[depth][side];
+        this.gradients = batchSize > 1 ? newBlocks(side, depth) : null;
+    }
+
+    private static float[][] newBlocks(int side, int depth) {
+        float[][] blocks = new float[depth + 1][];
+        blocks[0] = new float[side];
+        for (int col = 1; col < depth; col++) {
+            blocks[col] = new float[side * side];
+        }
+        blocks[depth] = new float[side];
+        return blocks;
+    }
+
+    /**
+     * First column neurons see one input each with a fixed weight of 1, every
+     * other connection starts at initNum().
+     */
+    private void init(Random random) {
+        for (int j = 0; j < side; j++) {
+            this.blocks[0][j] = 1.0f;
+        }
+        for (int col = 1; col <= depth; col++) {
+            float[] block = this.blocks[col];
+            for (int k = 0; k < block.length; k++) {
+                block[k] = initNum(random);
+            }
+        }
+    }
+
+    private float initNum(Random random) {
+        return (float) ((random.nextDouble() - .5) * 1.0);
+    }
+
+    @Override
+    public FloatNet fork() {
+        return new FloatNet(this.side, this.depth, this.batchSize, this.fastSigmoid, this.blocks);
+    }
+
+    @Override
+    public double getWeight(int leftCol, int leftRow, int rightCol, int rightRow) {
+        Validate.isTrue(rightCol == leftCol + 1, "Only adjacent columns are connected");
+        return this.blocks[rightCol][rightRow * side + leftRow];
+    }
+
+    @Override
+    public void changeWeight(int leftCol, int leftRow, int rightCol, int rightRow, double dw) {
+        Validate.isTrue(rightCol == leftCol + 1, "Only adjacent columns are connected");
+        this.blocks[rightCol][rightRow * side + leftRow] += (float) dw;
+    }
+
+    @Override
+    public void copyWeightsTo(NetWeights target) {
+        checkTopology(target);
+        for (int col = 0; col <= depth; col++) {
+            float[] block = this.blocks[col];
+            double[] targetBlock = target.getBlock(col);
+            for (int k = 0; k < block.length; k++) {
+                targetBlock[k] = block[k];
+            }
+        }
+    }
+
+    @Override
+    public void copyWeightsFrom(NetWeights source) {
+        checkTopology(source);
+        for (int col = 0; col <= depth; col++) {
+            float[] block = this.blocks[col];
+            double[] sourceBlock = source.getBlock(col);
+            for (int k = 0; k < block.length; k++) {
+                block[k] = (float) sourceBlock[k];
+            }
+        }
+    }
+
+    private void checkTopology(NetWeights weights) {
+        Validate.isTrue(weights.getSide() == side && weights.getDepth() == depth,
+                "Weights must match the net's side and depth");
+    }
+
+    @Override
+    public void setInputs(double[] inputs) {
+        Validate.isTrue(inputs.length == side);
+        setInputs(inputs, 0);
+    }
+
+    @Override
+    public void setInputs(double[] rows, int offset) {
+        for (int j = 0; j < side; j++) {
+            this.inputs[j] = (float) rows[offset + j];
+        }
+    }
+
+    @Override
+    public double getOutput() {
+        float[] inputBlock = this.blocks[0];
+        float[] first = this.activations[0];
+        for (int j = 0; j < side; j++) {
+            first[j] = sigmoid(inputBlock[j] * this.inputs[j]);
+        }
+        for (int col = 1; col < depth; col++) {
+            float[] block = this.blocks[col];
+            float[] ins = this.activations[col - 1];
+            float[] outs = this.activations[col];
+            for (int j = 0; j < side; j++) {
+                outs[j] = sigmoid(dot(block, j * side, ins, 0, side));
+            }
+        }
+        this.lastOutput = sigmoid(dot(this.blocks[depth], 0, this.activations[depth - 1], 0, side));
+        return this.lastOutput;
+    }
+
+    /**
+     * Back-propagation step, see RectNetFixed.doIteration for the BigDecimal
+     * original this mirrors.
+     */
+    @Override
+    public double train(double[] rows, int offset, double desired, double learningConstant) {
+        setInputs(rows, offset);
+        float deltaF = computeDeltas((float) desired);
+        updateWeights(this.blocks, (float) learningConstant, deltaF);
+        return this.lastOutput;
+    }
+
+    /**
+     * Forward pass plus deltas for every trained column, returns the output
+     * neuron's delta.
+     */
+    private float computeDeltas(float desired) {
+        getOutput();
+        float last = this.lastOutput;
+        float deltaF = ALPHA * last * (1 - last) * (desired - last);
+        int lastCol = depth - 1;
+        float[] outputBlock = this.blocks[depth];
+        for (int leftRow = 0; leftRow < side; leftRow++) {
+            float lastOutput = this.activations[lastCol][leftRow];
+            this.deltas[lastCol][leftRow] = ALPHA * lastOutput * (1 - lastOutput) * (outputBlock[leftRow] * deltaF);
+        }
+        // Column 0 is skipped, its single input weight is never trained.
+        for (int leftCol = depth - 2; leftCol >= 1; leftCol--) {
+            float[] block = this.blocks[leftCol + 1];
+            float[] rightDeltas = this.deltas[leftCol + 1];
+            float[] leftDeltas = this.deltas[leftCol];
+            float[] leftOutputs = this.activations[leftCol];
+            for (int leftRow = 0; leftRow < side; leftRow++) {
+                leftDeltas[leftRow] = 0;
+            }
+            for (int rightRow = 0; rightRow < side; rightRow++) {
+                axpy(rightDeltas[rightRow], block, rightRow * side, leftDeltas, 0, side);
+            }
+            for (int leftRow = 0; leftRow < side; leftRow++) {
+                float lastOutput = leftOutputs[leftRow];
+                leftDeltas[leftRow] = ALPHA * lastOutput * (1 - lastOutput) * leftDeltas[leftRow];
+            }
+        }
+        return deltaF;
+    }
+
+    /**
+     * Adds learningConstant * delta * output for every trained connection to
+     * target, either the weights themselves or the batch gradient.
+     */
+    private void updateWeights(float[][] target, float learningConstant, float deltaF) {
+        axpy(learningConstant * deltaF, this.activations[depth - 1], 0, target[depth], 0, side);
+        for (int leftCol = depth - 2; leftCol >= 0; leftCol--) {
+            float[] block = target[leftCol + 1];
+            float[] rightDeltas = this.deltas[leftCol + 1];
+            float[] leftOutputs = this.activations[leftCol];
+            for (int rightRow = 0; rightRow < side; rightRow++) {
+                axpy(learningConstant * rightDeltas[rightRow], leftOutputs, 0, block, rightRow * side, side);
+            }
+        }
+    }
+
+    @Override
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public double trainBatch(double[] rowInputs, double[] targets, int from, int count, double learningConstant) {
+        Validate.isTrue(count >= 1 && count <= batchSize);
+        clearGradient();
+        double errorsSquared = accumulateGradient(rowInputs, targets, from, count);
+        float scale = (float) (learningConstant / count);
+        for (int col = 1; col <= depth; col++) {
+            float[] gradient = this.gradients[col];
+            axpy(scale, gradient, 0, this.blocks[col], 0, gradient.length);
+        }
+        return errorsSquared;
+    }
+
+    @Override
+    public void clearGradient() {
+        if (this.gradients == null) {
+            this.gradients = newBlocks(side, depth);
+            return;
+        }
+        for (int col = 1; col <= depth; col++) {
+            float[] gradient = this.gradients[col];
+            for (int k = 0; k < gradient.length; k++) {
+                gradient[k] = 0;
+            }
+        }
+    }
+
+    @Override
+    public double accumulateGradient(double[] rowInputs, double[] targets, int from, int count) {
+        double errorsSquared = 0;
+        for (int row = from; row < from + count; row++) {
+            setInputs(rowInputs, row * side);
+            float deltaF = computeDeltas((float) targets[row]);
+            double difference = targets[row] - this.lastOutput;
+            errorsSquared += difference * difference;
+            updateWeights(this.gradients, 1.0f, deltaF);
+        }
+        return errorsSquared;
+    }
+
+    @Override
+    public void applyGradients(PrimitiveNet[] forks, int count, double scale) {
+        for (int col = 1; col <= depth; col++) {
+            float[] sum = ((FloatNet) forks[0]).gradients[col];
+            for (int i = 1; i < count; i++) {
+                float[] gradient = ((FloatNet) forks[i]).gradients[col];
+                for (int k = 0; k < sum.length; k++) {
+                    sum[k] += gradient[k];
+                }
+            }
+            axpy((float) scale, sum, 0, this.blocks[col], 0, sum.length);
+        }
+    }
+
+    private static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0;
+        for (int k = 0; k < length; k++) {
+            sum += a[aOffset + k] * b[bOffset + k];
+        }
+        return sum;
+    }
+
+    /**
+     * y[yOffset..] += scale * x[xOffset..] over length values.
+     */
+    private static void axpy(float scale, float[] x, int xOffset, float[] y, int yOffset, int length) {
+        for (int k = 0; k < length; k++) {
+            y[yOffset + k] += scale * x[xOffset + k];
+        }
+    }
+
+    private float sigmoid(float input) {
+        return (float) (this.fastSigmoid ? FastSigmoid.sigmoid(input) : DoubleNet.exactSigmoid(input));
+    }
+}
@@ -0,0 +1,164 @@
+package com.augurworks.alfred;
+
+import org.apache.commons.lang3.Validate;
+
+import com.augurworks.alfred.models.Model;
+import com.augurworks.alfred.scaling.ScaleFunction;
+import com.augurworks.alfred.util.FastSigmoid;
+
+/**
+ * Read-only double precision copy of a trained net for inference. It keeps
+ * its own copy of the weights and never writes to a field after
+ * construction, so one instance can be shared by any number of threads.
+ *
+ * Batch prediction runs a chunk of rows through one layer at a time, so
+ * each neuron's weights are read once per chunk instead of once per row.
+ * Every output is computed exactly as {@link DoubleNet#getOutput()} would.
+ */
+public final class FrozenNet {
+
+    // Rows pushed through the layers together, bounds the scratch space.
+    private static final int CHUNK_ROWS = 64;
+
+    private final int side;
+    private final int depth;
+    private final boolean fastSigmoid;
+    // Same layout as NetWeights, see there.
+    private final double[][] blocks;
+    private final ScaleFunction scaleFunction;
+
+    private FrozenNet(NetWeights weights, Activation activation, ScaleFunction scaleFunction) {
+        this.side = weights.getSide();
+        this.depth = weights.getDepth();
+        this.fastSigmoid = activation == Activation.FAST_SIGMOID;
+        this.blocks = new double[depth + 1][];
+        for (int col = 0; col <= depth; col++) {
+            this.blocks[col] = weights.getBlock(col).clone();
+        }
+        this.scaleFunction = scaleFunction;
+    }
+
+    public static FrozenNet of(Model model) {
+        return new FrozenNet(model.getWeights(), model.getActivation(), model.getScaleFunction());
+    }
+
+    public int getSide() {
+        return side;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Normalized output for one row of inputs.
+     */
+    public double predict(double[] inputs) {
+        Validate.isTrue(inputs.length == side);
+        double[] outputs = new double[1];
+        forward(inputs, 0, 1, outputs, 0, new double[side], new double[side]);
+        return outputs[0];
+    }
+
+    /**
+     * Normalized outputs for every row.
+     */
+    public double[] predict(double[][] rows) {
+        double[] outputs = new double[rows.length];
+        int chunkRows = Math.min(CHUNK_ROWS, rows.length);
+        double[] chunk = new double[chunkRows * side];
+        double[] scratch = new double[chunkRows * side];
+        double[] other = new double[chunkRows * side];
+        for (int from = 0; from < rows.length; from += chunkRows) {
+            int count = Math.min(chunkRows, rows.length - from);
+            for (int r = 0; r < count; r++) {
+                Validate.isTrue(rows[from + r].length == side);
+                System.arraycopy(rows[from + r], 0, chunk, r * side, side);
+            }
+            forward(chunk, 0, count, outputs, from, scratch, other);
+        }
+        return outputs;
+    }
+
+    /**
+     * Normalized outputs for every row of row-major inputs, side values per
+     * row, read in place.
+     */
+    public double[] predictRows(double[] rows) {
+        Validate.isTrue(rows.length % side == 0, "Inputs must be whole rows of %d", side);
+        int rowCount = rows.length / side;
+        double[] outputs = new double[rowCount];
+        int chunkRows = Math.min(CHUNK_ROWS, rowCount);
+        double[] scratch = new double[chunkRows * side];
+        double[] other = new double[chunkRows * side];
+        for (int from = 0; from < rowCount; from += chunkRows) {
+            forward(rows, from * side, Math.min(chunkRows, rowCount - from), outputs, from, scratch, other);
+        }
+        return outputs;
+    }
+
+    /**
+     * Outputs for every row on the scale of the training targets.
+     */
+    public double[] predictDenormalized(double[][] rows) {
+        double[] outputs = predict(rows);
+        scaleFunction.denormalize(outputs);
+        return outputs;
+    }
+
+    /**
+     * Outputs for every row of row-major inputs on the scale of the
+     * training targets.
+     */
+    public double[] predictRowsDenormalized(double[] rows) {
+        double[] outputs = predictRows(rows);
+        scaleFunction.denormalize(outputs);
+        return outputs;
+    }
+
+    public double denormalize(double value) {
+        return scaleFunction.denormalize(value);
+    }
+
+    /**
+     * Writes the outputs of count row-major input rows, starting at
+     * inputs[inOffset], to outputs[outOffset..]. The two scratch arrays hold
+     * count * side values each and take turns holding a layer's activations.
+     */
+    private void forward(double[] inputs, int inOffset, int count, double[] outputs, int outOffset,
+            double[] ins, double[] outs) {
+        double[] inputBlock = blocks[0];
+        for (int r = 0; r < count; r++) {
+            int offset = r * side;
+            for (int j = 0; j < side; j++) {
+                ins[offset + j] = sigmoid(inputBlock[j] * inputs[inOffset + offset + j]);
+            }
+        }
+        for (int col = 1; col < depth; col++) {
+            double[] block = blocks[col];
+            for (int j = 0; j < side; j++) {
+                for (int r = 0; r < count; r++) {
+                    outs[r * side + j] = sigmoid(dot(block, j * side, ins, r * side, side));
+                }
+            }
+            double[] swap = ins;
+            ins = outs;
+            outs = swap;
+        }
+        for (int r = 0; r < count; r++) {
+            outputs[outOffset + r] = sigmoid(dot(blocks[depth], 0, ins, r * side, side));
+        }
+    }
+
+    private static double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double sum = 0;
+        for (int k = 0; k < length; k++) {
+            sum += a[aOffset + k] * b[bOffset + k];
+        }
+        return sum;
+    }
+
+    private double sigmoid(double input) {
+        return fastSigmoid ? FastSigmoid.sigmoid(input) : DoubleNet.exactSigmoid(input);
+    }
+}
@@ -0,0 +1,95 @@
+package com.augurworks.alfred;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Hogwild style parallel SGD over the training rows of a primitive net. Each
+ * epoch the rows are cut into one contiguous slice per thread, and every
+ * thread trains its slice through its own fork of the net. All forks write
+ * to the same weights without locking, so an update can occasionally be
+ * lost or read half applied; SGD shrugs that off in exchange for using every
+ * core.
+ *
+ * The epoch itself is still a barrier: trainEpoch returns once every slice
+ * is done, so scoring and the stopping rules in RectNetFixed see a quiet
+ * net.
+ */
+class HogwildTrainer implements ParallelTrainer {
+
+    private final PrimitiveNet[] forks;
+    private final ExecutorService executor;
+
+    HogwildTrainer(PrimitiveNet net, int threads) {
+        this.forks = new PrimitiveNet[threads];
+        this.forks[0] = net;
+        for (int i = 1; i < threads; i++) {
+            this.forks[i] = net.fork();
+        }
+        this.executor = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Slices train row by row, or in mini-batches when the net has a batch
+     * size.
+     */
+    @Override
+    public double trainEpoch(double[] inputs, double[] targets, int numberRowIterations, double learningConstant,
+            TimingInfo timingInfo) throws InterruptedException {
+        int slices = Math.min(this.forks.length, targets.length);
+        List<Callable<Double>> tasks = new ArrayList<>(slices);
+        for (int slice = 0; slice < slices; slice++) {
+            PrimitiveNet fork = this.forks[slice];
+            int from = (int) ((long) targets.length * slice / slices);
+            int to = (int) ((long) targets.length * (slice + 1) / slices);
+            tasks.add(() -> trainSlice(fork, inputs, targets, from, to, numberRowIterations, learningConstant,
+                    timingInfo));
+        }
+        double errorsSquared = 0;
+        for (Future<Double> future : this.executor.invokeAll(tasks)) {
+            try {
+                errorsSquared += future.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof InterruptedException) {
+                    throw (InterruptedException) e.getCause();
+                }
+                throw new IllegalStateException("Hogwild worker failed", e.getCause());
+            }
+        }
+        return errorsSquared;
+    }
+
+    private static double trainSlice(PrimitiveNet net, double[] inputs, double[] targets, int from, int to,
+            int numberRowIterations, double learningConstant, TimingInfo timingInfo) throws InterruptedException {
+        int batchSize = net.getBatchSize();
+        int side = inputs.length / targets.length;
+        double errorsSquared = 0;
+        for (int row = from; row < to && !timingInfo.hasTimeExpired(); row += batchSize) {
+            int count = Math.min(batchSize, to - row);
+            double rowErrorsSquared = 0;
+            for (int lcv = 0; lcv < numberRowIterations && !timingInfo.hasTimeExpired(); lcv++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Job detected interrupt flag");
+                }
+                if (batchSize > 1) {
+                    rowErrorsSquared = net.trainBatch(inputs, targets, row, count, learningConstant);
+                } else {
+                    double difference = targets[row] - net.train(inputs, row * side, targets[row], learningConstant);
+                    rowErrorsSquared = difference * difference;
+                }
+            }
+            errorsSquared += rowErrorsSquared;
+        }
+        return errorsSquared;
+    }
+
+    @Override
+    public void shutdown() {
+        this.executor.shutdownNow();
+    }
+}
@@ -0,0 +1,121 @@
+package com.augurworks.alfred;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the neuron range of one layer into chunks run on a ForkJoinPool,
+ * for nets too wide to keep one core busy per layer only. Nets narrower
+ * than the threshold never get a splitter: below it fork/join overhead costs
+ * more than the layer itself. LayerSplitBenchmark measures the crossover.
+ *
+ * The threshold defaults to DEFAULT_MIN_SIDE and can be changed with
+ * -Dalfred.splitLayersMinSide=n.
+ */
+class LayerSplitter {
+
+    public static final String MIN_SIDE_PROPERTY = "alfred.splitLayersMinSide";
+    static final int DEFAULT_MIN_SIDE = 256;
+
+    private static final int MIN_SIDE = Integer.getInteger(MIN_SIDE_PROPERTY, DEFAULT_MIN_SIDE);
+    // Smallest chunk worth a task, in neurons.
+    private static final int MIN_GRAIN = 16;
+
+    /**
+     * Work on neurons [from, to) of a layer.
+     */
+    interface RangeBody {
+        void run(int from, int to);
+    }
+
+    private final ForkJoinPool pool;
+
+    LayerSplitter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns a splitter on the common pool, or null when the net is below
+     * the threshold or there is only one core to split across.
+     */
+    static LayerSplitter forSide(int side) {
+        if (side < MIN_SIDE || Runtime.getRuntime().availableProcessors() < 2) {
+            return null;
+        }
+        return new LayerSplitter(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Splits neurons [0, length) into a tree of tasks that is built once and
+     * reused by every run, so running a split allocates nothing. The body
+     * is fixed too, it has to read the layer it works on from its owner.
+     */
+    Split split(int length, RangeBody body) {
+        int grain = Math.max(MIN_GRAIN, length / (4 * this.pool.getParallelism()));
+        return new Split(new RangeTask(body, 0, length, grain));
+    }
+
+    class Split {
+
+        private final RangeTask root;
+
+        private Split(RangeTask root) {
+            this.root = root;
+        }
+
+        /**
+         * Runs the body over every chunk and returns once all are done. Not
+         * for concurrent use, a split runs one layer at a time.
+         */
+        void run() {
+            this.root.reset();
+            pool.invoke(this.root);
+        }
+    }
+
+    private static class RangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RangeBody body;
+        private final int from;
+        private final int to;
+        // Both null for a leaf
+        private final RangeTask left;
+        private final RangeTask right;
+
+        RangeTask(RangeBody body, int from, int to, int grain) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+            if (to - from <= grain) {
+                this.left = null;
+                this.right = null;
+            } else {
+                int middle = (from + to) >>> 1;
+                this.left = new RangeTask(body, from, middle, grain);
+                this.right = new RangeTask(body, middle, to, grain);
+            }
+        }
+
+        /**
+         * Makes the finished tree runnable again.
+         */
+        void reset() {
+            reinitialize();
+            if (this.left != null) {
+                this.left.reset();
+                this.right.reset();
+            }
+        }
+
+        @Override
+        protected void compute() {
+            if (this.left == null) {
+                body.run(from, to);
+                return;
+            }
+            invokeAll(this.left, this.right);
+        }
+    }
+}
@@ -6,106 +6,182 @@ import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Training and prediction rows of a net, each kept as a columnar
+ * {@link Dataset}. Training targets are stored normalized by the scale
+ * function.
+ */
 public class NetDataSpecification {
 
-    private final List<InputsAndTarget> trainData;
-    private final List<InputsAndTarget> predictionData;
+    private final Dataset trainData;
+    private final Dataset predictionData;
     private final ScaleFunction scaleFunction;
+    // Training rows as InputsAndTarget, built on first use by BigDecimal nets.
+    private List<InputsAndTarget> trainRows;
 
-    public NetDataSpecification(List<InputsAndTarget> trainData,
-                                List<InputsAndTarget> predictionData,
+    public NetDataSpecification(Dataset trainData,
+                                Dataset predictionData,
                                 ScaleFunction scaleFunction) {
         this.trainData = trainData;
         this.predictionData = predictionData;
         this.scaleFunction = scaleFunction;
     }
 
+    /**
+     * Rows given as InputsAndTarget, training targets already normalized.
+     * Values are kept as doubles.
+     */
+    public NetDataSpecification(List<InputsAndTarget> trainData,
+                                List<InputsAndTarget> predictionData,
+                                ScaleFunction scaleFunction) {
+        int side = side(trainData, predictionData);
+        Dataset.Builder trainRows = new Dataset.Builder(side, true);
+        for (InputsAndTarget row : trainData) {
+            trainRows.add(row.getDate(), row.getTarget().doubleValue(), Builder.toDoubles(row.getInputs()));
+        }
+        Dataset.Builder predictionRows = new Dataset.Builder(side, false);
+        for (InputsAndTarget row : predictionData) {
+            predictionRows.add(row.getDate(), Builder.toDoubles(row.getInputs()));
+        }
+        this.trainData = trainRows.build();
+        this.predictionData = predictionRows.build();
+        this.scaleFunction = scaleFunction;
+    }
+
+    private static int side(List<InputsAndTarget> trainData, List<InputsAndTarget> predictionData) {
+        if (!trainData.isEmpty()) {
+            return trainData.get(0).getInputs().length;
+        }
+        return predictionData.isEmpty() ? 1 : predictionData.get(0).getInputs().length;
+    }
+
     public static class Builder {
 
-        private List<String> dates = new ArrayList<>();
-        private List<BigDecimal> targets = new ArrayList<>();
-        private List<BigDecimal[]> inputSets = new ArrayList<>();
-        private List<InputsAndTarget> predictionRows = new ArrayList<>();
+        private final Dataset.Builder trainRows;
+        private final Dataset.Builder predictionRows;
         private double desiredMin = 0.1;
         private double desiredMax = 0.9;
 
+        /**
+         * Builder for rows of side inputs. Rows are appended straight into
+         * growable primitive columns.
+         */
+        public Builder(int side) {
+            this.trainRows = new Dataset.Builder(side, true);
+            this.predictionRows = new Dataset.Builder(side, false);
+        }
+
+        /**
+         * Values are kept as doubles.
+         */
         public Builder addDataRow(String date, BigDecimal target, BigDecimal[] inputs) {
-            dates.add(date);
-            targets.add(target);
-            inputSets.add(inputs);
-            return this;
+            return addDataRow(date, target.doubleValue(), toDoubles(inputs));
         }
 
+        /**
+         * Values are kept as doubles.
+         */
         public Builder addPredictionRow(String date, BigDecimal[] inputs) {
-            predictionRows.add(new InputsAndTarget(date, null, inputs));
+            return addPredictionRow(date, toDoubles(inputs));
+        }
+
+        /**
+         * inputs is copied so the caller may reuse it.
+         */
+        public Builder addDataRow(String date, double target, double[] inputs) {
+            trainRows.add(date, target, inputs);
             return this;
         }
 
-        private double getMinTarget() {
+        /**
+         * inputs is copied so the caller may reuse it.
+         */
+        public Builder addPredictionRow(String date, double[] inputs) {
+            predictionRows.add(date, inputs);
+            return this;
+        }
+
+        private static double[] toDoubles(BigDecimal[] values) {
+            double[] doubles = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                doubles[i] = values[i].doubleValue();
+            }
+            return doubles;
+        }
+
+        private static double getMinTarget(double[] targets) {
             double minSeen = Double.POSITIVE_INFINITY;
-            for (BigDecimal target : targets) {
-                if (target.doubleValue() < minSeen) {
-                    minSeen = target.doubleValue();
+            for (double target : targets) {
+                if (target < minSeen) {
+                    minSeen = target;
                 }
             }
             return minSeen;
         }
 
-        private double getMaxTarget() {
+        private static double getMaxTarget(double[] targets) {
             double maxSeen = Double.NEGATIVE_INFINITY;
-            for (BigDecimal target : targets) {
-                if (target.doubleValue() > maxSeen) {
-                    maxSeen = target.doubleValue();
+            for (double target : targets) {
+                if (target > maxSeen) {
+                    maxSeen = target;
                 }
             }
             return maxSeen;
         }
 
-        public void normalizeTargetValues(ScaleFunction scaleFunction) {
-            for (int i = 0; i < targets.size(); i++) {
-                BigDecimal target = targets.get(i);
-                targets.set(i, BigDecimal.valueOf(scaleFunction.normalize(target.doubleValue())));
-            }
-        }
-
-        private List<InputsAndTarget> buildInputs() {
-            List<InputsAndTarget> inputsAndTargets = new ArrayList<>();
-            for (int i = 0; i < targets.size(); i++) {
-                inputsAndTargets.add(new InputsAndTarget(dates.get(i), targets.get(i), inputSets.get(i)));
-            }
-            return inputsAndTargets;
-        }
-
         /*
-         * Normalizes inputs.
+         * Normalizes targets.
          */
         public NetDataSpecification build(ScaleFunctionType sfType) {
+            double[] targets = trainRows.getTargets();
             ScaleFunction scaleFunc;
             if (sfType == ScaleFunctionType.LINEAR) {
                 scaleFunc = ScaleFunctions.createLinearScaleFunction(
-                        getMinTarget(), getMaxTarget(), desiredMin, desiredMax);
+                        getMinTarget(targets), getMaxTarget(targets), desiredMin, desiredMax);
             } else if (sfType == ScaleFunctionType.SIGMOID) {
                 scaleFunc = ScaleFunctions.createSigmoidScaleFunction(targets);
             } else {
                 throw new IllegalArgumentException("Unrecognized function " + sfType);
             }
-            normalizeTargetValues(scaleFunc);
-            List<InputsAndTarget> inputsAndTargets = buildInputs();
-            return new NetDataSpecification(inputsAndTargets, predictionRows, scaleFunc);
+            scaleFunc.normalize(targets);
+            return new NetDataSpecification(trainRows.build(targets), predictionRows.build(), scaleFunc);
         }
 
     }
 
-    public List<InputsAndTarget> getTrainData() {
+    public Dataset getTrainDataset() {
         return trainData;
     }
 
-    public List<InputsAndTarget> getPredictionData() {
+    public Dataset getPredictionDataset() {
         return predictionData;
     }
 
+    /**
+     * The training rows as InputsAndTarget, built once and kept so that
+     * BigDecimal nets don't rebuild every row each time they read it.
+     */
+    public synchronized List<InputsAndTarget> getTrainData() {
+        if (trainRows == null) {
+            trainRows = Collections.unmodifiableList(new ArrayList<>(trainData.asList()));
+        }
+        return trainRows;
+    }
+
+    /**
+     * Row view of the prediction rows, see {@link Dataset#asList()}.
+     */
+    public List<InputsAndTarget> getPredictionData() {
+        return predictionData.asList();
+    }
+
+    public ScaleFunction getScaleFunction() {
+        return scaleFunction;
+    }
+
     public BigDecimal denormalize(BigDecimal value) {
         return BigDecimal.valueOf(scaleFunction.denormalize(value.doubleValue()));
     }
@@ -1,6 +1,7 @@
 package com.augurworks.alfred;
 
 import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+import org.apache.commons.lang3.Validate;
 
 import java.math.BigDecimal;
 
@@ -14,11 +15,23 @@ public class NetTrainSpecification {
     private final BigDecimal learningConstant;
     private final int minTrainingRounds;
     private final BigDecimal performanceCutoff;
+    private final int batchSize;
 
     public NetTrainSpecification(NetDataSpecification netData, int depth, int side,
             int numberRowIterations, int numberFileIterations,
             BigDecimal learningConstant, int minTrainingRounds,
             BigDecimal performanceCutoff) {
+        this(netData, depth, side, numberRowIterations, numberFileIterations,
+                learningConstant, minTrainingRounds, performanceCutoff, 1);
+    }
+
+    public NetTrainSpecification(NetDataSpecification netData, int depth, int side,
+            int numberRowIterations, int numberFileIterations,
+            BigDecimal learningConstant, int minTrainingRounds,
+            BigDecimal performanceCutoff, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be >= 1");
+        }
         this.netData = netData;
         this.depth = depth;
         this.side = side;
@@ -27,10 +40,12 @@ public class NetTrainSpecification {
         this.learningConstant = learningConstant;
         this.minTrainingRounds = minTrainingRounds;
         this.performanceCutoff = performanceCutoff;
+        this.batchSize = batchSize;
     }
 
     public static class Builder {
-        private NetDataSpecification.Builder dataBuilder = new NetDataSpecification.Builder();
+        // Created once the side is known.
+        private NetDataSpecification.Builder dataBuilder;
         private int depth;
         private int numberRowIterations;
         private int numberFileIterations;
@@ -38,6 +53,7 @@ public class NetTrainSpecification {
         private int minTrainingRounds;
         private BigDecimal performanceCutoff;
         private int side;
+        private int batchSize = 1;
         private ScaleFunctionType sfType;
 
         public Builder rowIterations(int numberRowIterations) {
@@ -65,13 +81,36 @@ public class NetTrainSpecification {
             return this;
         }
 
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
         public Builder addInputAndTarget(BigDecimal[] inputs, BigDecimal target, String date) {
-            this.dataBuilder.addDataRow(date, target, inputs);
+            dataBuilder().addDataRow(date, target, inputs);
             return this;
         }
 
         public Builder addPredictionRow(BigDecimal[] inputs, String date) {
-            this.dataBuilder.addPredictionRow(date, inputs);
+            dataBuilder().addPredictionRow(date, inputs);
+            return this;
+        }
+
+        /**
+         * Primitive version of addInputAndTarget, inputs is copied so the
+         * caller may reuse it.
+         */
+        public Builder addInputAndTarget(double[] inputs, double target, String date) {
+            dataBuilder().addDataRow(date, target, inputs);
+            return this;
+        }
+
+        /**
+         * Primitive version of addPredictionRow, inputs is copied so the
+         * caller may reuse it.
+         */
+        public Builder addPredictionRow(double[] inputs, String date) {
+            dataBuilder().addPredictionRow(date, inputs);
             return this;
         }
 
@@ -81,18 +120,39 @@ public class NetTrainSpecification {
         }
 
         public Builder side(int side) {
+            Validate.isTrue(this.dataBuilder == null, "Side must be set before any row is added");
             this.side = side;
             return this;
         }
 
+        private NetDataSpecification.Builder dataBuilder() {
+            if (this.dataBuilder == null) {
+                Validate.isTrue(this.side >= 1, "Side must be set before any row is added");
+                this.dataBuilder = new NetDataSpecification.Builder(this.side);
+            }
+            return this.dataBuilder;
+        }
+
         public int getSide() {
             return side;
         }
 
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getNumberRowIterations() {
+            return numberRowIterations;
+        }
+
+        public int getNumberFileIterations() {
+            return numberFileIterations;
+        }
+
         public NetTrainSpecification build() {
-            NetDataSpecification data = dataBuilder.build(sfType);
+            NetDataSpecification data = dataBuilder().build(sfType);
             return new NetTrainSpecification(data, depth, side, numberRowIterations,
-                    numberFileIterations, learningConstant, minTrainingRounds, performanceCutoff);
+                    numberFileIterations, learningConstant, minTrainingRounds, performanceCutoff, batchSize);
         }
 
         public void scaleFunctionType(ScaleFunctionType sfTypeParam) {
@@ -132,6 +192,14 @@ public class NetTrainSpecification {
         return performanceCutoff;
     }
 
+    /**
+     * Number of rows averaged into each weight update. 1 means plain per-row
+     * training.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
@@ -149,6 +217,7 @@ public class NetTrainSpecification {
                 + ((performanceCutoff == null) ? 0 : performanceCutoff
                         .hashCode());
         result = prime * result + side;
+        result = prime * result + batchSize;
         return result;
     }
 
@@ -184,6 +253,8 @@ public class NetTrainSpecification {
                 return false;
         } else if (!performanceCutoff.equals(other.performanceCutoff))
             return false;
+        if (batchSize != other.batchSize)
+            return false;
         return side == other.side;
     }
 
@@ -195,6 +266,7 @@ public class NetTrainSpecification {
                 + numberFileIterations + ", learningConstant="
                 + learningConstant + ", minTrainingRounds=" + minTrainingRounds
                 + ", performanceCutoff=" + performanceCutoff
+                + ", batchSize=" + batchSize
                 + "]";
     }
 
@@ -0,0 +1,69 @@
+package com.augurworks.alfred;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * Weights of a rectangular net stored as one contiguous block per layer
+ * transition instead of one array per neuron.
+ *
+ * Block 0 holds the single input weight of each first column neuron. Blocks
+ * 1 to depth - 1 are side x side and row-major by the right neuron, so all
+ * the weights feeding neuron (col, row) sit next to each other at
+ * block[col][row * side]. Block depth holds the output neuron's weights.
+ */
+public class NetWeights {
+
+    private final int side;
+    private final int depth;
+    private final double[][] blocks;
+
+    public NetWeights(int side, int depth) {
+        Validate.isTrue(side >= 1 && depth >= 1, "Depth and side must be >= 1");
+        this.side = side;
+        this.depth = depth;
+        this.blocks = new double[depth + 1][];
+        this.blocks[0] = new double[side];
+        for (int col = 1; col < depth; col++) {
+            this.blocks[col] = new double[side * side];
+        }
+        this.blocks[depth] = new double[side];
+    }
+
+    public int getSide() {
+        return side;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Returns the block of weights feeding the given column, or the output
+     * neuron's weights when col == depth.
+     */
+    public double[] getBlock(int col) {
+        return blocks[col];
+    }
+
+    /**
+     * Weight between two interior neurons, same indexing as
+     * RectNetFixed.getWeight.
+     */
+    public double getWeight(int leftCol, int leftRow, int rightCol, int rightRow) {
+        Validate.isTrue(rightCol == leftCol + 1, "Only adjacent columns are connected");
+        return blocks[rightCol][rightRow * side + leftRow];
+    }
+
+    public void changeWeight(int leftCol, int leftRow, int rightCol, int rightRow, double dw) {
+        Validate.isTrue(rightCol == leftCol + 1, "Only adjacent columns are connected");
+        blocks[rightCol][rightRow * side + leftRow] += dw;
+    }
+
+    public double getOutputWeight(int leftRow) {
+        return blocks[depth][leftRow];
+    }
+
+    public void changeOutputWeight(int leftRow, double dw) {
+        blocks[depth][leftRow] += dw;
+    }
+}
@@ -0,0 +1,25 @@
+package com.augurworks.alfred;
+
+/**
+ * How the rows of one training epoch are spread over threads.
+ */
+public enum ParallelMode {
+    /**
+     * One thread trains every row in order.
+     */
+    SERIAL,
+    /**
+     * Threads train disjoint slices of the rows at the same time and write
+     * to the shared weights without locking. Faster on big datasets, but
+     * results depend on thread timing. Primitive precisions only.
+     */
+    HOGWILD,
+    /**
+     * Threads sum gradients for disjoint chunks of each step against the
+     * same weights, then one averaged update is applied. Bit-identical for a
+     * given seed and thread count. Primitive precisions only, and nets
+     * without a batch size train serially, one row per step.
+     */
+    SYNCHRONOUS,
+    ;
+}
@@ -0,0 +1,159 @@
+package com.augurworks.alfred;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
+
+import com.augurworks.alfred.stats.TrainingStat;
+
+/**
+ * Trains several independently initialized copies of a net at the same time
+ * under one shared deadline, instead of retrying a single net one attempt
+ * after another. The copy with the lowest RMS error wins. Once any copy hits
+ * the performance cutoff the others are interrupted, and only copies that
+ * finished compete.
+ *
+ * Restarts split the cores between them, so parallel training modes and
+ * split layers inside a restart get fewer threads, down to one.
+ *
+ * The winner carries the training stats of every copy, each tagged with its
+ * restart index.
+ *
+ * When initial weights are given, restart 0 starts from them and the others
+ * stay random, so a warm start can't keep a job stuck in an old minimum.
+ */
+public class ParallelRestarts {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelRestarts.class);
+
+    public static RectNetFixed train(String netId, NetTrainSpecification netSpec, TrainingOptions options,
+            long trainingTimeLimitMillis, int restarts) throws InterruptedException {
+        return train(netId, netSpec, options, trainingTimeLimitMillis, restarts, null);
+    }
+
+    public static RectNetFixed train(String netId, NetTrainSpecification netSpec, TrainingOptions options,
+            long trainingTimeLimitMillis, int restarts, NetWeights initialWeights) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + trainingTimeLimitMillis;
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threads = Math.min(restarts, cores);
+        // Restarts running at the same time share the cores, each trains on
+        // its share so the total stays at one thread per core.
+        int threadsPerRestart = Math.max(1, cores / threads);
+        TrainingOptions sharedOptions = options
+                .withTrainingThreads(Math.min(options.getEffectiveTrainingThreads(), threadsPerRestart))
+                .withSplitLayers(options.isSplitLayers() && threadsPerRestart > 1);
+        List<RectNetFixed> nets = new ArrayList<>();
+        for (int restart = 0; restart < restarts; restart++) {
+            // A fixed seed still has to give every restart its own weights.
+            TrainingOptions restartOptions = sharedOptions.getSeed() == null
+                    ? sharedOptions : sharedOptions.withSeed(sharedOptions.getSeed() + restart);
+            RectNetFixed net = new RectNetFixed(netId, netSpec, restartOptions);
+            net.setRestart(restart);
+            if (restart == 0 && initialWeights != null) {
+                net.importWeights(initialWeights);
+            }
+            nets.add(net);
+        }
+        log.info("Training {} restarts of net {} on {} threads, {} training threads each", restarts, netId, threads,
+                sharedOptions.getEffectiveTrainingThreads());
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CompletionService<RectNetFixed> completionService = new ExecutorCompletionService<>(executor);
+            Map<String, String> mdc = MDC.getCopyOfContextMap();
+            List<Future<RectNetFixed>> futures = new ArrayList<>();
+            for (RectNetFixed net : nets) {
+                futures.add(completionService.submit(() -> trainRestart(net, mdc, trainingTimeLimitMillis, deadline)));
+            }
+            for (int done = 0; done < restarts; done++) {
+                RectNetFixed net;
+                try {
+                    net = completionService.take().get();
+                } catch (ExecutionException e) {
+                    log.warn("A restart of net {} failed", netId, e.getCause());
+                    continue;
+                }
+                if (net != null && net.getTrainingStopReason() == TrainingStopReason.HIT_PERFORMANCE_CUTOFF) {
+                    log.info("Restart {} of net {} hit the performance cutoff, cancelling the rest",
+                            net.getRestart(), netId);
+                    for (Future<RectNetFixed> future : futures) {
+                        future.cancel(true);
+                    }
+                    break;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // Interrupted restarts stop at their next row, wait for that so no
+        // net is still changing while it is scored.
+        if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Restarts of net " + netId + " did not stop");
+        }
+        return pickBest(netId, nets);
+    }
+
+    private static RectNetFixed trainRestart(RectNetFixed net, Map<String, String> mdc,
+            long trainingTimeLimitMillis, long deadline) throws InterruptedException {
+        if (mdc != null) {
+            MDC.setContextMap(mdc);
+        }
+        MDC.put("restart", String.valueOf(net.getRestart()));
+        try {
+            long timeLimit = trainingTimeLimitMillis;
+            if (trainingTimeLimitMillis > 0) {
+                timeLimit = deadline - System.currentTimeMillis();
+                if (timeLimit <= 0) {
+                    log.debug("No time left to start restart {}", net.getRestart());
+                    return null;
+                }
+            }
+            try {
+                net.train(timeLimit, 1);
+            } catch (IllegalStateException e) {
+                net.setTrainingStopReason(TrainingStopReason.BROKE_LOCAL_MAX);
+            }
+            return net;
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    private static RectNetFixed pickBest(String netId, List<RectNetFixed> nets) {
+        RectNetFixed best = null;
+        double bestRmsError = Double.POSITIVE_INFINITY;
+        List<TrainingStat> trainingStats = new ArrayList<>();
+        for (RectNetFixed net : nets) {
+            trainingStats.addAll(net.getTrainingStats());
+            if (net.getTrainingStopReason() == null) {
+                // Never started, or cancelled or failed mid-epoch, its
+                // weights are not a finished net.
+                continue;
+            }
+            double rmsError = net.computeRmsError();
+            log.debug("Restart {} of net {} stopped with {}, RMS error {}",
+                    net.getRestart(), netId, net.getTrainingStopReason(), rmsError);
+            if (rmsError < bestRmsError) {
+                bestRmsError = rmsError;
+                best = net;
+            }
+        }
+        if (best == null) {
+            throw new IllegalStateException("Unable to train file " + netId + "!");
+        }
+        log.info("Keeping restart {} of net {} with RMS error {}", best.getRestart(), netId, bestRmsError);
+        best.setTrainingStats(trainingStats);
+        return best;
+    }
+}
@@ -0,0 +1,20 @@
+package com.augurworks.alfred;
+
+/**
+ * Trains one epoch of a primitive net's rows across several threads, see
+ * {@link ParallelMode} for the strategies. trainEpoch only returns once
+ * every thread is done with the epoch.
+ */
+interface ParallelTrainer {
+
+    /**
+     * Trains every row numberRowIterations times, stopping early once time
+     * runs out. Returns the summed squared error of every row as seen by
+     * its last training iteration, before that iteration's update. Inputs
+     * are row-major, one row per target.
+     */
+    double trainEpoch(double[] inputs, double[] targets, int numberRowIterations, double learningConstant,
+            TimingInfo timingInfo) throws InterruptedException;
+
+    void shutdown();
+}
@@ -0,0 +1,23 @@
+package com.augurworks.alfred;
+
+/**
+ * Numeric type a net does its training math in.
+ */
+public enum Precision {
+    /**
+     * Arbitrary precision neuron graph. Slowest, kept as the default so
+     * existing jobs train exactly as before.
+     */
+    BIGDECIMAL,
+    /**
+     * Primitive doubles. Activations already pass through a double sigmoid,
+     * so this loses no meaningful precision and allocates far less.
+     */
+    DOUBLE,
+    /**
+     * Primitive floats. Half the memory of DOUBLE with roughly seven
+     * significant digits, enough for most normalized training data.
+     */
+    FLOAT,
+    ;
+}
@@ -0,0 +1,93 @@
+package com.augurworks.alfred;
+
+/**
+ * Training interface shared by the primitive nets that stand in for the
+ * {@link FixedNeuron} graph. {@link RectNetFixed} talks to this whatever the
+ * element type, values cross it as doubles and each implementation converts
+ * to its own storage.
+ */
+interface PrimitiveNet {
+
+    /**
+     * Weight between two interior neurons, same indexing as
+     * RectNetFixed.getWeight.
+     */
+    double getWeight(int leftCol, int leftRow, int rightCol, int rightRow);
+
+    void changeWeight(int leftCol, int leftRow, int rightCol, int rightRow, double dw);
+
+    /**
+     * Copies every weight, the fixed input weights included, into target,
+     * which must have this net's side and depth.
+     */
+    void copyWeightsTo(NetWeights target);
+
+    /**
+     * Overwrites every weight with the ones in source, which must have this
+     * net's side and depth. Forks see the new weights.
+     */
+    void copyWeightsFrom(NetWeights source);
+
+    void setInputs(double[] inputs);
+
+    /**
+     * Sets the inputs to the side values of rows starting at offset.
+     */
+    void setInputs(double[] rows, int offset);
+
+    /**
+     * Runs a forward pass over the current inputs and returns the output
+     * neuron's value.
+     */
+    double getOutput();
+
+    /**
+     * One back-propagation step on a single row. Returns the output of the
+     * forward pass the step was computed from, i.e. before the update.
+     */
+    default double train(double[] inputs, double desired, double learningConstant) {
+        return train(inputs, 0, desired, learningConstant);
+    }
+
+    /**
+     * Same as train for the row of inputs starting at offset in rows.
+     */
+    double train(double[] rows, int offset, double desired, double learningConstant);
+
+    int getBatchSize();
+
+    /**
+     * One mini-batch step over rows [from, from + count) applying the
+     * averaged update once. Returns the batch's summed squared error before
+     * the update. Inputs are row-major, side values per row.
+     */
+    double trainBatch(double[] rowInputs, double[] targets, int from, int count, double learningConstant);
+
+    /**
+     * Returns a net that shares this net's weights but has its own inputs,
+     * activations and deltas, so several threads can train the same weights
+     * at once. Nothing synchronizes their updates.
+     */
+    PrimitiveNet fork();
+
+    /**
+     * Zeroes this net's gradient buffer, allocating it on first use.
+     */
+    void clearGradient();
+
+    /**
+     * Adds the unscaled weight changes for rows [from, from + count) to
+     * this net's gradient buffer without touching the weights. Rows are
+     * visited in order, so the sum only depends on the rows and the current
+     * weights. Returns the rows' summed squared error. Inputs are
+     * row-major, side values per row.
+     */
+    double accumulateGradient(double[] rowInputs, double[] targets, int from, int count);
+
+    /**
+     * Sums the gradients of forks[0..count) in index order and adds scale
+     * times the total to the shared weights. Every fork must come from this
+     * net's fork().
+     */
+    void applyGradients(PrimitiveNet[] forks, int count, double scale);
+}
@@ -1,16 +1,21 @@
 package com.augurworks.alfred;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.MathContext;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.log4j.MDC;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.augurworks.alfred.models.Checkpoint;
+import com.augurworks.alfred.models.CheckpointStore;
+import com.augurworks.alfred.models.Model;
 import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
 import com.augurworks.alfred.stats.TrainingStage;
 import com.augurworks.alfred.stats.TrainingStat;
@@ -34,9 +39,12 @@ public class RectNetFixed {
 
     private static final double NEGATIVE_INFINITY = -1000000;
     public static final double SIGMOID_ALPHA = 3;
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 60000;
 
     private final String name;
     private final NetTrainSpecification netSpec;
+    private final TrainingOptions options;
+    private final Random random;
 
     // Inputs to network
     protected InputImpl[] inputs;
@@ -46,8 +54,32 @@ public class RectNetFixed {
     // There's only one final output neuron
     // since this is built to make booleans.
     protected FixedNeuron output;
+    // Replaces inputs, neurons and output when training in double or float
+    // precision.
+    protected PrimitiveNet primitiveNet;
+    // The training dataset's row-major inputs and targets, set in init() for
+    // primitive nets. Shared with the dataset, never written to.
+    private double[] trainInputs;
+    private double[] trainTargets;
+    // The training rows of BigDecimal nets, set in init(), see
+    // NetDataSpecification.getTrainData.
+    private List<InputsAndTarget> bigDecimalRows;
+    // Only set while a net with a parallel mode is training.
+    private ParallelTrainer parallelTrainer;
     private TimingInfo timingInfo;
 
+    // Index of this net among parallel restarts, null when trained alone.
+    private Integer restart;
+
+    // Set by enableCheckpoints, training then saves its state every
+    // checkpointIntervalMillis and whenever it runs out of time.
+    private CheckpointStore checkpointStore;
+    private String dataHash;
+    private long checkpointIntervalMillis;
+    private long lastCheckpointMillis;
+    // File iteration the next training run starts from, set by resumeFrom.
+    private int startEpoch;
+
     private List<TrainingStat> trainingStats = new ArrayList<>();
     private TrainingStopReason trainingStopReason;
     public boolean brokeAtLocalMax;
@@ -57,11 +89,26 @@ public class RectNetFixed {
      * Constructs a new RectNet with 10 inputs and 5 layers of network.
      */
     public RectNetFixed(String netId, List<String> trainLines, ScaleFunctionType scaleFunctionType) {
-        this.netSpec = FileParser.parseLines(trainLines, scaleFunctionType);
+        this(netId, trainLines, scaleFunctionType, TrainingOptions.defaults());
+    }
+
+    public RectNetFixed(String netId, List<String> trainLines, ScaleFunctionType scaleFunctionType,
+            TrainingOptions options) {
+        this(netId, FileParser.parseLines(trainLines, scaleFunctionType), options);
+    }
+
+    /**
+     * Builds a freshly initialized net for an already parsed spec. The spec
+     * is only read, so several nets may share one.
+     */
+    public RectNetFixed(String netId, NetTrainSpecification netSpec, TrainingOptions options) {
         if (netSpec.getDepth() < 1 || netSpec.getSide() < 1) {
             throw new IllegalArgumentException("Depth and numInputs must be >= 1");
         }
+        this.netSpec = netSpec;
         this.name = netId;
+        this.options = options;
+        this.random = options.getSeed() == null ? new Random() : new Random(options.getSeed());
         init();
     }
 
@@ -88,9 +135,134 @@ public class RectNetFixed {
         Validate.isTrue(rightCol < this.netSpec.getDepth());
         Validate.isTrue(leftRow < this.netSpec.getSide());
         Validate.isTrue(rightRow < this.netSpec.getSide());
+        if (this.primitiveNet != null) {
+            return BigDecimal.valueOf(this.primitiveNet.getWeight(leftCol, leftRow, rightCol, rightRow));
+        }
         return this.neurons[rightCol][rightRow].getWeight(leftRow);
     }
 
+    /**
+     * Changes the weight between two neurons by the given amount. Only works
+     * for internal layers (not the output neuron layer).
+     *
+     * @param leftCol
+     *            column number of neuron to left of connection
+     * @param leftRow
+     *            row number of neuron to left of connection
+     * @param rightCol
+     *            column number of neuron to right of connection
+     * @param rightRow
+     *            row number of neuron to right of connection
+     * @param dw
+     *            amount to change the weight by
+     */
+    public void changeWeight(int leftCol, int leftRow, int rightCol, int rightRow, BigDecimal dw) {
+        Validate.isTrue(leftCol >= 0);
+        Validate.isTrue(leftRow >= 0);
+        Validate.isTrue(rightCol >= 0);
+        Validate.isTrue(rightRow >= 0);
+        Validate.isTrue(leftCol < this.netSpec.getDepth());
+        Validate.isTrue(rightCol < this.netSpec.getDepth());
+        Validate.isTrue(leftRow < this.netSpec.getSide());
+        Validate.isTrue(rightRow < this.netSpec.getSide());
+        if (this.primitiveNet != null) {
+            this.primitiveNet.changeWeight(leftCol, leftRow, rightCol, rightRow, dw.doubleValue());
+            return;
+        }
+        this.neurons[rightCol][rightRow].changeWeight(leftRow, dw);
+    }
+
+    /**
+     * Snapshot of every weight in the net, whatever its precision.
+     */
+    public NetWeights exportWeights() {
+        NetWeights weights = new NetWeights(this.netSpec.getSide(), this.netSpec.getDepth());
+        if (this.primitiveNet != null) {
+            this.primitiveNet.copyWeightsTo(weights);
+            return weights;
+        }
+        int side = this.netSpec.getSide();
+        int depth = this.netSpec.getDepth();
+        for (int row = 0; row < side; row++) {
+            weights.getBlock(0)[row] = this.neurons[0][row].getWeight(0).doubleValue();
+            weights.getBlock(depth)[row] = this.output.getWeight(row).doubleValue();
+        }
+        for (int col = 1; col < depth; col++) {
+            double[] block = weights.getBlock(col);
+            for (int rightRow = 0; rightRow < side; rightRow++) {
+                for (int leftRow = 0; leftRow < side; leftRow++) {
+                    block[rightRow * side + leftRow] = this.neurons[col][rightRow].getWeight(leftRow).doubleValue();
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Snapshot of the weights together with what is needed to use them
+     * without the training data.
+     */
+    public Model exportModel() {
+        // BigDecimal nets always use the exact sigmoid.
+        Activation activation = this.primitiveNet != null ? this.options.getActivation() : Activation.SIGMOID;
+        return new Model(exportWeights(), activation, this.netSpec.getNetData().getScaleFunction());
+    }
+
+    /**
+     * Replaces every weight in the net, e.g. to start training from an
+     * earlier net's weights instead of random ones. The weights must have
+     * this net's side and depth.
+     */
+    public void importWeights(NetWeights weights) {
+        Validate.isTrue(weights.getSide() == this.netSpec.getSide() && weights.getDepth() == this.netSpec.getDepth(),
+                "Weights must match the net's side and depth");
+        if (this.primitiveNet != null) {
+            this.primitiveNet.copyWeightsFrom(weights);
+            return;
+        }
+        int side = this.netSpec.getSide();
+        int depth = this.netSpec.getDepth();
+        for (int row = 0; row < side; row++) {
+            setWeight(this.neurons[0][row], 0, weights.getBlock(0)[row]);
+            setWeight(this.output, row, weights.getBlock(depth)[row]);
+        }
+        for (int col = 1; col < depth; col++) {
+            double[] block = weights.getBlock(col);
+            for (int rightRow = 0; rightRow < side; rightRow++) {
+                for (int leftRow = 0; leftRow < side; leftRow++) {
+                    setWeight(this.neurons[col][rightRow], leftRow, block[rightRow * side + leftRow]);
+                }
+            }
+        }
+    }
+
+    private static void setWeight(FixedNeuron neuron, int index, double weight) {
+        neuron.changeWeight(index, BigDecimal.valueOf(weight).subtract(neuron.getWeight(index)));
+    }
+
+    /**
+     * Makes training save a checkpoint to the store at most every
+     * intervalMillis, and whenever it runs out of time. The checkpoint is
+     * deleted once training finishes. dataHash identifies the training data
+     * so that only a job on the same data resumes from it.
+     */
+    public void enableCheckpoints(CheckpointStore checkpointStore, String dataHash, long intervalMillis) {
+        this.checkpointStore = checkpointStore;
+        this.dataHash = dataHash;
+        this.checkpointIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Restores the weights, best score and stats of an earlier run, the next
+     * call to train carries on from the checkpoint's epoch.
+     */
+    public void resumeFrom(Checkpoint checkpoint) {
+        importWeights(checkpoint.getModel().getWeights());
+        this.startEpoch = checkpoint.getEpoch();
+        this.maxScore = checkpoint.getMaxScore();
+        this.trainingStats = new ArrayList<>(checkpoint.getTrainingStats());
+    }
+
     public TimingInfo getTimingInfo() {
         return this.timingInfo;
     }
@@ -108,8 +280,45 @@ public class RectNetFixed {
      *
      * Initial weights are specified by initNum(), allowing random initial
      * weights, or some other set.
+     *
+     * Double and float precision nets keep the same layout inside a
+     * PrimitiveNet instead.
      */
     private void init() {
+        if (this.options.getPrecision() != Precision.BIGDECIMAL) {
+            int batchSize = Math.min(this.netSpec.getBatchSize(),
+                    Math.max(1, this.netSpec.getNetData().getTrainDataset().size()));
+            if (this.options.getPrecision() == Precision.FLOAT) {
+                if (this.options.isSplitLayers()) {
+                    log.warn("Layer splitting is only supported in double precision, net {} is not split", this.name);
+                }
+                this.primitiveNet = new FloatNet(this.netSpec.getSide(), this.netSpec.getDepth(),
+                        batchSize, this.options.getActivation(), this.random);
+            } else {
+                this.primitiveNet = new DoubleNet(this.netSpec.getSide(), this.netSpec.getDepth(),
+                        batchSize, this.options.getActivation(), this.random,
+                        this.options.isSplitLayers() ? LayerSplitter.forSide(this.netSpec.getSide()) : null);
+            }
+            initTrainRows();
+            return;
+        }
+        this.bigDecimalRows = this.netSpec.getNetData().getTrainData();
+        if (this.netSpec.getBatchSize() > 1) {
+            log.warn("Batch size {} is only supported in primitive precisions, training net {} row by row",
+                    this.netSpec.getBatchSize(), this.name);
+        }
+        if (this.options.getActivation() != Activation.SIGMOID) {
+            log.warn("Activation {} is only supported in primitive precisions, net {} uses {}",
+                    this.options.getActivation(), this.name, Activation.SIGMOID);
+        }
+        if (this.options.getParallelMode() != ParallelMode.SERIAL) {
+            log.warn("Parallel mode {} is only supported in primitive precisions, training net {} serially",
+                    this.options.getParallelMode(), this.name);
+        }
+        if (this.options.getScoring() != ScoringMode.EXACT) {
+            log.warn("Scoring {} is only supported in primitive precisions, net {} scores {}",
+                    this.options.getScoring(), this.name, ScoringMode.EXACT);
+        }
         initEmptyNeurons();
         // Make connections between neurons and inputs.
         initNeuronConnections();
@@ -155,6 +364,12 @@ public class RectNetFixed {
         }
     }
 
+    private void initTrainRows() {
+        Dataset trainData = this.netSpec.getNetData().getTrainDataset();
+        this.trainInputs = trainData.getInputs();
+        this.trainTargets = trainData.getTargets();
+    }
+
     /**
      * Allows network weight initialization to be changed in one location.
      *
@@ -162,7 +377,7 @@ public class RectNetFixed {
      *         connections.
      */
     private BigDecimal initNum() {
-        return BigDecimal.valueOf((Math.random() - .5) * 1.0);
+        return BigDecimal.valueOf((this.random.nextDouble() - .5) * 1.0);
     }
 
     /**
@@ -174,15 +389,30 @@ public class RectNetFixed {
      */
     public void setInputs(BigDecimal[] inputs) {
         Validate.isTrue(inputs.length == this.netSpec.getSide());
+        if (this.primitiveNet != null) {
+            this.primitiveNet.setInputs(toDoubles(inputs));
+            return;
+        }
         for (int j = 0; j < this.netSpec.getSide(); j++) {
             this.inputs[j].setValue(inputs[j]);
         }
     }
 
+    private static double[] toDoubles(BigDecimal[] values) {
+        double[] doubles = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            doubles[i] = values[i].doubleValue();
+        }
+        return doubles;
+    }
+
     /**
      * Returns the output value from this network run.
      */
     public BigDecimal getOutput() {
+        if (this.primitiveNet != null) {
+            return BigDecimal.valueOf(this.primitiveNet.getOutput());
+        }
         BigDecimal[] outs = new BigDecimal[this.netSpec.getSide()];
         BigDecimal[] ins = new BigDecimal[this.netSpec.getSide()];
         for (int j = 0; j < this.netSpec.getSide(); j++) {
@@ -219,51 +449,93 @@ public class RectNetFixed {
             BigDecimal learningConstant) throws InterruptedException {
         Validate.isTrue(iterations > 0);
         Validate.isTrue(inputs.length == this.netSpec.getSide());
+        if (this.primitiveNet != null) {
+            train(toDoubles(inputs), desired.doubleValue(), iterations, learningConstant.doubleValue());
+            return;
+        }
         for (int lcv = 0; lcv < iterations && !hasTimeExpired(); lcv++) {
             doIteration(inputs, desired, learningConstant);
         }
     }
 
     /**
-     * Denormalizes targets and estimates.
+     * Returns the output the last iteration trained from, NaN if time ran
+     * out before the first one.
      */
-    public String getAugout() {
-        StringBuilder sb = new StringBuilder();
-        for (InputsAndTarget trainDatum : this.getNetSpec().getNetData().getTrainData()) {
-            writeDataLine(sb, trainDatum);
-        }
-        for (InputsAndTarget predictionDatum : this.getNetSpec().getNetData().getPredictionData()) {
-            writePredictionLine(sb, predictionDatum);
-        }
-        return sb.toString();
+    private double train(double[] inputs, double desired, int iterations,
+            double learningConstant) throws InterruptedException {
+        return train(inputs, 0, desired, iterations, learningConstant);
     }
 
-    private void writePredictionLine(StringBuilder sb, InputsAndTarget predictionDatum) {
-        sb.append(predictionDatum.getDate()).append(" ");
-        sb.append("NULL").append(" ");
-
-        this.setInputs(predictionDatum.getInputs());
-        BigDecimal trainedEstimate = this.getOutput();
-        trainedEstimate = this.getNetSpec().getNetData().denormalize(trainedEstimate);
-        sb.append(trainedEstimate.doubleValue()).append(" ");
-
-        sb.append("NULL").append("\n");
+    /**
+     * Same as train for the row of inputs starting at offset in rows.
+     */
+    private double train(double[] rows, int offset, double desired, int iterations,
+            double learningConstant) throws InterruptedException {
+        double output = Double.NaN;
+        for (int lcv = 0; lcv < iterations && !hasTimeExpired(); lcv++) {
+            checkInterrupted();
+            output = this.primitiveNet.train(rows, offset, desired, learningConstant);
+        }
+        return output;
     }
 
-    private void writeDataLine(StringBuilder sb, InputsAndTarget trainDatum) {
-        sb.append(trainDatum.getDate()).append(" ");
+    /**
+     * Immutable double precision copy of the net as it is now, for
+     * predictions that can be shared across threads.
+     */
+    public FrozenNet freeze() {
+        return FrozenNet.of(exportModel());
+    }
 
-        BigDecimal target = trainDatum.getTarget();
-        target = this.getNetSpec().getNetData().denormalize(target);
-        sb.append(target.doubleValue()).append(" ");
+    /**
+     * Denormalizes targets and estimates.
+     */
+    public String getAugout() {
+        return computeAugout().toText();
+    }
 
-        this.setInputs(trainDatum.getInputs());
-        BigDecimal trainedEstimate = this.getOutput();
-        trainedEstimate = this.getNetSpec().getNetData().denormalize(trainedEstimate);
-        sb.append(trainedEstimate.doubleValue()).append(" ");
+    /**
+     * Denormalized targets and estimates of every row. Primitive nets
+     * estimate through a FrozenNet, BigDecimal nets through their own
+     * BigDecimal forward pass, so the estimates are the ones training scored.
+     */
+    public Augout computeAugout() {
+        Dataset trainData = this.getNetSpec().getNetData().getTrainDataset();
+        Dataset predictionData = this.getNetSpec().getNetData().getPredictionDataset();
+        double[] trainEstimates;
+        double[] predictionEstimates;
+        if (this.primitiveNet != null) {
+            FrozenNet frozenNet = freeze();
+            trainEstimates = frozenNet.predictRowsDenormalized(trainData.getInputs());
+            predictionEstimates = frozenNet.predictRowsDenormalized(predictionData.getInputs());
+        } else {
+            trainEstimates = computeBigDecimalEstimates(this.getNetSpec().getNetData().getTrainData());
+            predictionEstimates = computeBigDecimalEstimates(this.getNetSpec().getNetData().getPredictionData());
+        }
+        double[] targets = trainData.getTargets().clone();
+        this.getNetSpec().getNetData().getScaleFunction().denormalize(targets);
+        int rows = trainData.size() + predictionData.size();
+        String[] dates = new String[rows];
+        double[] estimates = new double[rows];
+        for (int i = 0; i < trainData.size(); i++) {
+            dates[i] = trainData.getDate(i);
+        }
+        for (int i = 0; i < predictionData.size(); i++) {
+            dates[trainData.size() + i] = predictionData.getDate(i);
+        }
+        System.arraycopy(trainEstimates, 0, estimates, 0, trainEstimates.length);
+        System.arraycopy(predictionEstimates, 0, estimates, trainEstimates.length, predictionEstimates.length);
+        return new Augout(dates, targets, estimates);
+    }
 
-        sb.append(Math.abs(target.doubleValue() - trainedEstimate.doubleValue()));
-        sb.append("\n");
+    private double[] computeBigDecimalEstimates(List<InputsAndTarget> rows) {
+        double[] estimates = new double[rows.size()];
+        for (int i = 0; i < estimates.length; i++) {
+            this.setInputs(rows.get(i).getInputs());
+            estimates[i] = this.getNetSpec().getNetData().denormalize(this.getOutput()).doubleValue();
+        }
+        return estimates;
     }
 
     private void doIteration(BigDecimal[] inputs, BigDecimal desired, BigDecimal learningConstant) throws InterruptedException {
@@ -387,9 +659,22 @@ public class RectNetFixed {
      * @throws InterruptedException
      */
     public RectNetFixed train(long trainingTimeLimitMillis, int maxTries) throws InterruptedException {
+        try {
+            return trainWithRetries(trainingTimeLimitMillis, maxTries);
+        } finally {
+            if (this.parallelTrainer != null) {
+                this.parallelTrainer.shutdown();
+                this.parallelTrainer = null;
+            }
+        }
+    }
+
+    private RectNetFixed trainWithRetries(long trainingTimeLimitMillis, int maxTries) throws InterruptedException {
         log.info("Starting Alfred training");
         int tryNumber = 0;
         while (tryNumber < maxTries) {
+            tryNumber++;
+            this.brokeAtLocalMax = false;
             if (trainingTimeLimitMillis <= 0) {
                 log.info("Training timeout was {}, which is <= 0, so jobs will not time out.", trainingTimeLimitMillis);
             }
@@ -397,76 +682,122 @@ public class RectNetFixed {
             MDC.put("learningConstant", netSpec.getLearningConstant());
             MDC.put("minTrainingRounds", netSpec.getMinTrainingRounds());
             this.timingInfo = TimingInfo.withDuration(trainingTimeLimitMillis);
+            this.lastCheckpointMillis = this.timingInfo.getStartTime();
+            // Only the first try carries on from a checkpoint.
+            int firstEpoch = this.startEpoch;
+            this.startEpoch = 0;
             // Actually do the training part
 
             int fileIteration;
             BigDecimal score = null;
+            // Primitive nets score and compare in doubles so that a steady
+            // state epoch allocates nothing, score is only boxed for logging.
+            double doubleScore = Double.NaN;
+            double doubleCutoff = -1.0 * netSpec.getPerformanceCutoff().doubleValue();
+            double maxDoubleScore = this.maxScore.doubleValue();
 
-            List<InputsAndTarget> inputsAndTargets = netSpec.getNetData().getTrainData();
-            logStatSnapshot(0, null, inputsAndTargets, TrainingStage.STARTING, Optional.empty());
-            for (fileIteration = 0; fileIteration < netSpec.getNumberFileIterations(); fileIteration++) {
+            Dataset inputsAndTargets = netSpec.getNetData().getTrainDataset();
+            logStatSnapshot(firstEpoch, null, inputsAndTargets, TrainingStage.STARTING, Optional.empty());
+            for (fileIteration = firstEpoch; fileIteration < netSpec.getNumberFileIterations(); fileIteration++) {
 
                 // train all data rows for numberRowIterations times.
-                for (int lcv = 0; lcv < inputsAndTargets.size() && !this.hasTimeExpired(); lcv++) {
-                    InputsAndTarget inputsAndTarget = inputsAndTargets.get(lcv);
-                    this.train(inputsAndTarget.getInputs(),
-                              inputsAndTarget.getTarget(),
-                              netSpec.getNumberRowIterations(),
-                              netSpec.getLearningConstant());
-                }
+                double trainedErrorsSquared = trainRows(inputsAndTargets);
 
                 if (this.hasTimeExpired()) {
                     log.debug("Breaking training because time ran out");
                     this.trainingStopReason = TrainingStopReason.OUT_OF_TIME;
+                    if (this.checkpointStore != null) {
+                        // The interrupted epoch counts as not trained.
+                        saveCheckpoint(fileIteration, this.primitiveNet != null
+                                ? BigDecimal.valueOf(maxDoubleScore) : this.maxScore);
+                    }
                     break;
                 }
 
                 // compute total score
-                score = BigDecimal.ZERO;
-                for (int lcv = 0; lcv < inputsAndTargets.size(); lcv++) {
-                    InputsAndTarget inputsAndTarget = inputsAndTargets.get(lcv);
-                    this.setInputs(inputsAndTarget.getInputs());
-                    // Math.pow((targets.get(lcv) - r.getOutput()), 2)
-                    BigDecimal difference = inputsAndTarget.getTarget().subtract(this.getOutput());
-                    score = score.add(difference.multiply(difference));
+                double rmsError;
+                boolean hitCutoff;
+                boolean improved;
+                if (this.primitiveNet != null) {
+                    // Fused epochs before minTrainingRounds can't stop at a
+                    // local max, so the training pass errors only screen
+                    // them for the cutoff. Every score that decides anything
+                    // comes from an exact pass.
+                    boolean exact = this.options.getScoring() != ScoringMode.FUSED
+                            || fileIteration >= netSpec.getMinTrainingRounds();
+                    double errorsSquared = exact ? computeDoubleErrorsSquared() : trainedErrorsSquared;
+                    doubleScore = -1.0 * errorsSquared / this.trainTargets.length;
+                    hitCutoff = doubleScore >= doubleCutoff;
+                    if (hitCutoff && !exact) {
+                        // Only stop on a cutoff the current weights reach.
+                        errorsSquared = computeDoubleErrorsSquared();
+                        doubleScore = -1.0 * errorsSquared / this.trainTargets.length;
+                        hitCutoff = doubleScore >= doubleCutoff;
+                        exact = true;
+                    }
+                    rmsError = getRmsError(this.trainTargets.length, errorsSquared);
+                    // A screened epoch is not compared with the best score.
+                    improved = !exact || doubleScore >= maxDoubleScore;
+                    if (exact && doubleScore >= maxDoubleScore) {
+                        maxDoubleScore = doubleScore;
+                    }
+                } else {
+                    score = computeErrorsSquared(inputsAndTargets);
+                    double errorsSquared = score.doubleValue();
+                    rmsError = getRmsError(inputsAndTargets.size(), errorsSquared);
+                    score = score.multiply(BigDecimal.valueOf(-1.0));
+                    score = score.divide(BigDecimal.valueOf(inputsAndTargets.size()), BigDecimals.MATH_CONTEXT);
+
+                    // if (score > -1 * cutoff)
+                    //   ==> if (score - (-1 * cutoff) > 0)
+                    //     ==> if (min(score - (-1 * cutoff), 0) == 0)
+                    hitCutoff = BigDecimal.ZERO.min(
+                            score.subtract(BigDecimal.valueOf(-1.0).multiply(netSpec.getPerformanceCutoff())))
+                                .equals(BigDecimal.ZERO);
+                    // if (score > maxScore)
+                    //   ==> if (score - maxScore > 0)
+                    //     ==> if (min(score - maxScore, 0) == 0)
+                    improved = !hitCutoff && BigDecimal.ZERO.min(score.subtract(this.maxScore)).equals(BigDecimal.ZERO);
+                    if (improved) {
+                        this.maxScore = score;
+                    }
                 }
-                double errorsSquared = score.doubleValue();
-                double rmsError = getRmsError(inputsAndTargets.size(), errorsSquared);
-                score = score.multiply(BigDecimal.valueOf(-1.0));
-                score = score.divide(BigDecimal.valueOf(inputsAndTargets.size()), BigDecimals.MATH_CONTEXT);
-
-                // if (score > -1 * cutoff)
-                //   ==> if (score - (-1 * cutoff) > 0)
-                //     ==> if (min(score - (-1 * cutoff), 0) == 0)
-                if (BigDecimal.ZERO.min(
-                        score.subtract(BigDecimal.valueOf(-1.0).multiply(netSpec.getPerformanceCutoff())))
-                            .equals(BigDecimal.ZERO)) {
+
+                if (hitCutoff) {
                     this.trainingStopReason = TrainingStopReason.HIT_PERFORMANCE_CUTOFF;
                     break;
                 }
-                // if (score > maxScore)
-                //   ==> if (score - maxScore > 0)
-                //     ==> if (min(score - maxScore, 0) == 0)
-                if (BigDecimal.ZERO.min(score.subtract(this.maxScore)).equals(BigDecimal.ZERO)) {
-                    this.maxScore = score;
-                } else if (fileIteration < netSpec.getMinTrainingRounds()) {
-                    continue;
-                } else {
+                if (this.checkpointStore != null
+                        && System.currentTimeMillis() - this.lastCheckpointMillis >= this.checkpointIntervalMillis) {
+                    saveCheckpoint(fileIteration + 1, this.primitiveNet != null
+                            ? BigDecimal.valueOf(maxDoubleScore) : this.maxScore);
+                }
+                if (!improved) {
+                    if (fileIteration < netSpec.getMinTrainingRounds()) {
+                        continue;
+                    }
                     log.debug("Breaking training at a local max");
                     this.brokeAtLocalMax = true;
                     break;
                 }
 
                 if (fileIteration % 100 == 0 &&  fileIteration != 0) {
+                    if (this.primitiveNet != null) {
+                        score = BigDecimal.valueOf(doubleScore);
+                    }
                     logStatSnapshot(fileIteration, score, inputsAndTargets, TrainingStage.RUNNING, Optional.of(rmsError));
                 }
 
             }
+            if (this.primitiveNet != null && !Double.isNaN(doubleScore)) {
+                score = BigDecimal.valueOf(doubleScore);
+                this.maxScore = BigDecimal.valueOf(maxDoubleScore);
+            }
             if (this.trainingStopReason == null) {
                 log.debug("Breaking training because the training limit was hit");
                 this.trainingStopReason = TrainingStopReason.HIT_TRAINING_LIMIT;
             }
-            MDC.put("netScore", score.round(new MathContext(4)).toString());
+            MDC.put("netScore", score == null ? null : score.round(new MathContext(4)).toString());
             MDC.put("roundsTrained", fileIteration);
             if (this.brokeAtLocalMax) {
                 long timeExpired = System.currentTimeMillis() - this.timingInfo.getStartTime();
@@ -475,6 +806,9 @@ public class RectNetFixed {
             } else {
                 log.debug("Finished Alfred training");
                 logStatSnapshot(fileIteration, score, inputsAndTargets, TrainingStage.DONE, Optional.empty());
+                if (this.checkpointStore != null && this.trainingStopReason != TrainingStopReason.OUT_OF_TIME) {
+                    deleteCheckpoint();
+                }
                 return this;
             }
         }
@@ -482,6 +816,135 @@ public class RectNetFixed {
         throw new IllegalStateException("Unable to train file " + name + "!");
     }
 
+    private void saveCheckpoint(int epoch, BigDecimal maxScore) {
+        try {
+            this.checkpointStore.save(new Checkpoint(this.name, this.dataHash, epoch, maxScore, exportModel(),
+                    this.trainingStats));
+            log.debug("Checkpointed net {} after {} rounds", this.name, epoch);
+        } catch (IOException e) {
+            log.warn("Could not checkpoint net {}", this.name, e);
+        }
+        this.lastCheckpointMillis = System.currentTimeMillis();
+    }
+
+    private void deleteCheckpoint() {
+        try {
+            this.checkpointStore.delete(this.name);
+        } catch (IOException e) {
+            log.warn("Could not delete the checkpoint of net {}", this.name, e);
+        }
+    }
+
+    /**
+     * Trains one epoch. Primitive nets return the summed squared error each
+     * row had on its last iteration, before that update, for fused scoring;
+     * BigDecimal nets return NaN.
+     */
+    private double trainRows(Dataset inputsAndTargets) throws InterruptedException {
+        if (usesParallelTrainer()) {
+            if (this.parallelTrainer == null) {
+                this.parallelTrainer = newParallelTrainer();
+            }
+            return this.parallelTrainer.trainEpoch(this.trainInputs, this.trainTargets,
+                    netSpec.getNumberRowIterations(), netSpec.getLearningConstant().doubleValue(), this.timingInfo);
+        }
+        if (this.primitiveNet != null && this.primitiveNet.getBatchSize() > 1) {
+            return trainBatches();
+        }
+        if (this.primitiveNet != null) {
+            double learningConstant = netSpec.getLearningConstant().doubleValue();
+            int side = netSpec.getSide();
+            double errorsSquared = 0;
+            for (int lcv = 0; lcv < this.trainTargets.length && !this.hasTimeExpired(); lcv++) {
+                double output = this.train(this.trainInputs,
+                                           lcv * side,
+                                           this.trainTargets[lcv],
+                                           netSpec.getNumberRowIterations(),
+                                           learningConstant);
+                double difference = this.trainTargets[lcv] - output;
+                errorsSquared += difference * difference;
+            }
+            return errorsSquared;
+        }
+        for (int lcv = 0; lcv < this.bigDecimalRows.size() && !this.hasTimeExpired(); lcv++) {
+            InputsAndTarget inputsAndTarget = this.bigDecimalRows.get(lcv);
+            this.train(inputsAndTarget.getInputs(),
+                      inputsAndTarget.getTarget(),
+                      netSpec.getNumberRowIterations(),
+                      netSpec.getLearningConstant());
+        }
+        return Double.NaN;
+    }
+
+    private boolean usesParallelTrainer() {
+        if (this.primitiveNet == null) {
+            return false;
+        }
+        switch (this.options.getParallelMode()) {
+            case HOGWILD:
+                // One Hogwild thread is just the serial loop.
+                return this.options.getEffectiveTrainingThreads() > 1;
+            case SYNCHRONOUS:
+                // Without a batch size every step is one row, which the
+                // serial loop already trains deterministically.
+                return this.primitiveNet.getBatchSize() > 1;
+            default:
+                return false;
+        }
+    }
+
+    private ParallelTrainer newParallelTrainer() {
+        int threads = this.options.getEffectiveTrainingThreads();
+        if (this.options.getParallelMode() == ParallelMode.HOGWILD) {
+            return new HogwildTrainer(this.primitiveNet, threads);
+        }
+        return new SynchronousTrainer(this.primitiveNet, threads, this.primitiveNet.getBatchSize());
+    }
+
+    /**
+     * Mini-batch version of trainRows, each batch gets numberRowIterations
+     * averaged updates. The last batch of an epoch may be short.
+     */
+    private double trainBatches() throws InterruptedException {
+        double learningConstant = netSpec.getLearningConstant().doubleValue();
+        int batchSize = this.primitiveNet.getBatchSize();
+        double errorsSquared = 0;
+        for (int from = 0; from < this.trainTargets.length && !this.hasTimeExpired(); from += batchSize) {
+            int count = Math.min(batchSize, this.trainTargets.length - from);
+            double batchErrorsSquared = 0;
+            for (int lcv = 0; lcv < netSpec.getNumberRowIterations() && !hasTimeExpired(); lcv++) {
+                checkInterrupted();
+                batchErrorsSquared = this.primitiveNet.trainBatch(this.trainInputs, this.trainTargets, from, count,
+                        learningConstant);
+            }
+            errorsSquared += batchErrorsSquared;
+        }
+        return errorsSquared;
+    }
+
+    private BigDecimal computeErrorsSquared(Dataset inputsAndTargets) {
+        BigDecimal score = BigDecimal.ZERO;
+        for (int lcv = 0; lcv < this.bigDecimalRows.size(); lcv++) {
+            InputsAndTarget inputsAndTarget = this.bigDecimalRows.get(lcv);
+            this.setInputs(inputsAndTarget.getInputs());
+            // Math.pow((targets.get(lcv) - r.getOutput()), 2)
+            BigDecimal difference = inputsAndTarget.getTarget().subtract(this.getOutput());
+            score = score.add(difference.multiply(difference));
+        }
+        return score;
+    }
+
+    private double computeDoubleErrorsSquared() {
+        double errorsSquared = 0;
+        int side = netSpec.getSide();
+        for (int lcv = 0; lcv < this.trainTargets.length; lcv++) {
+            this.primitiveNet.setInputs(this.trainInputs, lcv * side);
+            double difference = this.trainTargets[lcv] - this.primitiveNet.getOutput();
+            errorsSquared += difference * difference;
+        }
+        return errorsSquared;
+    }
+
     private double getRmsError(int size, double errorsSquared) {
         if (errorsSquared == 0) {
             return 0;
@@ -490,7 +953,7 @@ public class RectNetFixed {
         }
     }
 
-    private void logStatSnapshot(int fileIteration, BigDecimal score, List<InputsAndTarget> inputsAndTargets, TrainingStage trainingStage, Optional<Double> rmsError) {
+    private void logStatSnapshot(int fileIteration, BigDecimal score, Dataset inputsAndTargets, TrainingStage trainingStage, Optional<Double> rmsError) {
         MDC.put("netScore", score == null ? null : score.round(new MathContext(4)).toString());
         MDC.put("roundsTrained", fileIteration);
         double rmsErrorValue;
@@ -500,21 +963,32 @@ public class RectNetFixed {
             rmsErrorValue = computeRmsError(inputsAndTargets);
         }
         log.debug("Net {} has trained for {} rounds, RMS Error: {}", this.name, fileIteration, rmsError.orElse(0D));
-        TrainingStat trainingStat = new TrainingStat(this.name, this.netSpec.getNetData().getTrainData().get(0).getInputs().length, this.netSpec.getLearningConstant().doubleValue(), this.netSpec.getNumberRowIterations());
+        TrainingStat trainingStat = new TrainingStat(this.name, this.netSpec.getSide(), this.netSpec.getLearningConstant().doubleValue(), this.netSpec.getNumberRowIterations());
         trainingStat.setRmsError(rmsErrorValue);
         trainingStat.setSecondsElapsed((int) (System.currentTimeMillis() - this.timingInfo.getStartTime()) / 1000);
         trainingStat.setRoundsTrained(fileIteration);
         trainingStat.setTrainingStage(trainingStage);
+        trainingStat.setRestart(this.restart);
         if (this.trainingStopReason != null) {
             trainingStat.setTrainingStopReason(this.trainingStopReason);
         }
         this.trainingStats.add(trainingStat);
     }
 
-    private double computeRmsError(List<InputsAndTarget> inputsAndTargets) {
+    /**
+     * RMS error of the current weights over the training rows.
+     */
+    public double computeRmsError() {
+        return computeRmsError(this.netSpec.getNetData().getTrainDataset());
+    }
+
+    private double computeRmsError(Dataset inputsAndTargets) {
+        if (this.primitiveNet != null) {
+            return getRmsError(this.trainTargets.length, computeDoubleErrorsSquared());
+        }
         double totalRmsError = 0;
-        for (int lcv = 0; lcv < inputsAndTargets.size(); lcv++) {
-            InputsAndTarget inputsAndTarget = inputsAndTargets.get(lcv);
+        for (int lcv = 0; lcv < this.bigDecimalRows.size(); lcv++) {
+            InputsAndTarget inputsAndTarget = this.bigDecimalRows.get(lcv);
             this.setInputs(inputsAndTarget.getInputs());
             double target = inputsAndTarget.getTarget().doubleValue();
             double actual = this.getOutput().doubleValue();
@@ -0,0 +1,23 @@
+package com.augurworks.alfred;
+
+/**
+ * Where the per-epoch score that drives the stopping rules comes from.
+ */
+public enum ScoringMode {
+    /**
+     * A separate forward pass over every row after the epoch, scoring the
+     * weights exactly as they are.
+     */
+    EXACT,
+    /**
+     * Epochs before the minimum training rounds, which can't stop at a local
+     * max, are screened with the squared errors the training pass already
+     * computed, each row measured just before its last update of the epoch.
+     * Saves the extra pass on those epochs. A performance cutoff they hit is
+     * confirmed with an exact pass, and later epochs are scored exactly, so
+     * the best score the local max check compares against only covers
+     * exactly scored epochs. Primitive precisions only.
+     */
+    FUSED,
+    ;
+}
@@ -0,0 +1,95 @@
+package com.augurworks.alfred;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Deterministic data-parallel training of a primitive net. Rows are trained
+ * in synchronous steps: the rows of a step are cut into one contiguous chunk
+ * per thread, each chunk's gradient is summed into its own fork against the
+ * same weights, and the chunk gradients are added up in chunk order before
+ * one averaged update is applied.
+ *
+ * Which thread runs a chunk never changes the arithmetic, so for a given
+ * seed and thread count every run produces bit-identical weights.
+ *
+ * A step covers batchSize rows, so nets are only trained here when they
+ * have a batch size above 1.
+ */
+class SynchronousTrainer implements ParallelTrainer {
+
+    private final PrimitiveNet net;
+    private final PrimitiveNet[] forks;
+    private final int batchSize;
+    private final ForkJoinPool pool;
+
+    SynchronousTrainer(PrimitiveNet net, int threads, int batchSize) {
+        this.net = net;
+        this.forks = new PrimitiveNet[threads];
+        this.forks[0] = net;
+        for (int i = 1; i < threads; i++) {
+            this.forks[i] = net.fork();
+        }
+        this.batchSize = batchSize;
+        this.pool = new ForkJoinPool(threads);
+    }
+
+    @Override
+    public double trainEpoch(double[] inputs, double[] targets, int numberRowIterations, double learningConstant,
+            TimingInfo timingInfo) throws InterruptedException {
+        double errorsSquared = 0;
+        for (int from = 0; from < targets.length && !timingInfo.hasTimeExpired(); from += this.batchSize) {
+            int count = Math.min(this.batchSize, targets.length - from);
+            double stepErrorsSquared = 0;
+            for (int lcv = 0; lcv < numberRowIterations && !timingInfo.hasTimeExpired(); lcv++) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException("Job detected interrupt flag");
+                }
+                stepErrorsSquared = trainStep(inputs, targets, from, count, learningConstant);
+            }
+            errorsSquared += stepErrorsSquared;
+        }
+        return errorsSquared;
+    }
+
+    /**
+     * Returns the step's summed squared error before its update.
+     */
+    private double trainStep(double[] inputs, double[] targets, int from, int count, double learningConstant)
+            throws InterruptedException {
+        int chunks = Math.min(this.forks.length, count);
+        List<Callable<Double>> tasks = new ArrayList<>(chunks);
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            PrimitiveNet fork = this.forks[chunk];
+            int start = from + (int) ((long) count * chunk / chunks);
+            int end = from + (int) ((long) count * (chunk + 1) / chunks);
+            tasks.add(() -> {
+                fork.clearGradient();
+                return fork.accumulateGradient(inputs, targets, start, end - start);
+            });
+        }
+        // Summed in chunk order like the gradients, so it is deterministic too.
+        double errorsSquared = 0;
+        for (Future<Double> future : this.pool.invokeAll(tasks)) {
+            try {
+                errorsSquared += future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw e;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Synchronous training step failed", e.getCause());
+            }
+        }
+        this.net.applyGradients(this.forks, chunks, learningConstant / count);
+        return errorsSquared;
+    }
+
+    @Override
+    public void shutdown() {
+        this.pool.shutdownNow();
+    }
+}
@@ -0,0 +1,261 @@
+package com.augurworks.alfred;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Map;
+
+/**
+ * Per-job knobs that are not part of the augtrain file itself. These usually
+ * come from the metadata of the training message.
+ */
+public class TrainingOptions {
+
+    public static final String PRECISION_KEY = "precision";
+    public static final String ACTIVATION_KEY = "activation";
+    public static final String PARALLEL_RESTARTS_KEY = "parallelRestarts";
+    public static final String PARALLEL_MODE_KEY = "parallelMode";
+    public static final String TRAINING_THREADS_KEY = "trainingThreads";
+    public static final String SEED_KEY = "seed";
+    public static final String SCORING_KEY = "scoring";
+    public static final String SPLIT_LAYERS_KEY = "splitLayers";
+    public static final String WARM_START_KEY = "warmStart";
+
+    private final Precision precision;
+    private final Activation activation;
+    private final int parallelRestarts;
+    private final ParallelMode parallelMode;
+    private final int trainingThreads;
+    private final Long seed;
+    private final ScoringMode scoring;
+    private final boolean splitLayers;
+    private final boolean warmStart;
+
+    public TrainingOptions(Precision precision, Activation activation) {
+        this(precision, activation, 1, ParallelMode.SERIAL, 0, null, ScoringMode.EXACT, false, false);
+    }
+
+    public TrainingOptions(Precision precision, Activation activation, int parallelRestarts,
+            ParallelMode parallelMode, int trainingThreads, Long seed, ScoringMode scoring, boolean splitLayers,
+            boolean warmStart) {
+        if (parallelRestarts < 1) {
+            throw new IllegalArgumentException("Parallel restarts must be >= 1");
+        }
+        if (trainingThreads < 0) {
+            throw new IllegalArgumentException("Training threads must be >= 0");
+        }
+        this.precision = precision;
+        this.activation = activation;
+        this.parallelRestarts = parallelRestarts;
+        this.parallelMode = parallelMode;
+        this.trainingThreads = trainingThreads;
+        this.seed = seed;
+        this.scoring = scoring;
+        this.splitLayers = splitLayers;
+        this.warmStart = warmStart;
+    }
+
+    public static TrainingOptions defaults() {
+        return new Builder().build();
+    }
+
+    public static TrainingOptions fromMetadata(Map<String, String> metadata) {
+        Builder builder = new Builder();
+        if (metadata == null) {
+            return builder.build();
+        }
+        String precision = metadata.get(PRECISION_KEY);
+        if (!StringUtils.isEmpty(precision)) {
+            builder.precision(Precision.valueOf(precision.trim().toUpperCase()));
+        }
+        String activation = metadata.get(ACTIVATION_KEY);
+        if (!StringUtils.isEmpty(activation)) {
+            builder.activation(Activation.valueOf(activation.trim().toUpperCase()));
+        }
+        String parallelRestarts = metadata.get(PARALLEL_RESTARTS_KEY);
+        if (!StringUtils.isEmpty(parallelRestarts)) {
+            builder.parallelRestarts(Integer.parseInt(parallelRestarts.trim()));
+        }
+        String parallelMode = metadata.get(PARALLEL_MODE_KEY);
+        if (!StringUtils.isEmpty(parallelMode)) {
+            builder.parallelMode(ParallelMode.valueOf(parallelMode.trim().toUpperCase()));
+        }
+        String trainingThreads = metadata.get(TRAINING_THREADS_KEY);
+        if (!StringUtils.isEmpty(trainingThreads)) {
+            builder.trainingThreads(Integer.parseInt(trainingThreads.trim()));
+        }
+        String seed = metadata.get(SEED_KEY);
+        if (!StringUtils.isEmpty(seed)) {
+            builder.seed(Long.parseLong(seed.trim()));
+        }
+        String scoring = metadata.get(SCORING_KEY);
+        if (!StringUtils.isEmpty(scoring)) {
+            builder.scoring(ScoringMode.valueOf(scoring.trim().toUpperCase()));
+        }
+        String splitLayers = metadata.get(SPLIT_LAYERS_KEY);
+        if (!StringUtils.isEmpty(splitLayers)) {
+            builder.splitLayers(Boolean.parseBoolean(splitLayers.trim()));
+        }
+        String warmStart = metadata.get(WARM_START_KEY);
+        if (!StringUtils.isEmpty(warmStart)) {
+            builder.warmStart(Boolean.parseBoolean(warmStart.trim()));
+        }
+        return builder.build();
+    }
+
+    public static class Builder {
+        private Precision precision = Precision.BIGDECIMAL;
+        private Activation activation = Activation.SIGMOID;
+        private int parallelRestarts = 1;
+        private ParallelMode parallelMode = ParallelMode.SERIAL;
+        private int trainingThreads = 0;
+        private Long seed;
+        private ScoringMode scoring = ScoringMode.EXACT;
+        private boolean splitLayers = false;
+        private boolean warmStart = false;
+
+        public Builder precision(Precision precision) {
+            this.precision = precision;
+            return this;
+        }
+
+        public Builder activation(Activation activation) {
+            this.activation = activation;
+            return this;
+        }
+
+        public Builder parallelRestarts(int parallelRestarts) {
+            this.parallelRestarts = parallelRestarts;
+            return this;
+        }
+
+        public Builder parallelMode(ParallelMode parallelMode) {
+            this.parallelMode = parallelMode;
+            return this;
+        }
+
+        public Builder trainingThreads(int trainingThreads) {
+            this.trainingThreads = trainingThreads;
+            return this;
+        }
+
+        public Builder seed(Long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder scoring(ScoringMode scoring) {
+            this.scoring = scoring;
+            return this;
+        }
+
+        public Builder splitLayers(boolean splitLayers) {
+            this.splitLayers = splitLayers;
+            return this;
+        }
+
+        public Builder warmStart(boolean warmStart) {
+            this.warmStart = warmStart;
+            return this;
+        }
+
+        public TrainingOptions build() {
+            return new TrainingOptions(precision, activation, parallelRestarts, parallelMode, trainingThreads, seed,
+                    scoring, splitLayers, warmStart);
+        }
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    public Activation getActivation() {
+        return activation;
+    }
+
+    /**
+     * Number of independently initialized copies of the net trained at the
+     * same time, the best one is kept. 1 means a single net with sequential
+     * retries.
+     */
+    public int getParallelRestarts() {
+        return parallelRestarts;
+    }
+
+    public ParallelMode getParallelMode() {
+        return parallelMode;
+    }
+
+    /**
+     * Threads an epoch is split over when the parallel mode is not SERIAL,
+     * 0 means one per available core.
+     */
+    public int getTrainingThreads() {
+        return trainingThreads;
+    }
+
+    /**
+     * Seed for the initial weights, null for a different net every time.
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Copy of these options with another seed.
+     */
+    public TrainingOptions withSeed(Long seed) {
+        return new TrainingOptions(precision, activation, parallelRestarts, parallelMode, trainingThreads, seed,
+                scoring, splitLayers, warmStart);
+    }
+
+    /**
+     * Copy of these options with another number of training threads.
+     */
+    public TrainingOptions withTrainingThreads(int trainingThreads) {
+        return new TrainingOptions(precision, activation, parallelRestarts, parallelMode, trainingThreads, seed,
+                scoring, splitLayers, warmStart);
+    }
+
+    /**
+     * Copy of these options with layer splitting on or off.
+     */
+    public TrainingOptions withSplitLayers(boolean splitLayers) {
+        return new TrainingOptions(precision, activation, parallelRestarts, parallelMode, trainingThreads, seed,
+                scoring, splitLayers, warmStart);
+    }
+
+    public ScoringMode getScoring() {
+        return scoring;
+    }
+
+    /**
+     * Whether a single double net may split each layer across cores. Only
+     * nets at least LayerSplitter's minimum side wide actually do.
+     */
+    public boolean isSplitLayers() {
+        return splitLayers;
+    }
+
+    /**
+     * Whether the net starts from the last weights stored for its net id
+     * and shape, if any, and stores its own weights once trained.
+     */
+    public boolean isWarmStart() {
+        return warmStart;
+    }
+
+    /**
+     * Training threads with 0 resolved to the number of available cores.
+     */
+    public int getEffectiveTrainingThreads() {
+        return trainingThreads > 0 ? trainingThreads : Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    public String toString() {
+        return "TrainingOptions [precision=" + precision + ", activation=" + activation
+                + ", parallelRestarts=" + parallelRestarts + ", parallelMode=" + parallelMode
+                + ", trainingThreads=" + trainingThreads + ", seed=" + seed + ", scoring=" + scoring
+                + ", splitLayers=" + splitLayers + ", warmStart=" + warmStart + "]";
+    }
+}
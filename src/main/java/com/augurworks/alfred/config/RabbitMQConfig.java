@@ -33,15 +33,25 @@ public class RabbitMQConfig {
     @Value("${rabbitmq.env}")
     private String env;
 
+    @Value("${training.workers:0}")
+    private int trainingWorkers;
+
+    @Value("${training.prefetch:0}")
+    private int trainingPrefetch;
+
     private static final String TRAINING_CHANNEL = "nets.training";
     private static final String RESULTS_CHANNEL = "nets.results";
+    // Enough waiting jobs for the scheduler to reorder without holding many
+    // back from other workers
+    private static final int DEFAULT_PREFETCH_PER_WORKER = 2;
 
     @Bean
     public Channel trainingChannel() {
         log.info("Creating training RabbitMQ channel {}", getTrainingChannelName(env));
         try {
             Channel channel = getConnection().createChannel();
-            channel.basicQos(1);
+            // Jobs held by the worker, running or waiting to be scheduled
+            channel.basicQos(getTrainingPrefetch(trainingPrefetch, getTrainingWorkers(trainingWorkers)));
             channel.queueDeclare(getTrainingChannelName(env), true, false, false, null);
             return channel;
         } catch (IOException | TimeoutException e) {
@@ -79,6 +89,25 @@ public class RabbitMQConfig {
         return connection;
     }
 
+    /**
+     * Number of training jobs a worker runs at once, the number of cores
+     * unless training.workers is set.
+     */
+    public static int getTrainingWorkers(int configured) {
+        return configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Number of training messages a worker holds, twice the number of
+     * training threads unless training.prefetch is set. Messages beyond one
+     * per thread wait in the scheduler, which gives it jobs to choose from
+     * at the cost of holding them back from other workers. Setting it to the
+     * number of threads turns scheduling off.
+     */
+    public static int getTrainingPrefetch(int configured, int workers) {
+        return configured > 0 ? Math.max(configured, workers) : DEFAULT_PREFETCH_PER_WORKER * workers;
+    }
+
     public static String getTrainingChannelName(String env) {
         return TRAINING_CHANNEL + getPostfix(env);
     }
@@ -20,7 +20,9 @@ public class LoggingUtils {
     private static final String HOSTNAME_KEY = "hostname";
     private static final String ENV_KEY = "env";
 
-    public static void addFluentAppender(TrainingMessage trainingMessage, String hostname) {
+    // Synchronized as training workers call it concurrently and the
+    // detach and add below must not interleave.
+    public static synchronized void addFluentAppender(TrainingMessage trainingMessage, String hostname) {
         Map<String, String> metadata = trainingMessage.getMetadata();
         String fluentHost = metadata.get(FLUENT_HOST_KEY);
 
@@ -0,0 +1,10 @@
+package com.augurworks.alfred.messaging;
+
+/**
+ * Compression of a {@link WireFormat#BINARY} message body.
+ */
+public enum Compression {
+    NONE,
+    DEFLATE,
+    ;
+}
@@ -0,0 +1,246 @@
+package com.augurworks.alfred.messaging;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Publishes results with publisher confirms and acks each training message
+ * only once the broker has confirmed its result, so a result is never lost
+ * between training and the results queue: if the publish fails or is
+ * nacked, the training message is requeued instead.
+ *
+ * One thread does all the work on both channels, which are not thread
+ * safe. It takes publishes, confirms and rejects off a queue in batches, so
+ * results that finish together are published back to back, and acks that
+ * settle in the same batch go out as one multiple ack where the delivery
+ * tags allow it.
+ */
+public class ResultPublisher {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultPublisher.class);
+
+    private static final int MAX_BATCH = 256;
+
+    private final Channel trainingChannel;
+    private final Channel resultChannel;
+    private final BlockingQueue<Command> commands = new LinkedBlockingQueue<>();
+    // Delivered training messages that are not acked or nacked yet
+    private final ConcurrentSkipListSet<Long> outstanding = new ConcurrentSkipListSet<>();
+    // Publish sequence number to the delivery tag of its training message,
+    // only touched by the publisher thread
+    private final NavigableMap<Long, Long> unconfirmed = new TreeMap<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public ResultPublisher(Channel trainingChannel, Channel resultChannel) throws IOException {
+        this.trainingChannel = trainingChannel;
+        this.resultChannel = resultChannel;
+        resultChannel.confirmSelect();
+        resultChannel.addConfirmListener(new ConfirmListener() {
+            @Override
+            public void handleAck(long sequenceNumber, boolean multiple) {
+                commands.add(Command.confirm(sequenceNumber, multiple, true));
+            }
+
+            @Override
+            public void handleNack(long sequenceNumber, boolean multiple) {
+                commands.add(Command.confirm(sequenceNumber, multiple, false));
+            }
+        });
+        // Confirms for publishes on a closed channel never come
+        resultChannel.addShutdownListener(cause -> commands.add(Command.confirm(Long.MAX_VALUE, true, false)));
+        this.thread = new Thread(this::run, "result-publisher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Registers a delivered training message, before its job starts.
+     */
+    public void track(long deliveryTag) {
+        outstanding.add(deliveryTag);
+    }
+
+    /**
+     * Publishes the result of a training message, which is acked once the
+     * broker confirms the result.
+     */
+    public void publish(long deliveryTag, String routingKey, AMQP.BasicProperties properties, byte[] body) {
+        commands.add(Command.publish(deliveryTag, routingKey, properties, body));
+    }
+
+    /**
+     * Nacks a training message that has no result.
+     */
+    public void reject(long deliveryTag, boolean requeue) {
+        commands.add(Command.reject(deliveryTag, requeue));
+    }
+
+    /**
+     * Training messages delivered and not yet acked or nacked.
+     */
+    public int getOutstanding() {
+        return outstanding.size();
+    }
+
+    /**
+     * Stops publishing. Whatever is not acked yet is redelivered by the
+     * broker once the channels close.
+     */
+    public void close() {
+        running = false;
+        thread.interrupt();
+    }
+
+    private void run() {
+        List<Command> batch = new ArrayList<>();
+        while (running) {
+            try {
+                batch.add(commands.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            commands.drainTo(batch, MAX_BATCH - 1);
+            try {
+                process(batch);
+            } catch (RuntimeException e) {
+                log.error("Result publisher failed on a batch of {} commands", batch.size(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    private void process(List<Command> batch) {
+        List<Long> acks = new ArrayList<>();
+        List<Long> requeues = new ArrayList<>();
+        List<Long> drops = new ArrayList<>();
+        for (Command command : batch) {
+            switch (command.type) {
+                case PUBLISH:
+                    try {
+                        long sequenceNumber = resultChannel.getNextPublishSeqNo();
+                        resultChannel.basicPublish("", command.routingKey, command.properties, command.body);
+                        unconfirmed.put(sequenceNumber, command.tag);
+                    } catch (IOException | RuntimeException e) {
+                        log.error("Could not publish the result of training message {}, requeueing it",
+                                command.tag, e);
+                        requeues.add(command.tag);
+                    }
+                    break;
+                case CONFIRM:
+                    NavigableMap<Long, Long> settled = command.flag
+                            ? unconfirmed.headMap(command.tag, true)
+                            : unconfirmed.subMap(command.tag, true, command.tag, true);
+                    if (command.ack) {
+                        acks.addAll(settled.values());
+                    } else if (!settled.isEmpty()) {
+                        log.warn("Broker did not confirm {} results, requeueing their training messages",
+                                settled.size());
+                        requeues.addAll(settled.values());
+                    }
+                    settled.clear();
+                    break;
+                case REJECT:
+                    (command.flag ? requeues : drops).add(command.tag);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown command " + command.type);
+            }
+        }
+        for (long tag : requeues) {
+            nack(tag, true);
+        }
+        for (long tag : drops) {
+            nack(tag, false);
+        }
+        ack(acks);
+    }
+
+    private void nack(long tag, boolean requeue) {
+        outstanding.remove(tag);
+        try {
+            trainingChannel.basicNack(tag, false, requeue);
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not nack training message {}", tag, e);
+        }
+    }
+
+    /**
+     * Acks the tags below every outstanding one with a single multiple ack
+     * and the rest one by one, as a multiple ack would also ack messages
+     * whose jobs are still running.
+     */
+    private void ack(List<Long> tags) {
+        if (tags.isEmpty()) {
+            return;
+        }
+        Collections.sort(tags);
+        outstanding.removeAll(tags);
+        long lowestOutstanding = outstanding.isEmpty() ? Long.MAX_VALUE : outstanding.first();
+        int prefix = 0;
+        while (prefix < tags.size() && tags.get(prefix) < lowestOutstanding) {
+            prefix++;
+        }
+        try {
+            if (prefix > 0) {
+                trainingChannel.basicAck(tags.get(prefix - 1), prefix > 1);
+            }
+            for (int i = prefix; i < tags.size(); i++) {
+                trainingChannel.basicAck(tags.get(i), false);
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Could not ack {} training messages", tags.size(), e);
+        }
+    }
+
+    private static final class Command {
+
+        enum Type { PUBLISH, CONFIRM, REJECT }
+
+        final Type type;
+        // delivery tag, or the sequence number of a confirm
+        final long tag;
+        // multiple for a confirm, requeue for a reject
+        final boolean flag;
+        final boolean ack;
+        final String routingKey;
+        final AMQP.BasicProperties properties;
+        final byte[] body;
+
+        private Command(Type type, long tag, boolean flag, boolean ack, String routingKey,
+                AMQP.BasicProperties properties, byte[] body) {
+            this.type = type;
+            this.tag = tag;
+            this.flag = flag;
+            this.ack = ack;
+            this.routingKey = routingKey;
+            this.properties = properties;
+            this.body = body;
+        }
+
+        static Command publish(long deliveryTag, String routingKey, AMQP.BasicProperties properties, byte[] body) {
+            return new Command(Type.PUBLISH, deliveryTag, false, false, routingKey, properties, body);
+        }
+
+        static Command confirm(long sequenceNumber, boolean multiple, boolean ack) {
+            return new Command(Type.CONFIRM, sequenceNumber, multiple, ack, null, null, null);
+        }
+
+        static Command reject(long deliveryTag, boolean requeue) {
+            return new Command(Type.REJECT, deliveryTag, requeue, false, null, null, null);
+        }
+    }
+}
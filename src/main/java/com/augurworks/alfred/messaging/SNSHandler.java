@@ -3,35 +3,131 @@ package com.augurworks.alfred.messaging;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.SNSEvent;
+import com.amazonaws.services.sns.AmazonSNSClient;
 import com.amazonaws.services.sqs.AmazonSQSClient;
+import com.augurworks.alfred.Augout;
+import com.augurworks.alfred.NetTrainSpecification;
 import com.augurworks.alfred.RectNetFixed;
+import com.augurworks.alfred.TrainingOptions;
+import com.augurworks.alfred.TrainingStopReason;
 import com.augurworks.alfred.logging.LoggingUtils;
+import com.augurworks.alfred.models.CheckpointStore;
+import com.augurworks.alfred.models.DirectoryCheckpointStore;
+import com.augurworks.alfred.models.ResultCache;
 import com.augurworks.alfred.server.AlfredWrapper;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Optional;
 
 public class SNSHandler implements RequestHandler<SNSEvent, TrainingMessage> {
 
+    private static final Logger log = LoggerFactory.getLogger(SNSHandler.class);
+
     ObjectMapper mapper = new ObjectMapper();
+    TrainingMessageCodec codec = new TrainingMessageCodec(mapper);
     AmazonSQSClient sqsClient = new AmazonSQSClient();
+    AmazonSNSClient snsClient = new AmazonSNSClient();
 
     private static final String SQS_NAME_KEY = "sqsName";
+    // Times a message was republished to resume from its checkpoint
+    private static final String RESUMES_KEY = "resumes";
+    private static final int MAX_RESUMES = 10;
+    private static final String CHECKPOINT_DIR_ENV = "CHECKPOINT_DIR";
     private final Integer TRAINING_BUFFER_SEC = 20;
 
+    // Lets a job that runs out of time resume in a later invocation, which
+    // it triggers by publishing its message to the topic again. Point
+    // CHECKPOINT_DIR at storage that outlives the container, e.g. a mounted
+    // file system, unset disables checkpoints.
+    private final CheckpointStore checkpointStore = createCheckpointStore();
+    // Answers duplicate deliveries to a warm container, and to others with
+    // -Dalfred.resultCache.dir on shared storage
+    private final ResultCache resultCache = ResultCache.getDefault();
+
     public TrainingMessage handleRequest(SNSEvent snsEvent, Context context) {
         try {
-            TrainingMessage trainingMessage = mapper.readValue(snsEvent.getRecords().get(0).getSNS().getMessage(), TrainingMessage.class);
+            SNSEvent.SNS sns = snsEvent.getRecords().get(0).getSNS();
+            String body = sns.getMessage();
+            TrainingMessage trainingMessage = codec.decodeText(body);
+            WireFormat format = TrainingMessageCodec.resultFormat(trainingMessage,
+                    TrainingMessageCodec.detectTextFormat(body));
 
             LoggingUtils.addFluentAppender(trainingMessage, "AWS Lambda");
 
-            RectNetFixed rectNetFixed = AlfredWrapper.trainStatic(trainingMessage, context.getRemainingTimeInMillis() - 1000 * TRAINING_BUFFER_SEC);
-            TrainingMessage outputMessage = new TrainingMessage(rectNetFixed.getName(), rectNetFixed.getAugout(), rectNetFixed.getTrainingStats());
-            sqsClient.sendMessage(trainingMessage.getMetadata().get(SQS_NAME_KEY), mapper.writeValueAsString(outputMessage));
+            NetTrainSpecification netSpec = AlfredWrapper.parseSpec(trainingMessage);
+            Optional<String> cacheKey = ResultCache.key(trainingMessage, netSpec);
+            Optional<ResultCache.Entry> cached = cacheKey.isPresent() && ResultCache.isLookupEnabled(trainingMessage)
+                    ? resultCache.get(cacheKey.get()) : Optional.empty();
+            TrainingMessage outputMessage;
+            if (cached.isPresent()) {
+                outputMessage = TrainingMessageCodec.result(trainingMessage.getNetId(), cached.get().getAugout(),
+                        cached.get().getTrainingStats(), format);
+            } else {
+                RectNetFixed rectNetFixed = AlfredWrapper.trainStatic(trainingMessage, netSpec, context.getRemainingTimeInMillis() - 1000 * TRAINING_BUFFER_SEC, checkpointStore);
+                if (rectNetFixed == null) {
+                    log.error("Net {} could not be trained, not sending a result", trainingMessage.getNetId());
+                    return null;
+                }
+                if (rectNetFixed.getTrainingStopReason() == TrainingStopReason.OUT_OF_TIME
+                        && resume(sns.getTopicArn(), trainingMessage, body)) {
+                    return null;
+                }
+                Augout augout = rectNetFixed.computeAugout();
+                cacheKey.ifPresent(key -> resultCache.put(key, rectNetFixed, augout));
+                outputMessage = TrainingMessageCodec.result(rectNetFixed.getName(), augout,
+                        rectNetFixed.getTrainingStats(), format);
+            }
+            sqsClient.sendMessage(trainingMessage.getMetadata().get(SQS_NAME_KEY),
+                    codec.encodeText(outputMessage, format, TrainingMessageCodec.resultCompression(trainingMessage)));
             return outputMessage;
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
     }
+
+    /**
+     * Publishes the message again so a later invocation carries on from the
+     * checkpoint this one left, instead of sending the partial result.
+     * Returns false, and the partial result gets sent, with no checkpoint
+     * or once the message was resumed MAX_RESUMES times.
+     */
+    private boolean resume(String topicArn, TrainingMessage trainingMessage, String body) throws IOException {
+        // Parallel restarts don't checkpoint, see AlfredWrapper
+        if (checkpointStore == null
+                || TrainingOptions.fromMetadata(trainingMessage.getMetadata()).getParallelRestarts() > 1
+                || !hasCheckpoint(trainingMessage.getNetId())) {
+            return false;
+        }
+        String resumes = trainingMessage.getMetadata().get(RESUMES_KEY);
+        int resumed = StringUtils.isEmpty(resumes) ? 0 : Integer.parseInt(resumes.trim());
+        if (resumed >= MAX_RESUMES) {
+            log.warn("Net {} ran out of time after {} resumes, sending its partial result",
+                    trainingMessage.getNetId(), resumed);
+            return false;
+        }
+        log.info("Net {} ran out of time, republishing it to resume from its checkpoint",
+                trainingMessage.getNetId());
+        snsClient.publish(topicArn, codec.withMetadataEntry(body, RESUMES_KEY, String.valueOf(resumed + 1)));
+        return true;
+    }
+
+    private boolean hasCheckpoint(String netId) {
+        try {
+            return checkpointStore.load(netId).isPresent();
+        } catch (IOException e) {
+            log.warn("Could not read the checkpoint of net {}", netId, e);
+            return false;
+        }
+    }
+
+    private static CheckpointStore createCheckpointStore() {
+        String checkpointDir = System.getenv(CHECKPOINT_DIR_ENV);
+        return StringUtils.isEmpty(checkpointDir) ? null : new DirectoryCheckpointStore(Paths.get(checkpointDir));
+    }
 }
\ No newline at end of file
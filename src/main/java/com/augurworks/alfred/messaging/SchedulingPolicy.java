@@ -0,0 +1,23 @@
+package com.augurworks.alfred.messaging;
+
+/**
+ * Order in which {@link TrainingScheduler} starts the training jobs
+ * waiting on a worker.
+ */
+public enum SchedulingPolicy {
+    /**
+     * In order of delivery.
+     */
+    FIFO,
+    /**
+     * Cheapest first, the cost of a job halving for every aging half-life
+     * it waited so expensive jobs are not starved.
+     */
+    SHORTEST_FIRST,
+    /**
+     * Earliest deadline first, jobs without a deadline after those with one
+     * and among themselves as SHORTEST_FIRST.
+     */
+    DEADLINE_FIRST,
+    ;
+}
@@ -1,15 +1,21 @@
 package com.augurworks.alfred.messaging;
 
+import com.augurworks.alfred.Augout;
+import com.augurworks.alfred.NetTrainSpecification;
 import com.augurworks.alfred.RectNetFixed;
 import com.augurworks.alfred.config.RabbitMQConfig;
 import com.augurworks.alfred.logging.LoggingUtils;
+import com.augurworks.alfred.models.ResultCache;
 import com.augurworks.alfred.server.AlfredWrapper;
+import com.augurworks.alfred.stats.TrainingStat;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.rabbitmq.client.AMQP;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Consumer;
 import com.rabbitmq.client.DefaultConsumer;
 import com.rabbitmq.client.Envelope;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -17,10 +23,26 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Trains the nets of the training queue on a pool of workers, off the
+ * RabbitMQ dispatch thread. An intake thread estimates the cost of each
+ * delivery from its augtrain's header and hands the raw body to a
+ * {@link TrainingScheduler}, from which free workers take the next job by
+ * the configured policy. The worker parses the augtrain and answers from
+ * the {@link ResultCache} if the net was trained before, or else trains
+ * it. The training channel's prefetch, by default twice the number of
+ * workers, bounds the jobs held here, and a message is acked once the broker
+ * confirmed its result, see {@link ResultPublisher}.
+ */
 @Component
 public class TrainingConsumer {
 
@@ -31,13 +53,33 @@ public class TrainingConsumer {
 
     private String rabbitMQEnv;
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    public static final String DEADLINE_KEY = "deadline";
+
+    private final int workers;
+    private final int timeoutMillis;
+    private final TrainingScheduler<TrainingJob> scheduler;
+    private ExecutorService intake;
+    private ExecutorService workerPool;
+    private ResultPublisher resultPublisher;
+    private volatile boolean stopping;
+
+    private final TrainingMessageCodec codec = new TrainingMessageCodec(new ObjectMapper());
+    private final ResultCache resultCache = ResultCache.getDefault();
 
     @Autowired
-    public TrainingConsumer(Channel trainingChannel, Channel resultChannel, @Value("${rabbitmq.env}") String rabbitMQEnv) {
+    public TrainingConsumer(Channel trainingChannel, Channel resultChannel, @Value("${rabbitmq.env}") String rabbitMQEnv,
+            @Value("${training.workers:0}") int trainingWorkers,
+            @Value("${training.scheduling:SHORTEST_FIRST}") SchedulingPolicy schedulingPolicy,
+            @Value("${training.agingHalfLifeSeconds:60}") long agingHalfLifeSeconds,
+            @Value("${training.timeoutSeconds:3600}") int timeoutSeconds) {
+        Validate.isTrue(timeoutSeconds > 0 && timeoutSeconds <= Integer.MAX_VALUE / 1000,
+                "Training timeout must be between 1 and %d seconds", Integer.MAX_VALUE / 1000);
         this.trainingChannel = trainingChannel;
         this.resultChannel = resultChannel;
         this.rabbitMQEnv = rabbitMQEnv;
+        this.workers = RabbitMQConfig.getTrainingWorkers(trainingWorkers);
+        this.timeoutMillis = timeoutSeconds * 1000;
+        this.scheduler = new TrainingScheduler<>(schedulingPolicy, agingHalfLifeSeconds);
     }
 
     @PostConstruct
@@ -49,14 +91,48 @@ public class TrainingConsumer {
         }
     }
 
+    @PreDestroy
+    public void shutdown() {
+        stopping = true;
+        if (intake != null) {
+            intake.shutdownNow();
+        }
+        if (workerPool != null) {
+            // Interrupted jobs are requeued for another worker
+            workerPool.shutdownNow();
+        }
+        if (resultPublisher != null) {
+            resultPublisher.close();
+        }
+    }
+
     public void startConsumer() {
-        log.info("Starting training consumer");
+        log.info("Starting training consumer with {} workers", workers);
+        try {
+            resultPublisher = new ResultPublisher(trainingChannel, resultChannel);
+        } catch (IOException e) {
+            log.error("Result publisher failed to initialize", e);
+            return;
+        }
+        intake = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "training-intake");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger threadCount = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(workers, runnable -> {
+            Thread thread = new Thread(runnable, "training-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(this::work);
+        }
         Consumer consumer = new DefaultConsumer(trainingChannel) {
             @Override
-            public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) throws IOException {
-                TrainingMessage message = mapper.readValue(body, TrainingMessage.class);
-                processMessage(message);
-                trainingChannel.basicAck(envelope.getDeliveryTag(), false);
+            public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body) {
+                resultPublisher.track(envelope.getDeliveryTag());
+                intake.execute(() -> admit(envelope.getDeliveryTag(), properties, body));
             }
         };
         try {
@@ -66,20 +142,125 @@ public class TrainingConsumer {
         }
     }
 
-    private void processMessage(TrainingMessage message) throws UnknownHostException {
-        LoggingUtils.addFluentAppender(message, InetAddress.getLocalHost().getHostName());
+    /**
+     * Only the raw body is held until a worker takes the job, the decoded
+     * message is dropped once it is costed.
+     */
+    private void admit(long deliveryTag, AMQP.BasicProperties properties, byte[] body) {
+        try {
+            WireFormat format = WireFormat.fromContentType(properties.getContentType());
+            TrainingMessage message = codec.decode(body, format);
+            double cost = TrainingScheduler.cost(message);
+            log.debug("Scheduling net {} with cost {}", message.getNetId(), cost);
+            scheduler.submit(new TrainingJob(deliveryTag, format, body), cost, deadline(message));
+        } catch (Exception e) {
+            log.error("Training message {} could not be read, dropping it", deliveryTag, e);
+            resultPublisher.reject(deliveryTag, false);
+        }
+    }
 
-        RectNetFixed rectNetFixed = AlfredWrapper.trainStatic(message, 3600000);
-        sendResult(rectNetFixed);
+    private Long deadline(TrainingMessage message) {
+        String deadline = message.getMetadata() == null ? null : message.getMetadata().get(DEADLINE_KEY);
+        if (StringUtils.isEmpty(deadline)) {
+            return null;
+        }
+        try {
+            return TrainingScheduler.parseDeadline(deadline);
+        } catch (IllegalArgumentException e) {
+            log.warn("Ignoring deadline {} of net {}", deadline, message.getNetId(), e);
+            return null;
+        }
     }
 
-    private void sendResult(RectNetFixed rectNetFixed) {
-        log.debug("Sending message for net {}", rectNetFixed.getName());
-        TrainingMessage message = new TrainingMessage(rectNetFixed.getName(), rectNetFixed.getAugout(), rectNetFixed.getTrainingStats());
+    private void work() {
+        while (!stopping) {
+            TrainingJob job;
+            try {
+                job = scheduler.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            runJob(job);
+        }
+    }
+
+    private void runJob(TrainingJob job) {
         try {
-            resultChannel.basicPublish("", RabbitMQConfig.getResultsChannelName(rabbitMQEnv), null, mapper.writeValueAsString(message).getBytes());
-        } catch (IOException e) {
-            log.error("An error occurred when publishing a message for net {}", rectNetFixed.getName(), e);
+            processMessage(job);
+        } catch (Exception e) {
+            if (stopping) {
+                log.info("Requeueing training message {} on shutdown", job.deliveryTag);
+                resultPublisher.reject(job.deliveryTag, true);
+            } else {
+                log.error("Training message {} failed, dropping it", job.deliveryTag, e);
+                resultPublisher.reject(job.deliveryTag, false);
+            }
+        }
+    }
+
+    private void processMessage(TrainingJob job) throws IOException {
+        TrainingMessage message = codec.decode(job.body, job.format);
+        LoggingUtils.addFluentAppender(message, InetAddress.getLocalHost().getHostName());
+
+        NetTrainSpecification netSpec = AlfredWrapper.parseSpec(message);
+        String cacheKey = ResultCache.key(message, netSpec).orElse(null);
+        if (sendCachedResult(job.deliveryTag, message, job.format, cacheKey)) {
+            return;
+        }
+        RectNetFixed rectNetFixed = AlfredWrapper.trainStatic(message, netSpec, timeoutMillis, null);
+        if (rectNetFixed == null) {
+            // Requeued on shutdown, dropped otherwise, see runJob
+            throw new IllegalStateException("Net " + message.getNetId() + " could not be trained");
+        }
+        Augout augout = rectNetFixed.computeAugout();
+        if (cacheKey != null) {
+            resultCache.put(cacheKey, rectNetFixed, augout);
+        }
+        sendResult(job.deliveryTag, rectNetFixed.getName(), augout, rectNetFixed.getTrainingStats(),
+                TrainingMessageCodec.resultFormat(message, job.format),
+                TrainingMessageCodec.resultCompression(message));
+    }
+
+    /**
+     * Answers a message from the result cache, if it may be and its result
+     * is there.
+     */
+    private boolean sendCachedResult(long deliveryTag, TrainingMessage message, WireFormat format, String cacheKey)
+            throws IOException {
+        if (cacheKey == null || !ResultCache.isLookupEnabled(message)) {
+            return false;
+        }
+        Optional<ResultCache.Entry> cached = resultCache.get(cacheKey);
+        if (!cached.isPresent()) {
+            return false;
+        }
+        log.info("Net {} was trained before, sending its cached result", message.getNetId());
+        sendResult(deliveryTag, message.getNetId(), cached.get().getAugout(), cached.get().getTrainingStats(),
+                TrainingMessageCodec.resultFormat(message, format), TrainingMessageCodec.resultCompression(message));
+        return true;
+    }
+
+    private void sendResult(long deliveryTag, String netId, Augout augout, List<TrainingStat> trainingStats,
+            WireFormat format, Compression compression) throws IOException {
+        log.debug("Sending {} message for net {}", format, netId);
+        AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .contentType(format.getContentType())
+                // persistent, so a confirmed result survives a broker restart
+                .deliveryMode(2)
+                .build();
+        resultPublisher.publish(deliveryTag, RabbitMQConfig.getResultsChannelName(rabbitMQEnv), properties,
+                codec.encodeResult(netId, augout, trainingStats, format, compression));
+    }
+
+    private static final class TrainingJob {
+        final long deliveryTag;
+        final WireFormat format;
+        final byte[] body;
+
+        TrainingJob(long deliveryTag, WireFormat format, byte[] body) {
+            this.deliveryTag = deliveryTag;
+            this.format = format;
+            this.body = body;
         }
     }
 }
@@ -1,6 +1,7 @@
 package com.augurworks.alfred.messaging;
 
 import com.augurworks.alfred.stats.TrainingStat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
@@ -23,4 +24,10 @@ public class TrainingMessage implements Serializable {
 
     private Map<String, String> metadata;
     private List<TrainingStat> trainingStats;
+
+    // Set instead of data when the message came in or goes out in the
+    // binary wire format: a BinaryAugtrain for training requests, a
+    // BinaryAugout for results. See TrainingMessageCodec.
+    @JsonIgnore
+    private transient byte[] binaryData;
 }
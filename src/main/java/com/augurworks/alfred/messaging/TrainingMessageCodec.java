@@ -0,0 +1,344 @@
+package com.augurworks.alfred.messaging;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.augurworks.alfred.Augout;
+import com.augurworks.alfred.RectNetFixed;
+import com.augurworks.alfred.stats.TrainingStat;
+import com.augurworks.alfred.util.BinaryAugout;
+import com.augurworks.alfred.util.BinaryReader;
+import com.augurworks.alfred.util.BinaryWriter;
+import com.augurworks.alfred.util.TextBuffer;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Reads and writes {@link TrainingMessage}s in either {@link WireFormat}.
+ *
+ * A binary message is an 8 byte header, the magic "ALTM", a version and a
+ * flags byte, followed by the body: net id, metadata, the training stats as
+ * JSON, data and binaryData. With {@link Compression#DEFLATE} the body is
+ * deflated and prefixed by its inflated length.
+ *
+ * Results go out in the format named by the request's wireFormat metadata
+ * key, or the request's own format without one, compressed as named by the
+ * compression key. Queues carry the raw bytes and a content type, SNS and
+ * SQS carry text, so there binary messages are base64 encoded.
+ */
+public class TrainingMessageCodec {
+
+    public static final String WIRE_FORMAT_KEY = "wireFormat";
+    public static final String COMPRESSION_KEY = "compression";
+
+    private static final int MAGIC = 0x4D544C41;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final int FLAG_DEFLATE = 1;
+    private static final TypeReference<List<TrainingStat>> STATS_TYPE = new TypeReference<List<TrainingStat>>() { };
+
+    // Buffers bigger than this are dropped after use rather than kept
+    private static final int MAX_RETAINED_BUFFER_BYTES = 16 << 20;
+
+    private final ObjectMapper mapper;
+    // Per thread, the augout text and the JSON it is written into
+    private final ThreadLocal<TextBuffer[]> resultBuffers = new ThreadLocal<>();
+
+    public TrainingMessageCodec(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    public byte[] encode(TrainingMessage message, WireFormat format, Compression compression) throws IOException {
+        if (format == WireFormat.JSON) {
+            return mapper.writeValueAsBytes(message);
+        }
+        BinaryWriter body = new BinaryWriter(256 + length(message.getData()) + length(message.getBinaryData()));
+        body.writeString(message.getNetId());
+        writeMetadata(body, message.getMetadata());
+        body.writeBytes(message.getTrainingStats() == null ? null : mapper.writeValueAsBytes(message.getTrainingStats()));
+        body.writeString(message.getData());
+        body.writeBytes(message.getBinaryData());
+
+        byte[] bodyBytes = body.toByteArray();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_BYTES + 10 + bodyBytes.length);
+        BinaryWriter header = new BinaryWriter(HEADER_BYTES + 10);
+        header.writeInt(MAGIC);
+        header.writeByte(VERSION);
+        header.writeByte(compression == Compression.DEFLATE ? FLAG_DEFLATE : 0);
+        // reserved
+        header.writeByte(0);
+        header.writeByte(0);
+        if (compression == Compression.DEFLATE) {
+            header.writeVarLong(bodyBytes.length);
+            out.write(header.toByteArray());
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 64 * 1024)) {
+                deflated.write(bodyBytes);
+            } finally {
+                deflater.end();
+            }
+        } else {
+            out.write(header.toByteArray());
+            out.write(bodyBytes);
+        }
+        return out.toByteArray();
+    }
+
+    public TrainingMessage decode(byte[] bytes, WireFormat format) throws IOException {
+        if (format == WireFormat.JSON) {
+            return mapper.readValue(bytes, TrainingMessage.class);
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+            if (bytes.length < HEADER_BYTES || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a binary training message");
+            }
+            int version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary training message version " + version);
+            }
+            int flags = buffer.get();
+            buffer.position(HEADER_BYTES);
+            BinaryReader body;
+            if ((flags & FLAG_DEFLATE) != 0) {
+                BinaryReader reader = new BinaryReader(buffer);
+                int length = reader.readCount(Integer.MAX_VALUE - 8);
+                body = new BinaryReader(inflate(bytes, buffer.position(), length));
+            } else {
+                body = new BinaryReader(buffer);
+            }
+            TrainingMessage message = new TrainingMessage();
+            message.setNetId(body.readString());
+            message.setMetadata(readMetadata(body));
+            byte[] stats = body.readBytes();
+            message.setTrainingStats(stats == null ? null : mapper.readValue(stats, STATS_TYPE));
+            message.setData(body.readString());
+            message.setBinaryData(body.readBytes());
+            return message;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed binary training message", e);
+        }
+    }
+
+    /**
+     * Encodes the result message of a trained net, what encoding
+     * {@link #result} would give. A JSON result is streamed: the augout is
+     * written as UTF-8 into a reused buffer and from there into the JSON,
+     * without building it as a String first.
+     */
+    public byte[] encodeResult(RectNetFixed net, WireFormat format, Compression compression) throws IOException {
+        return encodeResult(net.getName(), net.computeAugout(), net.getTrainingStats(), format, compression);
+    }
+
+    /**
+     * Encodes a result message from its parts, e.g. a cached result.
+     */
+    public byte[] encodeResult(String netId, Augout augout, List<TrainingStat> trainingStats, WireFormat format,
+            Compression compression) throws IOException {
+        if (format != WireFormat.JSON) {
+            return encode(result(netId, augout, trainingStats, format), format, compression);
+        }
+        TextBuffer[] buffers = resultBuffers.get();
+        if (buffers == null) {
+            buffers = new TextBuffer[] {new TextBuffer(), new TextBuffer()};
+            resultBuffers.set(buffers);
+        }
+        TextBuffer text = buffers[0];
+        TextBuffer json = buffers[1];
+        try {
+            augout.writeTo(text);
+            // Follows TrainingMessage's property order
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(json)) {
+                generator.writeStartObject();
+                generator.writeStringField("netId", netId);
+                generator.writeFieldName("data");
+                generator.writeUTF8String(text.array(), 0, text.size());
+                generator.writeNullField("metadata");
+                generator.writeFieldName("trainingStats");
+                mapper.writeValue(generator, trainingStats);
+                generator.writeEndObject();
+            }
+            return json.toByteArray();
+        } finally {
+            text.reset();
+            json.reset();
+            if (text.capacity() > MAX_RETAINED_BUFFER_BYTES || json.capacity() > MAX_RETAINED_BUFFER_BYTES) {
+                resultBuffers.remove();
+            }
+        }
+    }
+
+    /**
+     * For text transports, JSON as is and binary as base64.
+     */
+    public String encodeText(TrainingMessage message, WireFormat format, Compression compression)
+            throws IOException {
+        if (format == WireFormat.JSON) {
+            return mapper.writeValueAsString(message);
+        }
+        return Base64.getEncoder().encodeToString(encode(message, format, compression));
+    }
+
+    /**
+     * Reads a message written by encodeText.
+     */
+    public TrainingMessage decodeText(String text) throws IOException {
+        WireFormat format = detectTextFormat(text);
+        if (format == WireFormat.JSON) {
+            return mapper.readValue(text, TrainingMessage.class);
+        }
+        try {
+            return decode(Base64.getDecoder().decode(text.trim()), format);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Message is neither JSON nor base64", e);
+        }
+    }
+
+    /**
+     * Sets one metadata entry of a message written by encodeText and leaves
+     * the rest as it came: other JSON fields pass through untouched, and a
+     * binary message keeps its own compression.
+     */
+    public String withMetadataEntry(String text, String key, String value) throws IOException {
+        if (detectTextFormat(text) == WireFormat.JSON) {
+            JsonNode root = mapper.readTree(text);
+            if (root == null || !root.isObject()) {
+                throw new IOException("Message is not a JSON object");
+            }
+            JsonNode metadata = root.get("metadata");
+            ObjectNode entries = metadata != null && metadata.isObject()
+                    ? (ObjectNode) metadata : ((ObjectNode) root).putObject("metadata");
+            entries.put(key, value);
+            return mapper.writeValueAsString(root);
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(text.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Message is neither JSON nor base64", e);
+        }
+        TrainingMessage message = decode(bytes, WireFormat.BINARY);
+        Map<String, String> metadata = message.getMetadata() == null
+                ? new LinkedHashMap<>() : new LinkedHashMap<>(message.getMetadata());
+        metadata.put(key, value);
+        message.setMetadata(metadata);
+        Compression compression = (bytes[5] & FLAG_DEFLATE) != 0 ? Compression.DEFLATE : Compression.NONE;
+        return Base64.getEncoder().encodeToString(encode(message, WireFormat.BINARY, compression));
+    }
+
+    /**
+     * JSON messages are objects, base64 never contains a brace.
+     */
+    public static WireFormat detectTextFormat(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == '{' ? WireFormat.JSON : WireFormat.BINARY;
+            }
+        }
+        return WireFormat.JSON;
+    }
+
+    /**
+     * Result message for a trained net, its augout as text for JSON and as
+     * a BinaryAugout otherwise.
+     */
+    public static TrainingMessage result(RectNetFixed net, WireFormat format) {
+        return result(net.getName(), net.computeAugout(), net.getTrainingStats(), format);
+    }
+
+    public static TrainingMessage result(String netId, Augout augout, List<TrainingStat> trainingStats,
+            WireFormat format) {
+        if (format == WireFormat.JSON) {
+            return new TrainingMessage(netId, augout.toText(), trainingStats);
+        }
+        TrainingMessage message = new TrainingMessage(netId, null, trainingStats);
+        message.setBinaryData(BinaryAugout.encode(augout));
+        return message;
+    }
+
+    public static WireFormat resultFormat(TrainingMessage request, WireFormat requestFormat) {
+        String format = request.getMetadata() == null ? null : request.getMetadata().get(WIRE_FORMAT_KEY);
+        return StringUtils.isEmpty(format) ? requestFormat : WireFormat.valueOf(format.trim().toUpperCase());
+    }
+
+    public static Compression resultCompression(TrainingMessage request) {
+        String compression = request.getMetadata() == null ? null : request.getMetadata().get(COMPRESSION_KEY);
+        return StringUtils.isEmpty(compression)
+                ? Compression.NONE : Compression.valueOf(compression.trim().toUpperCase());
+    }
+
+    private static void writeMetadata(BinaryWriter writer, Map<String, String> metadata) {
+        if (metadata == null) {
+            writer.writeSignedVarLong(-1);
+            return;
+        }
+        writer.writeSignedVarLong(metadata.size());
+        for (Map.Entry<String, String> entry : metadata.entrySet()) {
+            writer.writeString(entry.getKey());
+            writer.writeString(entry.getValue());
+        }
+    }
+
+    private static Map<String, String> readMetadata(BinaryReader reader) {
+        long size = reader.readSignedVarLong();
+        if (size == -1) {
+            return null;
+        }
+        if (size < 0 || size > reader.remaining()) {
+            throw new IllegalArgumentException("Bad metadata size " + size);
+        }
+        Map<String, String> metadata = new LinkedHashMap<>();
+        for (long i = 0; i < size; i++) {
+            metadata.put(reader.readString(), reader.readString());
+        }
+        return metadata;
+    }
+
+    private static byte[] inflate(byte[] bytes, int offset, int length) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            byte[] out = new byte[length];
+            int n = 0;
+            while (n < length) {
+                int read = inflater.inflate(out, n, length - n);
+                if (read == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                n += read;
+            }
+            if (n != length || !inflater.finished()) {
+                throw new IOException("Deflated body does not match its length " + length);
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Malformed deflated body", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+}
@@ -0,0 +1,200 @@
+package com.augurworks.alfred.messaging;
+
+import com.augurworks.alfred.NetTrainSpecification;
+import com.augurworks.alfred.util.BinaryAugtrain;
+import com.augurworks.alfred.util.FileParser;
+import org.apache.commons.lang3.Validate;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds the training jobs a worker has taken off the queue but not started
+ * and hands them to free workers in the order of a
+ * {@link SchedulingPolicy}, so a few large nets don't hold up many small
+ * ones. Jobs only wait here when the channel's prefetch is above the
+ * number of workers.
+ *
+ * Jobs are few, at most the channel's prefetch, so the next one is found
+ * by a scan, which lets aging be computed at the time it is taken.
+ */
+public class TrainingScheduler<T> {
+
+    private final SchedulingPolicy policy;
+    private final double agingHalfLifeNanos;
+    private final LongSupplier clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final List<Entry<T>> waiting = new ArrayList<>();
+    private long submitted;
+
+    public TrainingScheduler(SchedulingPolicy policy, long agingHalfLifeSeconds) {
+        this(policy, agingHalfLifeSeconds, System::nanoTime);
+    }
+
+    /**
+     * With a clock in nanoseconds to age jobs by.
+     */
+    public TrainingScheduler(SchedulingPolicy policy, long agingHalfLifeSeconds, LongSupplier clock) {
+        Validate.isTrue(agingHalfLifeSeconds > 0, "Aging half-life must be positive");
+        this.policy = policy;
+        this.agingHalfLifeNanos = TimeUnit.SECONDS.toNanos(agingHalfLifeSeconds);
+        this.clock = clock;
+    }
+
+    /**
+     * Estimated cost of training a net, proportional to the weight updates
+     * it takes: side^2 * depth * rows * row iterations * file iterations.
+     */
+    public static double cost(int side, int depth, int rows, int rowIterations, int fileIterations) {
+        return (double) side * side * depth * rows * rowIterations * fileIterations;
+    }
+
+    public static double cost(NetTrainSpecification netSpec) {
+        return cost(netSpec.getSide(), netSpec.getDepth(), netSpec.getNetData().getTrainDataset().size(),
+                netSpec.getNumberRowIterations(), netSpec.getNumberFileIterations());
+    }
+
+    /**
+     * Cost of the net of a training message from its augtrain's header and
+     * row count, without parsing the rows. Text augtrains count their
+     * prediction rows too, which is close enough to order jobs by.
+     */
+    public static double cost(TrainingMessage message) throws IOException {
+        NetTrainSpecification.Builder header = new NetTrainSpecification.Builder();
+        int rows;
+        if (message.getBinaryData() != null) {
+            rows = BinaryAugtrain.readHeader(message.getBinaryData(), header);
+        } else {
+            Validate.isTrue(message.getData() != null, "Message has no augtrain");
+            rows = FileParser.readHeader(message.getData(), header);
+        }
+        return cost(header.getSide(), header.getDepth(), rows, header.getNumberRowIterations(),
+                header.getNumberFileIterations());
+    }
+
+    /**
+     * A deadline as epoch millis, given as such or as an ISO-8601 instant
+     * like 2016-06-01T12:00:00Z.
+     */
+    public static long parseDeadline(String deadline) {
+        String trimmed = deadline.trim();
+        try {
+            return Long.parseLong(trimmed);
+        } catch (NumberFormatException e) {
+            try {
+                return Instant.parse(trimmed).toEpochMilli();
+            } catch (DateTimeParseException e2) {
+                throw new IllegalArgumentException("Not epoch millis or an ISO-8601 instant: " + deadline, e2);
+            }
+        }
+    }
+
+    /**
+     * Queues a job. deadline is any time in a common unit, e.g. epoch
+     * millis, or null for none.
+     */
+    public void submit(T job, double cost, Long deadline) {
+        lock.lock();
+        try {
+            waiting.add(new Entry<>(job, cost, deadline, clock.getAsLong(), submitted++));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits for a job and returns the one to run next.
+     */
+    public T take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (waiting.isEmpty()) {
+                notEmpty.await();
+            }
+            return waiting.remove(next()).job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The job to run next, null if there is none.
+     */
+    public T poll() {
+        lock.lock();
+        try {
+            return waiting.isEmpty() ? null : waiting.remove(next()).job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return waiting.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int next() {
+        long now = clock.getAsLong();
+        int best = 0;
+        for (int i = 1; i < waiting.size(); i++) {
+            if (before(waiting.get(i), waiting.get(best), now)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private boolean before(Entry<T> a, Entry<T> b, long now) {
+        if (policy == SchedulingPolicy.DEADLINE_FIRST && (a.deadline != null || b.deadline != null)) {
+            if (a.deadline == null || b.deadline == null) {
+                return a.deadline != null;
+            }
+            if (!a.deadline.equals(b.deadline)) {
+                return a.deadline < b.deadline;
+            }
+        }
+        if (policy != SchedulingPolicy.FIFO) {
+            double agedA = agedCost(a, now);
+            double agedB = agedCost(b, now);
+            if (agedA != agedB) {
+                return agedA < agedB;
+            }
+        }
+        return a.sequence < b.sequence;
+    }
+
+    private double agedCost(Entry<T> entry, long now) {
+        return entry.cost * Math.pow(0.5, (now - entry.submittedAt) / agingHalfLifeNanos);
+    }
+
+    private static final class Entry<T> {
+        final T job;
+        final double cost;
+        final Long deadline;
+        final long submittedAt;
+        final long sequence;
+
+        Entry(T job, double cost, Long deadline, long submittedAt, long sequence) {
+            this.job = job;
+            this.cost = cost;
+            this.deadline = deadline;
+            this.submittedAt = submittedAt;
+            this.sequence = sequence;
+        }
+    }
+}
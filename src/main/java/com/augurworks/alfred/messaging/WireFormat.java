@@ -0,0 +1,37 @@
+package com.augurworks.alfred.messaging;
+
+/**
+ * How a {@link TrainingMessage} is serialized on a queue. JSON is the
+ * original format and the default. BINARY is {@link TrainingMessageCodec}'s
+ * compact format, which carries the augtrain or augout as columns.
+ */
+public enum WireFormat {
+    JSON("application/json"),
+    BINARY("application/x-alfred-binary"),
+    ;
+
+    private final String contentType;
+
+    WireFormat(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Format of a message with the given content type, JSON when it is
+     * missing or unknown so older publishers keep working.
+     */
+    public static WireFormat fromContentType(String contentType) {
+        if (contentType != null) {
+            for (WireFormat format : values()) {
+                if (format.contentType.equalsIgnoreCase(contentType.trim())) {
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,61 @@
+package com.augurworks.alfred.models;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import com.augurworks.alfred.stats.TrainingStat;
+
+/**
+ * Training state of a net part way through training, enough for a later
+ * process to carry on where this one stopped.
+ */
+public class Checkpoint {
+
+    private final String netId;
+    private final String dataHash;
+    private final int epoch;
+    private final BigDecimal maxScore;
+    private final Model model;
+    private final List<TrainingStat> trainingStats;
+
+    /**
+     * @param dataHash
+     *            identifies the training data, a checkpoint is only resumed
+     *            for the same data
+     * @param epoch
+     *            number of file iterations already trained
+     */
+    public Checkpoint(String netId, String dataHash, int epoch, BigDecimal maxScore, Model model,
+            List<TrainingStat> trainingStats) {
+        this.netId = netId;
+        this.dataHash = dataHash;
+        this.epoch = epoch;
+        this.maxScore = maxScore;
+        this.model = model;
+        this.trainingStats = trainingStats;
+    }
+
+    public String getNetId() {
+        return netId;
+    }
+
+    public String getDataHash() {
+        return dataHash;
+    }
+
+    public int getEpoch() {
+        return epoch;
+    }
+
+    public BigDecimal getMaxScore() {
+        return maxScore;
+    }
+
+    public Model getModel() {
+        return model;
+    }
+
+    public List<TrainingStat> getTrainingStats() {
+        return trainingStats;
+    }
+}
@@ -0,0 +1,17 @@
+package com.augurworks.alfred.models;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Where training checkpoints are kept between processes. Each net id has at
+ * most one checkpoint, saving replaces it.
+ */
+public interface CheckpointStore {
+
+    Optional<Checkpoint> load(String netId) throws IOException;
+
+    void save(Checkpoint checkpoint) throws IOException;
+
+    void delete(String netId) throws IOException;
+}
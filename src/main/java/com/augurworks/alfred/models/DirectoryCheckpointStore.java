@@ -0,0 +1,99 @@
+package com.augurworks.alfred.models;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import com.augurworks.alfred.stats.TrainingStat;
+
+/**
+ * Keeps checkpoints as files in a local directory. Each net has a model file
+ * in {@link ModelFormat} and a small state file with the epoch, best score
+ * and training stats.
+ *
+ * The model is written before the state, so a process dying half way
+ * through a save leaves the newer weights with the older epoch count, which
+ * resumes fine.
+ */
+public class DirectoryCheckpointStore implements CheckpointStore {
+
+    private static final int STATE_VERSION = 1;
+
+    private final Path directory;
+
+    public DirectoryCheckpointStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public Optional<Checkpoint> load(String netId) throws IOException {
+        Path stateFile = stateFile(netId);
+        Model model;
+        try {
+            model = ModelFormat.read(modelFile(netId));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(stateFile)))) {
+            int version = in.readInt();
+            if (version != STATE_VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + " in " + stateFile);
+            }
+            String storedNetId = in.readUTF();
+            String dataHash = in.readUTF();
+            int epoch = in.readInt();
+            BigDecimal maxScore = (BigDecimal) in.readObject();
+            @SuppressWarnings("unchecked")
+            List<TrainingStat> trainingStats = (List<TrainingStat>) in.readObject();
+            return Optional.of(new Checkpoint(storedNetId, dataHash, epoch, maxScore, model, trainingStats));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Bad checkpoint state in " + stateFile, e);
+        }
+    }
+
+    @Override
+    public void save(Checkpoint checkpoint) throws IOException {
+        ModelFiles.writeAtomically(modelFile(checkpoint.getNetId()),
+                file -> ModelFormat.write(file, checkpoint.getModel()));
+        ModelFiles.writeAtomically(stateFile(checkpoint.getNetId()), file -> {
+            try (ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file)))) {
+                out.writeInt(STATE_VERSION);
+                out.writeUTF(checkpoint.getNetId());
+                out.writeUTF(checkpoint.getDataHash());
+                out.writeInt(checkpoint.getEpoch());
+                out.writeObject(checkpoint.getMaxScore());
+                out.writeObject(new ArrayList<>(checkpoint.getTrainingStats()));
+            }
+        });
+    }
+
+    @Override
+    public void delete(String netId) throws IOException {
+        Files.deleteIfExists(stateFile(netId));
+        Files.deleteIfExists(modelFile(netId));
+    }
+
+    private Path modelFile(String netId) {
+        return directory.resolve(ModelFiles.encode(netId) + ".model");
+    }
+
+    private Path stateFile(String netId) {
+        return directory.resolve(ModelFiles.encode(netId) + ".checkpoint");
+    }
+}
@@ -0,0 +1,43 @@
+package com.augurworks.alfred.models;
+
+import com.augurworks.alfred.Activation;
+import com.augurworks.alfred.NetWeights;
+import com.augurworks.alfred.scaling.ScaleFunction;
+
+/**
+ * Everything needed to reuse a trained net without its training data: the
+ * weights, the activation the neurons were trained with and the function
+ * that maps outputs back to the scale of the targets.
+ */
+public class Model {
+
+    private final NetWeights weights;
+    private final Activation activation;
+    private final ScaleFunction scaleFunction;
+
+    public Model(NetWeights weights, Activation activation, ScaleFunction scaleFunction) {
+        this.weights = weights;
+        this.activation = activation;
+        this.scaleFunction = scaleFunction;
+    }
+
+    public NetWeights getWeights() {
+        return weights;
+    }
+
+    public int getSide() {
+        return weights.getSide();
+    }
+
+    public int getDepth() {
+        return weights.getDepth();
+    }
+
+    public Activation getActivation() {
+        return activation;
+    }
+
+    public ScaleFunction getScaleFunction() {
+        return scaleFunction;
+    }
+}
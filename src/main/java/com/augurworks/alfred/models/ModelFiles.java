@@ -0,0 +1,49 @@
+package com.augurworks.alfred.models;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * File handling shared by the stores in this package.
+ */
+class ModelFiles {
+
+    interface Writer {
+        void write(Path file) throws IOException;
+    }
+
+    private ModelFiles() {
+        // utility class
+    }
+
+    /**
+     * Encodes a net id so any id is a single, valid file name.
+     */
+    static String encode(String netId) {
+        try {
+            return URLEncoder.encode(netId, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Writes to a temporary file next to target and moves it into place, so
+     * a reader never sees a half written file.
+     */
+    static void writeAtomically(Path target, Writer writer) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            writer.write(temp);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
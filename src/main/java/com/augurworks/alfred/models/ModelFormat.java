@@ -0,0 +1,145 @@
+package com.augurworks.alfred.models;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.augurworks.alfred.Activation;
+import com.augurworks.alfred.NetWeights;
+import com.augurworks.alfred.scaling.ScaleFunction;
+import com.augurworks.alfred.scaling.ScaleFunctions;
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
+/**
+ * Versioned binary file format for a {@link Model}. Everything is little
+ * endian, and the header is 32 bytes so every double after it is 8 byte
+ * aligned:
+ *
+ * <pre>
+ *  0  int  magic, "ALFM"
+ *  4  int  format version
+ *  8  int  side
+ * 12  int  depth
+ * 16  int  activation code
+ * 20  int  scale function code
+ * 24  int  number of scale function parameters, p
+ * 28  int  reserved, 0
+ * 32  double[p] scale function parameters
+ *     double[]  weight blocks 0 to depth in NetWeights layout
+ * </pre>
+ *
+ * Files are written and read through a memory mapping, so loading a model
+ * is one map plus bulk copies of the blocks, with no parsing.
+ */
+public class ModelFormat {
+
+    public static final int MAGIC = 0x4D464C41;
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 32;
+
+    // The codes written to files are indexes into these arrays, only ever
+    // append to them.
+    private static final Activation[] ACTIVATIONS = {Activation.SIGMOID, Activation.FAST_SIGMOID};
+    private static final ScaleFunctionType[] SCALE_FUNCTION_TYPES = {ScaleFunctionType.LINEAR,
+            ScaleFunctionType.SIGMOID};
+
+    private ModelFormat() {
+        // utility class
+    }
+
+    /**
+     * Size in bytes of a model file.
+     */
+    public static long fileSize(int side, int depth, int scaleParameters) {
+        long weights = 2L * side + (long) (depth - 1) * side * side;
+        return HEADER_BYTES + 8L * (scaleParameters + weights);
+    }
+
+    public static void write(Path file, Model model) throws IOException {
+        double[] scaleParameters = model.getScaleFunction().getParameters();
+        long size = fileSize(model.getSide(), model.getDepth(), scaleParameters.length);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Model of " + size + " bytes is too large to map");
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putInt(model.getSide());
+            buffer.putInt(model.getDepth());
+            buffer.putInt(code(ACTIVATIONS, model.getActivation()));
+            buffer.putInt(code(SCALE_FUNCTION_TYPES, model.getScaleFunction().getType()));
+            buffer.putInt(scaleParameters.length);
+            buffer.putInt(0);
+            DoubleBuffer doubles = buffer.asDoubleBuffer();
+            doubles.put(scaleParameters);
+            for (int col = 0; col <= model.getDepth(); col++) {
+                doubles.put(model.getWeights().getBlock(col));
+            }
+            buffer.force();
+        }
+    }
+
+    public static Model read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Bad model file size " + size + " for " + file);
+            }
+            MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a model file");
+            }
+            int version = buffer.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported model version " + version + " in " + file);
+            }
+            int side = buffer.getInt();
+            int depth = buffer.getInt();
+            int activationCode = buffer.getInt();
+            int scaleFunctionCode = buffer.getInt();
+            int scaleParameterCount = buffer.getInt();
+            buffer.getInt();
+            if (side < 1 || depth < 1 || scaleParameterCount < 0
+                    || activationCode < 0 || activationCode >= ACTIVATIONS.length
+                    || scaleFunctionCode < 0 || scaleFunctionCode >= SCALE_FUNCTION_TYPES.length) {
+                throw new IOException("Bad model header in " + file);
+            }
+            if (size != fileSize(side, depth, scaleParameterCount)) {
+                throw new IOException("Model file " + file + " is " + size + " bytes, expected "
+                        + fileSize(side, depth, scaleParameterCount));
+            }
+            DoubleBuffer doubles = buffer.asDoubleBuffer();
+            double[] scaleParameters = new double[scaleParameterCount];
+            doubles.get(scaleParameters);
+            NetWeights weights = new NetWeights(side, depth);
+            for (int col = 0; col <= depth; col++) {
+                doubles.get(weights.getBlock(col));
+            }
+            ScaleFunction scaleFunction;
+            try {
+                scaleFunction = ScaleFunctions.create(SCALE_FUNCTION_TYPES[scaleFunctionCode], scaleParameters);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Bad scale function in " + file, e);
+            }
+            return new Model(weights, ACTIVATIONS[activationCode], scaleFunction);
+        }
+    }
+
+    private static <T> int code(T[] values, T value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No model format code for " + value);
+    }
+}
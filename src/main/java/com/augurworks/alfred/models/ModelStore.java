@@ -0,0 +1,122 @@
+package com.augurworks.alfred.models;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the last trained model of each net so a resubmitted job can start
+ * from its weights instead of from random ones. Models are keyed by net id
+ * plus side and depth, since weights only fit a net of the same shape.
+ *
+ * Every model is written to a file in the store's directory in
+ * {@link ModelFormat}, and the most recently used ones are also kept in
+ * memory. Models handed out by load are shared with the cache and must not
+ * be modified.
+ */
+public class ModelStore {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelStore.class);
+
+    public static final String DIRECTORY_PROPERTY = "alfred.modelStore.dir";
+    public static final String CACHE_SIZE_PROPERTY = "alfred.modelStore.cacheSize";
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private static final String EXTENSION = ".model";
+
+    private static final ModelStore DEFAULT = new ModelStore(
+            Paths.get(System.getProperty(DIRECTORY_PROPERTY,
+                    Paths.get(System.getProperty("java.io.tmpdir"), "alfred-models").toString())),
+            Integer.getInteger(CACHE_SIZE_PROPERTY, DEFAULT_CACHE_SIZE));
+
+    private final Path directory;
+    // Access ordered, so the eldest entry is the least recently used one.
+    // Guarded by itself.
+    private final Map<String, Model> cache;
+
+    public ModelStore(Path directory, int cacheSize) {
+        Validate.isTrue(cacheSize >= 0, "Cache size must be >= 0");
+        this.directory = directory;
+        this.cache = new LinkedHashMap<String, Model>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Model> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Store in -Dalfred.modelStore.dir, by default alfred-models under the
+     * temp directory, caching -Dalfred.modelStore.cacheSize models.
+     */
+    public static ModelStore getDefault() {
+        return DEFAULT;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns the last model saved for the net, or empty if there is none
+     * or it can't be read.
+     */
+    public Optional<Model> load(String netId, int side, int depth) {
+        String key = key(netId, side, depth);
+        synchronized (cache) {
+            Model model = cache.get(key);
+            if (model != null) {
+                return Optional.of(model);
+            }
+        }
+        Model model;
+        try {
+            model = ModelFormat.read(directory.resolve(key + EXTENSION));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("Could not read stored model for net {}", netId, e);
+            return Optional.empty();
+        }
+        if (model.getSide() != side || model.getDepth() != depth) {
+            log.warn("Stored model for net {} is {}x{}, expected {}x{}", netId, model.getSide(),
+                    model.getDepth(), side, depth);
+            return Optional.empty();
+        }
+        synchronized (cache) {
+            cache.put(key, model);
+        }
+        return Optional.of(model);
+    }
+
+    /**
+     * Replaces the stored model of the net. A failed write is logged and
+     * leaves the previous file in place.
+     */
+    public void save(String netId, Model model) {
+        String key = key(netId, model.getSide(), model.getDepth());
+        synchronized (cache) {
+            cache.put(key, model);
+        }
+        try {
+            ModelFiles.writeAtomically(directory.resolve(key + EXTENSION), file -> ModelFormat.write(file, model));
+            log.debug("Stored model for net {} in {}", netId, directory);
+        } catch (IOException e) {
+            log.warn("Could not store model for net {}", netId, e);
+        }
+    }
+
+    private static String key(String netId, int side, int depth) {
+        return ModelFiles.encode(netId) + "-" + side + "x" + depth;
+    }
+}
@@ -0,0 +1,488 @@
+package com.augurworks.alfred.models;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.augurworks.alfred.Augout;
+import com.augurworks.alfred.Dataset;
+import com.augurworks.alfred.NetTrainSpecification;
+import com.augurworks.alfred.RectNetFixed;
+import com.augurworks.alfred.TrainingOptions;
+import com.augurworks.alfred.TrainingStopReason;
+import com.augurworks.alfred.messaging.TrainingMessage;
+import com.augurworks.alfred.stats.TrainingStat;
+import com.augurworks.alfred.util.BinaryAugout;
+import com.augurworks.alfred.util.Hashes;
+
+/**
+ * Keeps the results of finished training jobs so a resubmitted job, after
+ * a client retry or a duplicate delivery, gets the earlier result instead
+ * of training again.
+ *
+ * Results are keyed by a SHA-256 of the parsed training data and every
+ * option that changes what training gives, so the same data formatted
+ * differently, or sent as text once and binary once, is the same job. The
+ * net id is not part of the key. Only jobs with a seed are cached: without
+ * one every submission asks for a net from fresh random weights. Jobs that
+ * warm start depend on the stored model rather than only on their message
+ * and are never cached, nor are results that ran out of time.
+ *
+ * Entries expire after a time to live. The most recently used ones are kept
+ * in memory up to a size, and with a directory, the ones evicted for size
+ * are written there, up to a size of their own, and read back on a miss.
+ */
+public class ResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultCache.class);
+
+    /**
+     * Metadata key, false trains the job even if its result is cached, e.g.
+     * to get a net from fresh random weights. The new result replaces the
+     * cached one.
+     */
+    public static final String USE_CACHED_RESULT_KEY = "useCachedResult";
+
+    public static final String MAX_BYTES_PROPERTY = "alfred.resultCache.maxBytes";
+    public static final String TTL_SECONDS_PROPERTY = "alfred.resultCache.ttlSeconds";
+    public static final String DIRECTORY_PROPERTY = "alfred.resultCache.dir";
+    public static final String MAX_DISK_BYTES_PROPERTY = "alfred.resultCache.maxDiskBytes";
+    public static final long DEFAULT_MAX_BYTES = 64L << 20;
+    public static final long DEFAULT_TTL_SECONDS = TimeUnit.HOURS.toSeconds(24);
+    public static final long DEFAULT_MAX_DISK_BYTES = 1L << 30;
+
+    private static final int KEY_VERSION = 1;
+    private static final int FILE_VERSION = 1;
+    private static final String EXTENSION = ".result";
+
+    private static final ResultCache DEFAULT = new ResultCache(
+            Long.getLong(MAX_BYTES_PROPERTY, DEFAULT_MAX_BYTES),
+            Long.getLong(TTL_SECONDS_PROPERTY, DEFAULT_TTL_SECONDS),
+            StringUtils.isEmpty(System.getProperty(DIRECTORY_PROPERTY))
+                    ? null : Paths.get(System.getProperty(DIRECTORY_PROPERTY)),
+            Long.getLong(MAX_DISK_BYTES_PROPERTY, DEFAULT_MAX_DISK_BYTES),
+            System::currentTimeMillis);
+
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final Path directory;
+    private final long maxDiskBytes;
+    private final LongSupplier clock;
+
+    // Access ordered, so the eldest entry is the least recently used one.
+    // Guarded by itself, as is bytes.
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * @param maxBytes
+     *            estimated heap the entries in memory may take, 0 disables
+     *            the cache
+     * @param directory
+     *            where entries evicted from memory go, null to drop them
+     * @param clock
+     *            current time in millis, entries expire by
+     */
+    public ResultCache(long maxBytes, long ttlSeconds, Path directory, long maxDiskBytes, LongSupplier clock) {
+        Validate.isTrue(maxBytes >= 0, "Max bytes must be >= 0");
+        Validate.isTrue(ttlSeconds > 0, "Time to live must be positive");
+        Validate.isTrue(maxDiskBytes >= 0, "Max disk bytes must be >= 0");
+        this.maxBytes = maxBytes;
+        this.ttlMillis = TimeUnit.SECONDS.toMillis(ttlSeconds);
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.clock = clock;
+    }
+
+    /**
+     * Cache of -Dalfred.resultCache.maxBytes in memory, by default 64 MB,
+     * whose entries expire after -Dalfred.resultCache.ttlSeconds, by default
+     * a day, spilling to -Dalfred.resultCache.dir up to
+     * -Dalfred.resultCache.maxDiskBytes, by default 1 GB, if set.
+     */
+    public static ResultCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Key of a job's result, empty if its result can't be cached. Jobs with
+     * invalid options have none, training them fails on its own.
+     */
+    public static Optional<String> key(TrainingMessage trainingMessage, NetTrainSpecification netSpec) {
+        TrainingOptions options;
+        try {
+            options = TrainingOptions.fromMetadata(trainingMessage.getMetadata());
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (options.getSeed() == null || options.isWarmStart()) {
+            return Optional.empty();
+        }
+        KeyDigest digest = new KeyDigest();
+        digest.putInt(KEY_VERSION);
+        digest.putString(options.getPrecision().name());
+        digest.putString(options.getActivation().name());
+        digest.putInt(options.getParallelRestarts());
+        digest.putString(options.getParallelMode().name());
+        digest.putInt(options.getEffectiveTrainingThreads());
+        digest.putString(String.valueOf(options.getSeed()));
+        digest.putString(options.getScoring().name());
+        digest.putInt(options.isSplitLayers() ? 1 : 0);
+
+        digest.putInt(netSpec.getSide());
+        digest.putInt(netSpec.getDepth());
+        digest.putInt(netSpec.getNumberRowIterations());
+        digest.putInt(netSpec.getNumberFileIterations());
+        digest.putDecimal(netSpec.getLearningConstant());
+        digest.putInt(netSpec.getMinTrainingRounds());
+        digest.putDecimal(netSpec.getPerformanceCutoff());
+        digest.putInt(netSpec.getBatchSize());
+
+        Dataset trainData = netSpec.getNetData().getTrainDataset();
+        // Targets are held normalized, which loses their scale
+        double[] targets = trainData.getTargets().clone();
+        netSpec.getNetData().getScaleFunction().denormalize(targets);
+        digest.putDataset(trainData);
+        digest.putDoubles(targets);
+        digest.putDataset(netSpec.getNetData().getPredictionDataset());
+        return Optional.of(digest.hex());
+    }
+
+    /**
+     * Whether a job may be answered from the cache, true unless its
+     * metadata opts out.
+     */
+    public static boolean isLookupEnabled(TrainingMessage trainingMessage) {
+        String useCachedResult = trainingMessage.getMetadata() == null
+                ? null : trainingMessage.getMetadata().get(USE_CACHED_RESULT_KEY);
+        return StringUtils.isEmpty(useCachedResult) || Boolean.parseBoolean(useCachedResult.trim());
+    }
+
+    /**
+     * The cached result for a key, if there is one that has not expired.
+     */
+    public Optional<Entry> get(String key) {
+        if (maxBytes == 0) {
+            return Optional.empty();
+        }
+        long now = clock.getAsLong();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (!entry.isExpired(now, ttlMillis)) {
+                    return Optional.of(entry);
+                }
+                remove(key);
+            }
+        }
+        Optional<Entry> spilled = readSpilled(key, now);
+        spilled.ifPresent(entry -> store(key, entry));
+        return spilled;
+    }
+
+    /**
+     * Caches the result of a trained net, unless it ran out of time and
+     * more time would give another result.
+     *
+     * @param augout
+     *            the net's augout, computed once for the result message too
+     */
+    public void put(String key, RectNetFixed net, Augout augout) {
+        if (maxBytes == 0 || net.getTrainingStopReason() == TrainingStopReason.OUT_OF_TIME) {
+            return;
+        }
+        store(key, new Entry(augout, new ArrayList<>(net.getTrainingStats()), clock.getAsLong()));
+    }
+
+    /**
+     * Estimated heap of the entries in memory.
+     */
+    public long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    private void store(String key, Entry entry) {
+        Map<String, Entry> evicted = new LinkedHashMap<>();
+        synchronized (entries) {
+            remove(key);
+            entries.put(key, entry);
+            bytes += entry.getEstimatedBytes();
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<String, Entry> next = eldest.next();
+                bytes -= next.getValue().getEstimatedBytes();
+                eldest.remove();
+                evicted.put(next.getKey(), next.getValue());
+            }
+        }
+        deleteSpilled(key);
+        if (directory != null && !evicted.isEmpty()) {
+            spill(evicted);
+        }
+    }
+
+    private void remove(String key) {
+        Entry removed = entries.remove(key);
+        if (removed != null) {
+            bytes -= removed.getEstimatedBytes();
+        }
+    }
+
+    private void spill(Map<String, Entry> evicted) {
+        long now = clock.getAsLong();
+        for (Map.Entry<String, Entry> entry : evicted.entrySet()) {
+            if (entry.getValue().isExpired(now, ttlMillis)) {
+                continue;
+            }
+            try {
+                ModelFiles.writeAtomically(file(entry.getKey()), file -> {
+                    try (ObjectOutputStream out = new ObjectOutputStream(
+                            new BufferedOutputStream(Files.newOutputStream(file)))) {
+                        out.writeInt(FILE_VERSION);
+                        out.writeLong(entry.getValue().getCreatedMillis());
+                        byte[] augout = BinaryAugout.encode(entry.getValue().getAugout());
+                        out.writeInt(augout.length);
+                        out.write(augout);
+                        out.writeObject(entry.getValue().getTrainingStats());
+                    }
+                });
+            } catch (IOException e) {
+                log.warn("Could not spill cached result {} to {}", entry.getKey(), directory, e);
+            }
+        }
+        trimDirectory(now);
+    }
+
+    /**
+     * Deletes expired files, then the oldest ones until the rest fit.
+     */
+    private void trimDirectory(long now) {
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : stream) {
+                long modified = Files.getLastModifiedTime(file).toMillis();
+                if (now - modified > ttlMillis) {
+                    Files.deleteIfExists(file);
+                } else {
+                    files.add(file);
+                    total += Files.size(file);
+                }
+            }
+            files.sort(Comparator.comparingLong(ResultCache::lastModified));
+            for (Iterator<Path> oldest = files.iterator(); total > maxDiskBytes && oldest.hasNext();) {
+                Path file = oldest.next();
+                total -= Files.size(file);
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            log.warn("Could not trim the result cache in {}", directory, e);
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private Optional<Entry> readSpilled(String key, long now) {
+        if (directory == null) {
+            return Optional.empty();
+        }
+        Path file = file(key);
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Unsupported cached result version " + version + " in " + file);
+            }
+            long createdMillis = in.readLong();
+            byte[] augout = new byte[in.readInt()];
+            in.readFully(augout);
+            @SuppressWarnings("unchecked")
+            List<TrainingStat> trainingStats = (List<TrainingStat>) in.readObject();
+            Entry entry = new Entry(BinaryAugout.decode(augout), trainingStats, createdMillis);
+            if (!entry.isExpired(now, ttlMillis)) {
+                return Optional.of(entry);
+            }
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException | ClassNotFoundException | ClassCastException | IllegalArgumentException e) {
+            log.warn("Could not read cached result {}, dropping it", file, e);
+        }
+        deleteSpilled(key);
+        return Optional.empty();
+    }
+
+    private void deleteSpilled(String key) {
+        if (directory == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file(key));
+        } catch (IOException e) {
+            log.warn("Could not delete cached result {} in {}", key, directory, e);
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + EXTENSION);
+    }
+
+    /**
+     * A cached result, shared by every job it answers and not to be
+     * modified.
+     */
+    public static final class Entry {
+
+        private final Augout augout;
+        private final List<TrainingStat> trainingStats;
+        private final long createdMillis;
+        private final long estimatedBytes;
+
+        Entry(Augout augout, List<TrainingStat> trainingStats, long createdMillis) {
+            this.augout = augout;
+            this.trainingStats = Collections.unmodifiableList(trainingStats);
+            this.createdMillis = createdMillis;
+            this.estimatedBytes = estimateBytes(augout, trainingStats);
+        }
+
+        public Augout getAugout() {
+            return augout;
+        }
+
+        public List<TrainingStat> getTrainingStats() {
+            return trainingStats;
+        }
+
+        public long getCreatedMillis() {
+            return createdMillis;
+        }
+
+        public long getEstimatedBytes() {
+            return estimatedBytes;
+        }
+
+        boolean isExpired(long now, long ttlMillis) {
+            return now - createdMillis > ttlMillis;
+        }
+
+        // Object headers and references rounded up, dates as Java 8 Strings
+        private static long estimateBytes(Augout augout, List<TrainingStat> trainingStats) {
+            long bytes = 64 + 8L * (augout.getTargets().length + augout.getEstimates().length);
+            for (String date : augout.getDates()) {
+                bytes += 64 + 2L * date.length();
+            }
+            return bytes + 128L * trainingStats.size();
+        }
+    }
+
+    /**
+     * Feeds typed values to a SHA-256 through a small buffer.
+     */
+    private static final class KeyDigest {
+
+        private final MessageDigest digest;
+        private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+        KeyDigest() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                // Every JRE has to provide SHA-256.
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putDouble(double value) {
+            ensure(8);
+            buffer.putLong(Double.doubleToLongBits(value));
+        }
+
+        void putDoubles(double[] values) {
+            putInt(values.length);
+            for (double value : values) {
+                putDouble(value);
+            }
+        }
+
+        void putString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            if (bytes.length <= buffer.capacity()) {
+                ensure(bytes.length);
+                buffer.put(bytes);
+            } else {
+                flush();
+                digest.update(bytes);
+            }
+        }
+
+        // 0.1 and 0.10 are the same learning constant
+        void putDecimal(BigDecimal value) {
+            putString(value == null ? "null" : value.stripTrailingZeros().toPlainString());
+        }
+
+        void putDataset(Dataset dataset) {
+            putInt(dataset.getSide());
+            putInt(dataset.size());
+            for (int row = 0; row < dataset.size(); row++) {
+                putString(dataset.getDate(row));
+            }
+            putDoubles(dataset.getInputs());
+        }
+
+        String hex() {
+            flush();
+            return Hashes.hex(digest.digest());
+        }
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            buffer.flip();
+            digest.update(buffer);
+            buffer.clear();
+        }
+    }
+}
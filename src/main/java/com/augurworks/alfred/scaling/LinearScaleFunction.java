@@ -1,5 +1,7 @@
 package com.augurworks.alfred.scaling;
 
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
 public class LinearScaleFunction implements ScaleFunction {
     private final double min;
     private final double max;
@@ -22,4 +24,14 @@ public class LinearScaleFunction implements ScaleFunction {
     public double denormalize(double value) {
         return (value - desiredMin) / (desiredMax - desiredMin) * (max - min) + min;
     }
+
+    @Override
+    public ScaleFunctionType getType() {
+        return ScaleFunctionType.LINEAR;
+    }
+
+    @Override
+    public double[] getParameters() {
+        return new double[] {min, max, desiredMin, desiredMax};
+    }
 }
@@ -1,9 +1,37 @@
 package com.augurworks.alfred.scaling;
 
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
 public interface ScaleFunction {
 
     double normalize(double value);
 
     double denormalize(double value);
 
+    /**
+     * Normalizes every value in place, each exactly as normalize would.
+     */
+    default void normalize(double[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = normalize(values[i]);
+        }
+    }
+
+    /**
+     * Denormalizes every value in place, each exactly as denormalize would.
+     */
+    default void denormalize(double[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = denormalize(values[i]);
+        }
+    }
+
+    ScaleFunctionType getType();
+
+    /**
+     * Parameters that, together with the type, recreate this function
+     * through ScaleFunctions.create.
+     */
+    double[] getParameters();
+
 }
@@ -3,6 +3,8 @@ package com.augurworks.alfred.scaling;
 import java.math.BigDecimal;
 import java.util.List;
 
+import org.apache.commons.lang3.Validate;
+
 public class ScaleFunctions {
 
     public enum ScaleFunctionType {
@@ -20,4 +22,24 @@ public class ScaleFunctions {
         return new SigmoidScaleFunction(values);
     }
 
+    public static ScaleFunction createSigmoidScaleFunction(double[] values) {
+        return new SigmoidScaleFunction(values);
+    }
+
+    /**
+     * Recreates a function from its type and getParameters().
+     */
+    public static ScaleFunction create(ScaleFunctionType type, double[] parameters) {
+        switch (type) {
+            case LINEAR:
+                Validate.isTrue(parameters.length == 4, "Linear scaling takes 4 parameters");
+                return createLinearScaleFunction(parameters[0], parameters[1], parameters[2], parameters[3]);
+            case SIGMOID:
+                Validate.isTrue(parameters.length == 2, "Sigmoid scaling takes 2 parameters");
+                return new SigmoidScaleFunction(parameters[0], parameters[1]);
+            default:
+                throw new IllegalArgumentException("Unrecognized function " + type);
+        }
+    }
+
 }
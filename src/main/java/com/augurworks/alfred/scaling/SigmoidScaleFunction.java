@@ -5,6 +5,8 @@ import java.util.List;
 
 import org.apache.commons.math3.stat.descriptive.moment.StandardDeviation;
 
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
 public class SigmoidScaleFunction implements ScaleFunction {
 
     private final double mean;
@@ -15,6 +17,24 @@ public class SigmoidScaleFunction implements ScaleFunction {
         this.standardDev = computeStandardDev(inputs, mean);
     }
 
+    /**
+     * Fits the function to values, the same as the List constructor with
+     * every value boxed.
+     */
+    public SigmoidScaleFunction(double[] values) {
+        double total = 0;
+        for (double value : values) {
+            total += value;
+        }
+        this.mean = total / (double)values.length;
+        this.standardDev = new StandardDeviation().evaluate(values, mean);
+    }
+
+    public SigmoidScaleFunction(double mean, double standardDev) {
+        this.mean = mean;
+        this.standardDev = standardDev;
+    }
+
     @Override
     public double normalize(double value) {
         return (1.0 / (1.0 + Math.exp(-1.0*(value - mean)/standardDev)));
@@ -25,6 +45,16 @@ public class SigmoidScaleFunction implements ScaleFunction {
         return (-1.0 * standardDev * Math.log((1.0 / value) - 1)) + mean;
     }
 
+    @Override
+    public ScaleFunctionType getType() {
+        return ScaleFunctionType.SIGMOID;
+    }
+
+    @Override
+    public double[] getParameters() {
+        return new double[] {mean, standardDev};
+    }
+
     private static double computeMean(List<BigDecimal> inputs) {
         double total = 0;
         for (BigDecimal input : inputs) {
@@ -1,26 +1,198 @@
 package com.augurworks.alfred.server;
 
+import com.augurworks.alfred.NetTrainSpecification;
+import com.augurworks.alfred.NetWeights;
+import com.augurworks.alfred.ParallelRestarts;
 import com.augurworks.alfred.RectNetFixed;
+import com.augurworks.alfred.TrainingOptions;
 import com.augurworks.alfred.messaging.TrainingMessage;
+import com.augurworks.alfred.models.Checkpoint;
+import com.augurworks.alfred.models.CheckpointStore;
+import com.augurworks.alfred.models.Model;
+import com.augurworks.alfred.models.ModelStore;
 import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+import com.augurworks.alfred.stats.RuntimeEstimator;
+import com.augurworks.alfred.util.AugtrainParser;
+import com.augurworks.alfred.util.BinaryAugtrain;
+import com.augurworks.alfred.util.Hashes;
+import com.augurworks.alfred.util.TimeUtils;
 import org.apache.log4j.MDC;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
-import java.util.List;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
 
 public class AlfredWrapper {
 
+    private static final Logger log = LoggerFactory.getLogger(AlfredWrapper.class);
+
+    private static final ScaleFunctionType SCALE_FUNCTION_TYPE = ScaleFunctionType.SIGMOID;
+
     public static RectNetFixed trainStatic(TrainingMessage trainingMessage, Integer timeoutMillis) {
-        ScaleFunctionType scaleFunctionType = ScaleFunctionType.SIGMOID;
+        return trainStatic(trainingMessage, timeoutMillis, null);
+    }
+
+    /**
+     * With a checkpoint store, a single net resumes from the checkpoint an
+     * earlier call left for the same net id and data, and leaves one itself
+     * if it runs out of time.
+     */
+    public static RectNetFixed trainStatic(TrainingMessage trainingMessage, Integer timeoutMillis,
+            CheckpointStore checkpointStore) {
+        NetTrainSpecification netSpec;
+        try {
+            netSpec = parseSpec(trainingMessage);
+        } catch (Exception e) {
+            log.error("Could not parse the augtrain of net {}", trainingMessage.getNetId(), e);
+            return null;
+        }
+        return trainStatic(trainingMessage, netSpec, timeoutMillis, checkpointStore);
+    }
+
+    /**
+     * Parses the augtrain of a training message, binary or text.
+     */
+    public static NetTrainSpecification parseSpec(TrainingMessage trainingMessage) throws IOException {
+        if (trainingMessage.getBinaryData() != null) {
+            return BinaryAugtrain.decode(trainingMessage.getBinaryData(), SCALE_FUNCTION_TYPE);
+        }
+        return AugtrainParser.parse(trainingMessage.getData().getBytes(StandardCharsets.UTF_8), SCALE_FUNCTION_TYPE);
+    }
+
+    /**
+     * Predicted wall time of training the net of a message, empty with no
+     * nets of its kind trained before, see {@link RuntimeEstimator}.
+     */
+    public static Optional<Long> predictTrainingMillis(TrainingMessage trainingMessage,
+            NetTrainSpecification netSpec) {
+        TrainingOptions options = parseOptions(trainingMessage);
+        return options == null ? Optional.empty() : RuntimeEstimator.getDefault().predictMillis(netSpec, options);
+    }
+
+    /**
+     * Options of a training message, null with a logged error if its
+     * metadata holds a value they can't be read from.
+     */
+    private static TrainingOptions parseOptions(TrainingMessage trainingMessage) {
+        try {
+            return TrainingOptions.fromMetadata(trainingMessage.getMetadata());
+        } catch (IllegalArgumentException e) {
+            log.error("Net {} has invalid training options in its metadata {}", trainingMessage.getNetId(),
+                    trainingMessage.getMetadata(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Trains the net of a message whose augtrain was already parsed. Returns
+     * null if the net could not be trained, for example with invalid
+     * options, after giving up at local maxima, or if the thread was
+     * interrupted.
+     */
+    public static RectNetFixed trainStatic(TrainingMessage trainingMessage, NetTrainSpecification netSpec,
+            Integer timeoutMillis, CheckpointStore checkpointStore) {
+        ScaleFunctionType scaleFunctionType = SCALE_FUNCTION_TYPE;
+        TrainingOptions options = parseOptions(trainingMessage);
+        if (options == null) {
+            return null;
+        }
 
         MDC.put("netId", trainingMessage.getNetId());
         MDC.put("trainingTimeLimitSec", timeoutMillis / 1000);
         MDC.put("scaleFunctionType", scaleFunctionType.name());
+        MDC.put("precision", options.getPrecision().name());
+        MDC.put("activation", options.getActivation().name());
+        MDC.put("parallelRestarts", options.getParallelRestarts());
+        MDC.put("parallelMode", options.getParallelMode().name());
+        MDC.put("seed", String.valueOf(options.getSeed()));
+        MDC.put("scoring", options.getScoring().name());
+        MDC.put("splitLayers", options.isSplitLayers());
+        MDC.put("warmStart", options.isWarmStart());
+
+        RuntimeEstimator runtimeEstimator = RuntimeEstimator.getDefault();
+        Optional<Long> predictedMillis = runtimeEstimator.predictMillis(netSpec, options);
+        if (predictedMillis.isPresent()) {
+            MDC.put("predictedTrainingSec", predictedMillis.get() / 1000);
+            if (timeoutMillis > 0 && predictedMillis.get() > timeoutMillis) {
+                log.info("Net {} is predicted to take {} but has {}, it may run out of time",
+                        trainingMessage.getNetId(), TimeUtils.formatSeconds((int) (predictedMillis.get() / 1000)),
+                        TimeUtils.formatSeconds(timeoutMillis / 1000));
+            }
+        }
 
         try {
-            List<String> lines = Arrays.asList(trainingMessage.getData().split("\n"));
-            return new RectNetFixed(trainingMessage.getNetId(), lines, scaleFunctionType).train(timeoutMillis, 5);
-        } catch (Exception t) { }
+            NetWeights initialWeights = null;
+            if (options.isWarmStart()) {
+                initialWeights = ModelStore.getDefault()
+                        .load(trainingMessage.getNetId(), netSpec.getSide(), netSpec.getDepth())
+                        .map(Model::getWeights)
+                        .orElse(null);
+                MDC.put("warmStarted", initialWeights != null);
+            }
+            RectNetFixed net;
+            if (options.getParallelRestarts() > 1) {
+                if (checkpointStore != null) {
+                    log.warn("Checkpoints are not supported with parallel restarts, net {} trains without them",
+                            trainingMessage.getNetId());
+                }
+                net = ParallelRestarts.train(trainingMessage.getNetId(), netSpec, options, timeoutMillis,
+                        options.getParallelRestarts(), initialWeights);
+                runtimeEstimator.observe(netSpec, options, net.getTrainingStats());
+            } else {
+                net = new RectNetFixed(trainingMessage.getNetId(), netSpec, options);
+                Checkpoint checkpoint = null;
+                if (checkpointStore != null) {
+                    String dataHash = trainingMessage.getBinaryData() != null
+                            ? Hashes.sha256Hex(trainingMessage.getBinaryData())
+                            : Hashes.sha256Hex(trainingMessage.getData());
+                    checkpoint = loadCheckpoint(checkpointStore, trainingMessage.getNetId(), dataHash, netSpec);
+                    net.enableCheckpoints(checkpointStore, dataHash, RectNetFixed.DEFAULT_CHECKPOINT_INTERVAL_MILLIS);
+                }
+                if (checkpoint != null) {
+                    net.resumeFrom(checkpoint);
+                    MDC.put("resumedFromRound", checkpoint.getEpoch());
+                } else if (initialWeights != null) {
+                    net.importWeights(initialWeights);
+                }
+                int carriedStats = net.getTrainingStats().size();
+                net.train(timeoutMillis, 5);
+                runtimeEstimator.observe(netSpec, options,
+                        net.getTrainingStats().subList(carriedStats, net.getTrainingStats().size()));
+            }
+            if (options.isWarmStart()) {
+                ModelStore.getDefault().save(trainingMessage.getNetId(), net.exportModel());
+            }
+            return net;
+        } catch (InterruptedException e) {
+            log.info("Training of net {} was interrupted", trainingMessage.getNetId());
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Could not train net {}", trainingMessage.getNetId(), e);
+        }
         return null;
     }
+
+    private static Checkpoint loadCheckpoint(CheckpointStore checkpointStore, String netId, String dataHash,
+            NetTrainSpecification netSpec) {
+        Optional<Checkpoint> checkpoint;
+        try {
+            checkpoint = checkpointStore.load(netId);
+        } catch (IOException e) {
+            log.warn("Could not load the checkpoint of net {}, training from scratch", netId, e);
+            return null;
+        }
+        if (!checkpoint.isPresent()) {
+            return null;
+        }
+        if (!checkpoint.get().getDataHash().equals(dataHash)
+                || checkpoint.get().getModel().getSide() != netSpec.getSide()
+                || checkpoint.get().getModel().getDepth() != netSpec.getDepth()) {
+            log.info("Checkpoint of net {} is for other data, training from scratch", netId);
+            return null;
+        }
+        log.info("Resuming net {} from round {}", netId, checkpoint.get().getEpoch());
+        return checkpoint.get();
+    }
 }
@@ -0,0 +1,353 @@
+package com.augurworks.alfred.stats;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.augurworks.alfred.NetTrainSpecification;
+import com.augurworks.alfred.TrainingOptions;
+import com.augurworks.alfred.TrainingStopReason;
+
+/**
+ * Predicts how long a net takes to train from the {@link TrainingStat}s of
+ * the nets trained before it, so a job can be sized against the time it
+ * has before it starts.
+ *
+ * Each try in a net's stats gives the seconds one epoch took. An epoch
+ * passes over the rows once per row iteration plus once to score, and each
+ * pass evaluates side * depth neurons and updates side^2 * depth weights,
+ * so seconds per epoch is fit as a fixed overhead plus a cost per neuron
+ * evaluation plus a cost per weight update, none negative. The fit
+ * minimizes relative error, so small nets predict as well as large ones,
+ * and is kept per precision, parallel mode, threads and restarts. Older
+ * tries weigh less so it follows the hardware it runs on. The sums of the
+ * fits are kept in a local file.
+ */
+public class RuntimeEstimator {
+
+    private static final Logger log = LoggerFactory.getLogger(RuntimeEstimator.class);
+
+    public static final String FILE_PROPERTY = "alfred.runtimeEstimator.file";
+
+    private static final int FILE_VERSION = 1;
+    // Overhead, neuron evaluations and weight updates of an epoch
+    private static final int FEATURES = 3;
+    // Weight of past tries after each new one, about the last 50 count
+    private static final double DECAY = 0.98;
+    // Truncated to whole seconds, shorter tries say little
+    private static final int MIN_SECONDS = 1;
+
+    private static final RuntimeEstimator DEFAULT = new RuntimeEstimator(
+            Paths.get(System.getProperty(FILE_PROPERTY,
+                    Paths.get(System.getProperty("java.io.tmpdir"), "alfred-runtime.stats").toString())));
+
+    private final Path file;
+    // Guarded by this
+    private final Map<String, Fit> fits = new HashMap<>();
+
+    public RuntimeEstimator(Path file) {
+        this.file = file;
+        try {
+            load();
+        } catch (IOException e) {
+            log.warn("Could not read runtime stats from {}, starting without them", file, e);
+            fits.clear();
+        }
+    }
+
+    /**
+     * Estimator kept in -Dalfred.runtimeEstimator.file, by default
+     * alfred-runtime.stats under the temp directory.
+     */
+    public static RuntimeEstimator getDefault() {
+        return DEFAULT;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Features of one epoch of a net: 1, neuron evaluations and weight
+     * updates.
+     */
+    private static double[] features(NetTrainSpecification netSpec) {
+        double passes = (double) netSpec.getNetData().getTrainDataset().size()
+                * (netSpec.getNumberRowIterations() + 1);
+        double neurons = (double) netSpec.getSide() * netSpec.getDepth();
+        return new double[] {1, neurons * passes, neurons * netSpec.getSide() * passes};
+    }
+
+    /**
+     * Learns from the stats of a trained net. Pass only the stats of this
+     * run, not those a checkpoint carried over, which were observed by the
+     * run that left it.
+     */
+    public synchronized void observe(NetTrainSpecification netSpec, TrainingOptions options,
+            List<TrainingStat> trainingStats) {
+        double[] features = features(netSpec);
+        Fit fit = fits.computeIfAbsent(key(options), k -> new Fit());
+        int observed = 0;
+        TrainingStat start = null;
+        TrainingStat last = null;
+        for (TrainingStat stat : trainingStats) {
+            if (stat.getTrainingStage() == TrainingStage.STARTING
+                    || (start != null && !Objects.equals(stat.getRestart(), start.getRestart()))) {
+                observed += add(fit, features, start, last);
+                start = stat.getTrainingStage() == TrainingStage.STARTING ? stat : null;
+                last = null;
+            } else if (start != null) {
+                last = stat;
+            }
+        }
+        observed += add(fit, features, start, last);
+        if (observed > 0) {
+            try {
+                save();
+            } catch (IOException e) {
+                log.warn("Could not save runtime stats to {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * Predicted seconds of one epoch, empty with nothing trained yet in the
+     * same precision, parallel mode and threads.
+     */
+    public synchronized Optional<Double> predictEpochSeconds(NetTrainSpecification netSpec,
+            TrainingOptions options) {
+        Fit fit = fits.get(key(options));
+        if (fit == null || fit.weight == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(fit.predict(features(netSpec)));
+    }
+
+    /**
+     * Predicted wall time of training all file iterations of a net, which
+     * is what it takes unless it stops early.
+     */
+    public Optional<Long> predictMillis(NetTrainSpecification netSpec, TrainingOptions options) {
+        return predictEpochSeconds(netSpec, options)
+                .map(seconds -> (long) Math.ceil(seconds * 1000 * netSpec.getNumberFileIterations()));
+    }
+
+    private static String key(TrainingOptions options) {
+        return options.getPrecision() + "/" + options.getParallelMode() + "/"
+                + options.getEffectiveTrainingThreads() + "/" + options.getParallelRestarts();
+    }
+
+    private static int add(Fit fit, double[] features, TrainingStat start, TrainingStat last) {
+        if (start == null || last == null || last.getSecondsElapsed() == null || last.getRoundsTrained() == null) {
+            return 0;
+        }
+        int epochs = last.getRoundsTrained() - start.getRoundsTrained();
+        if (last.getTrainingStopReason() == TrainingStopReason.OUT_OF_TIME) {
+            // The epoch that ran out of time was trained but not counted
+            epochs++;
+        }
+        int seconds = last.getSecondsElapsed() - start.getSecondsElapsed();
+        if (epochs <= 0 || seconds < MIN_SECONDS) {
+            return 0;
+        }
+        // Mid-second on average, elapsed time is truncated
+        fit.add(features, (seconds + 0.5) / epochs);
+        return 1;
+    }
+
+    private void load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Unsupported runtime stats version " + version + " in " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                Fit fit = new Fit();
+                fit.weight = in.readDouble();
+                fit.sumYY = in.readDouble();
+                for (int row = 0; row < FEATURES; row++) {
+                    fit.sumXY[row] = in.readDouble();
+                    for (int col = 0; col < FEATURES; col++) {
+                        fit.sumXX[row][col] = in.readDouble();
+                    }
+                }
+                fits.put(key, fit);
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing trained yet
+        }
+    }
+
+    /**
+     * Writes a temporary file next to the stats and moves it into place, so
+     * a process dying mid-write leaves the previous stats.
+     */
+    private void save() throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(FILE_VERSION);
+                out.writeInt(fits.size());
+                for (Map.Entry<String, Fit> entry : fits.entrySet()) {
+                    Fit fit = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeDouble(fit.weight);
+                    out.writeDouble(fit.sumYY);
+                    for (int row = 0; row < FEATURES; row++) {
+                        out.writeDouble(fit.sumXY[row]);
+                        for (int col = 0; col < FEATURES; col++) {
+                            out.writeDouble(fit.sumXX[row][col]);
+                        }
+                    }
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Decayed sums of a least squares fit of seconds per epoch y to the
+     * features x of an epoch, each try weighted by 1 / y^2 so the fit
+     * minimizes relative error.
+     */
+    private static final class Fit {
+        double weight;
+        double sumYY;
+        final double[] sumXY = new double[FEATURES];
+        final double[][] sumXX = new double[FEATURES][FEATURES];
+
+        void add(double[] x, double y) {
+            double w = 1 / (y * y);
+            weight = weight * DECAY + 1;
+            sumYY = sumYY * DECAY + w * y * y;
+            for (int row = 0; row < FEATURES; row++) {
+                sumXY[row] = sumXY[row] * DECAY + w * x[row] * y;
+                for (int col = 0; col < FEATURES; col++) {
+                    sumXX[row][col] = sumXX[row][col] * DECAY + w * x[row] * x[col];
+                }
+            }
+        }
+
+        double predict(double[] x) {
+            double[] coefficients = solve();
+            double y = 0;
+            for (int i = 0; i < FEATURES; i++) {
+                y += coefficients[i] * x[i];
+            }
+            return y;
+        }
+
+        /**
+         * Non-negative least squares by trying every subset of the
+         * features, there being few, and keeping the non-negative solution
+         * with the least squared error.
+         */
+        private double[] solve() {
+            double[] best = null;
+            double bestError = Double.POSITIVE_INFINITY;
+            for (int subset = 1; subset < 1 << FEATURES; subset++) {
+                double[] coefficients = solve(subset);
+                if (coefficients == null) {
+                    continue;
+                }
+                // sum w (y - b.x)^2 = yy - 2 b.xy + b.XX.b
+                double error = sumYY;
+                for (int row = 0; row < FEATURES; row++) {
+                    error -= 2 * coefficients[row] * sumXY[row];
+                    for (int col = 0; col < FEATURES; col++) {
+                        error += coefficients[row] * sumXX[row][col] * coefficients[col];
+                    }
+                }
+                if (error < bestError) {
+                    bestError = error;
+                    best = coefficients;
+                }
+            }
+            // Tries of one size fit with any single feature, at worst
+            return best;
+        }
+
+        /**
+         * Solves the normal equations for the features in subset, null if
+         * they are singular or a coefficient comes out negative.
+         */
+        private double[] solve(int subset) {
+            int[] index = new int[Integer.bitCount(subset)];
+            for (int i = 0, n = 0; i < FEATURES; i++) {
+                if ((subset & 1 << i) != 0) {
+                    index[n++] = i;
+                }
+            }
+            int n = index.length;
+            // Scaled to a unit diagonal, the features differ by orders of
+            // magnitude
+            double[] scale = new double[n];
+            for (int i = 0; i < n; i++) {
+                scale[i] = Math.sqrt(sumXX[index[i]][index[i]]);
+                if (scale[i] == 0) {
+                    return null;
+                }
+            }
+            double[][] a = new double[n][n + 1];
+            for (int row = 0; row < n; row++) {
+                for (int col = 0; col < n; col++) {
+                    a[row][col] = sumXX[index[row]][index[col]] / (scale[row] * scale[col]);
+                }
+                a[row][n] = sumXY[index[row]] / scale[row];
+            }
+            for (int pivot = 0; pivot < n; pivot++) {
+                int max = pivot;
+                for (int row = pivot + 1; row < n; row++) {
+                    if (Math.abs(a[row][pivot]) > Math.abs(a[max][pivot])) {
+                        max = row;
+                    }
+                }
+                if (Math.abs(a[max][pivot]) < 1e-9) {
+                    return null;
+                }
+                double[] swap = a[pivot];
+                a[pivot] = a[max];
+                a[max] = swap;
+                for (int row = 0; row < n; row++) {
+                    if (row != pivot) {
+                        double factor = a[row][pivot] / a[pivot][pivot];
+                        for (int col = pivot; col <= n; col++) {
+                            a[row][col] -= factor * a[pivot][col];
+                        }
+                    }
+                }
+            }
+            double[] coefficients = new double[FEATURES];
+            for (int i = 0; i < n; i++) {
+                double coefficient = a[i][n] / a[i][i] / scale[i];
+                if (coefficient < 0) {
+                    return null;
+                }
+                coefficients[index[i]] = coefficient;
+            }
+            return coefficients;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.augurworks.alfred.stats;
 
 import com.augurworks.alfred.TrainingStopReason;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 import java.io.Serializable;
@@ -9,6 +11,9 @@ import java.util.Date;
 @Data
 public class TrainingStat implements Serializable {
 
+    // Fixed, stats are kept in checkpoint and cached result files
+    private static final long serialVersionUID = 1L;
+
     private final String netId;
     private final Integer dataSets;
     private final Double learningConstant;
@@ -19,6 +24,19 @@ public class TrainingStat implements Serializable {
     private Double rmsError;
     private TrainingStopReason trainingStopReason;
     private TrainingStage trainingStage;
+    private Integer restart;
 
     private Date dateCreated = new Date();
+
+    // Spelled out so Jackson can read stats back, e.g. in binary messages
+    @JsonCreator
+    public TrainingStat(@JsonProperty("netId") String netId,
+                        @JsonProperty("dataSets") Integer dataSets,
+                        @JsonProperty("learningConstant") Double learningConstant,
+                        @JsonProperty("rowCount") Integer rowCount) {
+        this.netId = netId;
+        this.dataSets = dataSets;
+        this.learningConstant = learningConstant;
+        this.rowCount = rowCount;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,304 @@
+package com.augurworks.alfred.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.lang3.Validate;
+
+import com.augurworks.alfred.NetTrainSpecification;
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
+/**
+ * Parses augtrain straight from its encoded bytes. Unlike
+ * {@link FileParser} it never splits the input into line or cell strings;
+ * numbers are scanned in place and each row goes to the builder through one
+ * reused double[]. Only the dates become strings.
+ *
+ * Numbers with at most 15 significant digits and a decimal exponent within
+ * +-22 are converted with a single exactly rounded multiply or divide, which
+ * covers ordinary augtrain values. Anything else is handed to
+ * Double.parseDouble, so every value is bit for bit the double FileParser
+ * reads.
+ */
+public class AugtrainParser {
+
+    private static final int MAX_FAST_DIGITS = 15;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    /**
+     * Receives an augtrain file as it is scanned: the header first, then
+     * every row in file order.
+     */
+    public interface Handler {
+
+        /**
+         * Takes the size and training info lines and returns the number of
+         * inputs per row.
+         */
+        int header(String sizeLine, String trainingInfoLine);
+
+        /**
+         * inputs is reused for the next row.
+         */
+        void dataRow(String date, double target, double[] inputs);
+
+        /**
+         * A row with a NULL target, inputs is reused for the next row.
+         */
+        void predictionRow(String date, double[] inputs);
+    }
+
+    private AugtrainParser() {
+        // utility class
+    }
+
+    public static NetTrainSpecification parse(byte[] augtrain, ScaleFunctionType sfType) {
+        return parse(augtrain, 0, augtrain.length, sfType);
+    }
+
+    private static NetTrainSpecification parse(byte[] augtrain, int start, int end, ScaleFunctionType sfType) {
+        NetTrainSpecification.Builder builder = new NetTrainSpecification.Builder();
+        builder.scaleFunctionType(sfType);
+        new Scanner(augtrain, start, end).scan(new Handler() {
+            @Override
+            public int header(String sizeLine, String trainingInfoLine) {
+                FileParser.parseSizeLine(builder, sizeLine);
+                FileParser.parseTrainingInfoLine(builder, trainingInfoLine);
+                return builder.getSide();
+            }
+
+            @Override
+            public void dataRow(String date, double target, double[] inputs) {
+                builder.addInputAndTarget(inputs, target, date);
+            }
+
+            @Override
+            public void predictionRow(String date, double[] inputs) {
+                builder.addPredictionRow(inputs, date);
+            }
+        });
+        return builder.build();
+    }
+
+    /**
+     * Scans augtrain into handler without building a spec, for consumers
+     * that want the raw values.
+     */
+    public static void scan(byte[] augtrain, Handler handler) {
+        new Scanner(augtrain, 0, augtrain.length).scan(handler);
+    }
+
+    /**
+     * Parses the buffer's remaining bytes without moving its position. Heap
+     * buffers are read in place, direct ones are copied once.
+     */
+    public static NetTrainSpecification parse(ByteBuffer augtrain, ScaleFunctionType sfType) {
+        if (augtrain.hasArray()) {
+            int offset = augtrain.arrayOffset();
+            return parse(augtrain.array(), offset + augtrain.position(), offset + augtrain.limit(), sfType);
+        }
+        byte[] bytes = new byte[augtrain.remaining()];
+        augtrain.duplicate().get(bytes);
+        return parse(bytes, sfType);
+    }
+
+    private static class Scanner {
+
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+        private int lineNumber;
+
+        Scanner(byte[] bytes, int start, int end) {
+            this.bytes = bytes;
+            this.position = start;
+            this.end = end;
+        }
+
+        void scan(Handler handler) {
+            String sizeLine = nextLine();
+            String trainingInfoLine = nextLine();
+            double[] inputs = new double[handler.header(sizeLine, trainingInfoLine)];
+            // skip the titles line
+            nextLine();
+            int rows = 0;
+            while (position < end) {
+                lineNumber++;
+                if (isLineEnd(bytes[position])) {
+                    skipLine();
+                    continue;
+                }
+                parseDataLine(handler, inputs);
+                rows++;
+            }
+            Validate.isTrue(rows > 0, "Cannot parse file with no data");
+        }
+
+        private void parseDataLine(Handler handler, double[] inputs) {
+            int dateStart = position;
+            int dateEnd = tokenEnd(position);
+            String date = new String(bytes, dateStart, dateEnd - dateStart, StandardCharsets.UTF_8);
+            position = expectSeparator(dateEnd, ' ');
+
+            int targetEnd = tokenEnd(position);
+            boolean prediction = isNull(position, targetEnd);
+            double target = prediction ? 0 : parseNumber(position, targetEnd);
+            position = expectSeparator(targetEnd, ' ');
+
+            for (int i = 0; i < inputs.length; i++) {
+                int inputEnd = tokenEnd(position);
+                inputs[i] = parseNumber(position, inputEnd);
+                position = i < inputs.length - 1 ? expectSeparator(inputEnd, ',') : inputEnd;
+            }
+            // Like FileParser, ignore anything after the inputs.
+            skipLine();
+
+            if (prediction) {
+                handler.predictionRow(date, inputs);
+            } else {
+                handler.dataRow(date, target, inputs);
+            }
+        }
+
+        private String nextLine() {
+            Validate.isTrue(position < end, "Cannot parse file with no data");
+            lineNumber++;
+            int start = position;
+            int lineEnd = start;
+            while (lineEnd < end && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            position = lineEnd + 1;
+            if (lineEnd > start && bytes[lineEnd - 1] == '\r') {
+                lineEnd--;
+            }
+            return new String(bytes, start, lineEnd - start, StandardCharsets.UTF_8);
+        }
+
+        private void skipLine() {
+            while (position < end && bytes[position] != '\n') {
+                position++;
+            }
+            position++;
+        }
+
+        private int tokenEnd(int from) {
+            int i = from;
+            while (i < end) {
+                byte b = bytes[i];
+                if (b == ' ' || b == ',' || isLineEnd(b)) {
+                    break;
+                }
+                i++;
+            }
+            return i;
+        }
+
+        private int expectSeparator(int at, char separator) {
+            if (at >= end || bytes[at] != separator) {
+                throw new IllegalArgumentException("Expected '" + separator + "' at line " + lineNumber);
+            }
+            return at + 1;
+        }
+
+        private boolean isNull(int from, int to) {
+            return to - from == 4
+                    && (bytes[from] | 0x20) == 'n'
+                    && (bytes[from + 1] | 0x20) == 'u'
+                    && (bytes[from + 2] | 0x20) == 'l'
+                    && (bytes[from + 3] | 0x20) == 'l';
+        }
+
+        private double parseNumber(int from, int to) {
+            if (from == to) {
+                throw new IllegalArgumentException("Missing number at line " + lineNumber);
+            }
+            int i = from;
+            boolean negative = bytes[i] == '-';
+            if (negative) {
+                i++;
+            }
+            long mantissa = 0;
+            int digits = 0;
+            int exponent = 0;
+            boolean sawDigit = false;
+            for (; i < to && isDigit(bytes[i]); i++) {
+                sawDigit = true;
+                int digit = bytes[i] - '0';
+                if (mantissa != 0 || digit != 0) {
+                    if (digits == MAX_FAST_DIGITS) {
+                        return parseSlow(from, to);
+                    }
+                    mantissa = mantissa * 10 + digit;
+                    digits++;
+                }
+            }
+            if (i < to && bytes[i] == '.') {
+                for (i++; i < to && isDigit(bytes[i]); i++) {
+                    sawDigit = true;
+                    int digit = bytes[i] - '0';
+                    exponent--;
+                    if (mantissa != 0 || digit != 0) {
+                        if (digits == MAX_FAST_DIGITS) {
+                            return parseSlow(from, to);
+                        }
+                        mantissa = mantissa * 10 + digit;
+                        digits++;
+                    }
+                }
+            }
+            if (i < to && (bytes[i] == 'e' || bytes[i] == 'E')) {
+                i++;
+                boolean negativeExponent = i < to && bytes[i] == '-';
+                if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+                    i++;
+                }
+                int exponentStart = i;
+                int explicitExponent = 0;
+                for (; i < to && isDigit(bytes[i]) && i - exponentStart < 4; i++) {
+                    explicitExponent = explicitExponent * 10 + bytes[i] - '0';
+                }
+                if (i == exponentStart) {
+                    return parseSlow(from, to);
+                }
+                exponent += negativeExponent ? -explicitExponent : explicitExponent;
+            }
+            if (!sawDigit || i != to) {
+                // Signs, suffixes, NaN and the like, or not a number at all.
+                return parseSlow(from, to);
+            }
+            double value;
+            if (mantissa == 0) {
+                value = 0;
+            } else if (exponent == 0) {
+                value = mantissa;
+            } else if (exponent > 0 && exponent < POWERS_OF_TEN.length) {
+                value = mantissa * POWERS_OF_TEN[exponent];
+            } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+                value = mantissa / POWERS_OF_TEN[-exponent];
+            } else {
+                return parseSlow(from, to);
+            }
+            return negative ? -value : value;
+        }
+
+        private double parseSlow(int from, int to) {
+            try {
+                return Double.parseDouble(new String(bytes, from, to - from, StandardCharsets.ISO_8859_1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad number at line " + lineNumber, e);
+            }
+        }
+
+        private static boolean isDigit(byte b) {
+            return b >= '0' && b <= '9';
+        }
+
+        private static boolean isLineEnd(byte b) {
+            return b == '\n' || b == '\r';
+        }
+    }
+}
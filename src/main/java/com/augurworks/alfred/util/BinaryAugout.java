@@ -0,0 +1,56 @@
+package com.augurworks.alfred.util;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.Validate;
+
+import com.augurworks.alfred.Augout;
+
+/**
+ * Columnar binary form of an {@link Augout}, the payload of a binary result
+ * message: the dates, targets and estimates as columns encoded by
+ * {@link BinaryWriter}. The error column of the text form is left out, it
+ * is |target - estimate|. Malformed or truncated input throws
+ * IOException.
+ */
+public class BinaryAugout {
+
+    private static final int VERSION = 1;
+
+    private BinaryAugout() {
+        // utility class
+    }
+
+    public static byte[] encode(Augout augout) {
+        BinaryWriter writer = new BinaryWriter(16 * augout.getDates().length + 16);
+        writer.writeVarLong(VERSION);
+        writer.writeVarLong(augout.getTrainRows());
+        writer.writeVarLong(augout.getPredictionRows());
+        writer.writeDates(Arrays.asList(augout.getDates()));
+        writer.writeDoubles(augout.getTargets());
+        writer.writeDoubles(augout.getEstimates());
+        return writer.toByteArray();
+    }
+
+    public static Augout decode(byte[] binary) throws IOException {
+        try {
+            return read(binary);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new IOException("Malformed binary augout", e);
+        }
+    }
+
+    private static Augout read(byte[] binary) {
+        BinaryReader reader = new BinaryReader(binary);
+        long version = reader.readVarLong();
+        Validate.isTrue(version == VERSION, "Unsupported binary augout version %d", version);
+        int trainRows = reader.readCount(reader.remaining());
+        int predictionRows = reader.readCount(reader.remaining());
+        String[] dates = reader.readDates(trainRows + predictionRows);
+        double[] targets = reader.readDoubles(trainRows);
+        double[] estimates = reader.readDoubles(trainRows + predictionRows);
+        return new Augout(dates, targets, estimates);
+    }
+}
@@ -0,0 +1,147 @@
+package com.augurworks.alfred.util;
+
+import java.io.IOException;
+import java.time.DateTimeException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.Validate;
+
+import com.augurworks.alfred.Dataset;
+import com.augurworks.alfred.NetTrainSpecification;
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
+/**
+ * Columnar binary form of an augtrain file, the payload of a binary
+ * training message. The size and training info lines are kept as text, the
+ * rows become date, target and input columns encoded by
+ * {@link BinaryWriter}. Training rows come before prediction rows, each in
+ * file order, which is how the parsed spec holds them anyway.
+ *
+ * Decoding gives the same spec, bit for bit, as parsing the text.
+ * Malformed or truncated input throws IOException.
+ */
+public class BinaryAugtrain {
+
+    private static final int VERSION = 1;
+
+    private BinaryAugtrain() {
+        // utility class
+    }
+
+    /**
+     * Converts augtrain text to the binary form.
+     */
+    public static byte[] encode(byte[] augtrain) {
+        String[] header = new String[2];
+        Dataset.Builder[] rows = new Dataset.Builder[2];
+        AugtrainParser.scan(augtrain, new AugtrainParser.Handler() {
+            @Override
+            public int header(String sizeLine, String trainingInfoLine) {
+                header[0] = sizeLine;
+                header[1] = trainingInfoLine;
+                NetTrainSpecification.Builder builder = new NetTrainSpecification.Builder();
+                FileParser.parseSizeLine(builder, sizeLine);
+                rows[0] = new Dataset.Builder(builder.getSide(), true);
+                rows[1] = new Dataset.Builder(builder.getSide(), false);
+                return builder.getSide();
+            }
+
+            @Override
+            public void dataRow(String date, double target, double[] inputs) {
+                rows[0].add(date, target, inputs);
+            }
+
+            @Override
+            public void predictionRow(String date, double[] inputs) {
+                rows[1].add(date, inputs);
+            }
+        });
+        Dataset trainData = rows[0].build();
+        Dataset predictionData = rows[1].build();
+
+        BinaryWriter writer = new BinaryWriter(augtrain.length / 2);
+        writer.writeVarLong(VERSION);
+        writer.writeString(header[0]);
+        writer.writeString(header[1]);
+        writer.writeVarLong(trainData.getSide());
+        writer.writeVarLong(trainData.size());
+        writer.writeVarLong(predictionData.size());
+        writer.writeDates(dates(trainData));
+        writer.writeDates(dates(predictionData));
+        writer.writeDoubles(trainData.getTargets());
+        writer.writeDoubles(trainData.getInputs());
+        writer.writeDoubles(predictionData.getInputs());
+        return writer.toByteArray();
+    }
+
+    private static List<String> dates(Dataset data) {
+        String[] dates = new String[data.size()];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = data.getDate(i);
+        }
+        return Arrays.asList(dates);
+    }
+
+    /**
+     * Builds the spec the binary form was encoded from.
+     */
+    public static NetTrainSpecification decode(byte[] binary, ScaleFunctionType sfType) throws IOException {
+        try {
+            return read(binary, sfType);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            throw new IOException("Malformed binary augtrain", e);
+        }
+    }
+
+    /**
+     * Reads the size and training info lines into builder and returns the
+     * number of training rows, without decoding the columns.
+     */
+    public static int readHeader(byte[] binary, NetTrainSpecification.Builder builder) throws IOException {
+        try {
+            BinaryReader reader = new BinaryReader(binary);
+            long version = reader.readVarLong();
+            Validate.isTrue(version == VERSION, "Unsupported binary augtrain version %d", version);
+            FileParser.parseSizeLine(builder, reader.readString());
+            FileParser.parseTrainingInfoLine(builder, reader.readString());
+            reader.readCount(Integer.MAX_VALUE);
+            return reader.readCount(Integer.MAX_VALUE);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Malformed binary augtrain", e);
+        }
+    }
+
+    private static NetTrainSpecification read(byte[] binary, ScaleFunctionType sfType) {
+        BinaryReader reader = new BinaryReader(binary);
+        long version = reader.readVarLong();
+        Validate.isTrue(version == VERSION, "Unsupported binary augtrain version %d", version);
+        NetTrainSpecification.Builder builder = new NetTrainSpecification.Builder();
+        builder.scaleFunctionType(sfType);
+        FileParser.parseSizeLine(builder, reader.readString());
+        FileParser.parseTrainingInfoLine(builder, reader.readString());
+        int side = reader.readCount(Integer.MAX_VALUE);
+        Validate.isTrue(side == builder.getSide(), "Columns have %d inputs, the header says %d",
+                side, builder.getSide());
+        // Every value takes at least a byte, so the counts can't exceed the input.
+        int rows = reader.readCount(reader.remaining() / Math.max(1, side));
+        int predictionRows = reader.readCount(reader.remaining() / Math.max(1, side));
+        Validate.isTrue(rows > 0, "Cannot parse file with no data");
+        String[] dates = reader.readDates(rows);
+        String[] predictionDates = reader.readDates(predictionRows);
+        double[] targets = reader.readDoubles(rows);
+        double[] inputs = reader.readDoubles(rows * side);
+        double[] predictionInputs = reader.readDoubles(predictionRows * side);
+
+        double[] row = new double[side];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(inputs, i * side, row, 0, side);
+            builder.addInputAndTarget(row, targets[i], dates[i]);
+        }
+        for (int i = 0; i < predictionRows; i++) {
+            System.arraycopy(predictionInputs, i * side, row, 0, side);
+            builder.addPredictionRow(row, predictionDates[i]);
+        }
+        return builder.build();
+    }
+}
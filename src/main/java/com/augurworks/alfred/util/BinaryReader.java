@@ -0,0 +1,142 @@
+package com.augurworks.alfred.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+/**
+ * Reads what {@link BinaryWriter} wrote. Malformed or truncated input
+ * throws IllegalArgumentException.
+ */
+public class BinaryReader {
+
+    private final ByteBuffer buffer;
+
+    public BinaryReader(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads the buffer's remaining bytes, advancing its position.
+     */
+    public BinaryReader(ByteBuffer buffer) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public int remaining() {
+        return buffer.remaining();
+    }
+
+    public int readByte() {
+        require(1);
+        return buffer.get() & 0xFF;
+    }
+
+    public int readInt() {
+        require(4);
+        return buffer.getInt();
+    }
+
+    public long readVarLong() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint longer than 10 bytes");
+    }
+
+    public long readSignedVarLong() {
+        long value = readVarLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * A count written as a varint, checked to be sane before anything is
+     * allocated for it.
+     */
+    public int readCount(long max) {
+        long count = readVarLong();
+        if (count < 0 || count > max) {
+            throw new IllegalArgumentException("Bad count " + count);
+        }
+        return (int) count;
+    }
+
+    public byte[] readBytes() {
+        long length = readSignedVarLong();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad length " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    public String readString() {
+        byte[] bytes = readBytes();
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a column of count values into values[from..].
+     */
+    public void readDoubles(double[] values, int from, int count) {
+        int encoding = readByte();
+        if (encoding == BinaryWriter.RAW_DOUBLES) {
+            require(8L * count);
+            for (int i = from; i < from + count; i++) {
+                values[i] = buffer.getDouble();
+            }
+        } else if (encoding == BinaryWriter.DECIMAL_DOUBLES) {
+            int scale = readByte();
+            if (scale > BinaryWriter.MAX_SCALE) {
+                throw new IllegalArgumentException("Bad decimal scale " + scale);
+            }
+            double power = BinaryWriter.POWERS_OF_TEN[scale];
+            for (int i = from; i < from + count; i++) {
+                values[i] = readSignedVarLong() / power;
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown double encoding " + encoding);
+        }
+    }
+
+    public double[] readDoubles(int count) {
+        double[] values = new double[count];
+        readDoubles(values, 0, count);
+        return values;
+    }
+
+    public String[] readDates(int count) {
+        String[] dates = new String[count];
+        int encoding = readByte();
+        if (encoding == BinaryWriter.EPOCH_DAYS) {
+            long day = 0;
+            for (int i = 0; i < count; i++) {
+                day += readSignedVarLong();
+                dates[i] = LocalDate.ofEpochDay(day).toString();
+            }
+        } else if (encoding == BinaryWriter.TEXT_DATES) {
+            for (int i = 0; i < count; i++) {
+                dates[i] = readString();
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown date encoding " + encoding);
+        }
+        return dates;
+    }
+
+    private void require(long bytes) {
+        if (buffer.remaining() < bytes) {
+            throw new IllegalArgumentException("Truncated input, needed " + bytes + " more bytes");
+        }
+    }
+}
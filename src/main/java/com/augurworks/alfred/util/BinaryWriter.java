@@ -0,0 +1,196 @@
+package com.augurworks.alfred.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import com.augurworks.alfred.Dataset;
+
+/**
+ * Growable little-endian byte buffer for the binary wire formats, with
+ * columnar encodings for doubles and dates. {@link BinaryReader} reads it
+ * back.
+ *
+ * A double column is stored as decimal mantissas when every value is
+ * exactly m / 10^scale for one scale of at most 15 and a mantissa below
+ * 2^53, which is what parsing a decimal augtrain value gives. The mantissas
+ * are zigzag varints, so 0.13436 takes 3 bytes instead of 8. Any other
+ * column is stored as raw doubles. Both round trip bit for bit.
+ *
+ * A date column is stored as day deltas when every date is an ISO day,
+ * as UTF-8 strings otherwise.
+ */
+public class BinaryWriter {
+
+    static final int RAW_DOUBLES = 0;
+    static final int DECIMAL_DOUBLES = 1;
+    static final int EPOCH_DAYS = 0;
+    static final int TEXT_DATES = 1;
+    static final int MAX_SCALE = 15;
+    static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15,
+    };
+    private static final long MAX_MANTISSA = 1L << 53;
+
+    private byte[] bytes;
+    private int size;
+
+    public BinaryWriter() {
+        this(256);
+    }
+
+    public BinaryWriter(int capacity) {
+        this.bytes = new byte[Math.max(capacity, 16)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+    }
+
+    public void writeInt(int value) {
+        ensureCapacity(4);
+        for (int i = 0; i < 4; i++) {
+            bytes[size++] = (byte) (value >>> (8 * i));
+        }
+    }
+
+    /**
+     * Unsigned LEB128, 7 bits per byte.
+     */
+    public void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+    }
+
+    /**
+     * Zigzag varint, small negative values stay short.
+     */
+    public void writeSignedVarLong(long value) {
+        writeVarLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Length prefixed, null is written as length -1.
+     */
+    public void writeBytes(byte[] value) {
+        if (value == null) {
+            writeSignedVarLong(-1);
+            return;
+        }
+        writeSignedVarLong(value.length);
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, bytes, size, value.length);
+        size += value.length;
+    }
+
+    /**
+     * UTF-8, null is written as length -1.
+     */
+    public void writeString(String value) {
+        writeBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void writeDoubles(double[] values) {
+        writeDoubles(values, 0, values.length);
+    }
+
+    /**
+     * Writes values[from, from + count) as one column, see the class
+     * comment.
+     */
+    public void writeDoubles(double[] values, int from, int count) {
+        int scale = decimalScale(values, from, count);
+        if (scale < 0) {
+            writeByte(RAW_DOUBLES);
+            ensureCapacity(8 * count);
+            for (int i = from; i < from + count; i++) {
+                long bits = Double.doubleToRawLongBits(values[i]);
+                for (int b = 0; b < 8; b++) {
+                    bytes[size++] = (byte) (bits >>> (8 * b));
+                }
+            }
+            return;
+        }
+        writeByte(DECIMAL_DOUBLES);
+        writeByte(scale);
+        double power = POWERS_OF_TEN[scale];
+        for (int i = from; i < from + count; i++) {
+            writeSignedVarLong(Math.round(values[i] * power));
+        }
+    }
+
+    /**
+     * Smallest scale every value is an exact decimal at, -1 if there is
+     * none.
+     */
+    private static int decimalScale(double[] values, int from, int count) {
+        int scale = 0;
+        for (int i = from; i < from + count; i++) {
+            while (!isExactDecimal(values[i], scale)) {
+                if (++scale > MAX_SCALE) {
+                    return -1;
+                }
+            }
+        }
+        // A value exact at a smaller scale almost always stays exact at a
+        // larger one, check rather than rely on it.
+        for (int i = from; i < from + count; i++) {
+            if (!isExactDecimal(values[i], scale)) {
+                return -1;
+            }
+        }
+        return scale;
+    }
+
+    private static boolean isExactDecimal(double value, int scale) {
+        double power = POWERS_OF_TEN[scale];
+        double scaled = value * power;
+        if (!(Math.abs(scaled) < MAX_MANTISSA)) {
+            return false;
+        }
+        // Decoding divides the same way, so this is exactly what it reads.
+        return Double.doubleToRawLongBits(Math.round(scaled) / power) == Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Writes the dates as one column, see the class comment.
+     */
+    public void writeDates(List<String> dates) {
+        long[] days = new long[dates.size()];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = Dataset.parseIsoDay(dates.get(i));
+            if (days[i] == Long.MIN_VALUE) {
+                writeByte(TEXT_DATES);
+                for (String date : dates) {
+                    writeString(date);
+                }
+                return;
+            }
+        }
+        writeByte(EPOCH_DAYS);
+        long previous = 0;
+        for (long day : days) {
+            writeSignedVarLong(day - previous);
+            previous = day;
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(size + extra, bytes.length + (bytes.length >> 1)));
+        }
+    }
+}
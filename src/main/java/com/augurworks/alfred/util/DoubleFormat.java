@@ -0,0 +1,154 @@
+package com.augurworks.alfred.util;
+
+/**
+ * Writes doubles as ASCII without allocating, in the shortest decimal that
+ * parses back to the same double, the way Double.toString writes them. The
+ * Double.toString of JDKs before 19 may write more digits than needed
+ * (JDK-4511638), where this writes the shortest.
+ *
+ * Values from 1e-3 up to 1e7, which Double.toString writes without an
+ * exponent, take the fast path: the nearest decimal m / 10^s for a count
+ * of fraction digits s is found with exact 128 bit integer arithmetic, and
+ * the smallest s whose decimal lies inside the value's rounding interval is
+ * written.
+ * Anything else, exponents, NaN and infinities, is copied from
+ * Double.toString.
+ */
+public class DoubleFormat {
+
+    /**
+     * Longest text a double can take, e.g. -2.2250738585072014E-308.
+     */
+    public static final int MAX_LENGTH = 25;
+
+    private static final int MAX_FRACTION_DIGITS = 19;
+    private static final long[] POWERS_OF_TEN = new long[MAX_FRACTION_DIGITS + 1];
+    private static final long LOW_32_BITS = 0xFFFFFFFFL;
+    private static final long HIDDEN_BIT = 1L << 52;
+
+    static {
+        long power = 1;
+        for (int i = 0; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = power;
+            // 10^19 only fits as an unsigned long
+            power *= 10;
+        }
+    }
+
+    private DoubleFormat() {
+        // utility class
+    }
+
+    /**
+     * Writes value into out from pos, which needs {@link #MAX_LENGTH} bytes
+     * free, and returns the position after it.
+     */
+    public static int write(double value, byte[] out, int pos) {
+        double abs = Math.abs(value);
+        if (!(abs >= 1e-3 && abs < 1e7)) {
+            return writeAscii(Double.toString(value), out, pos);
+        }
+        long bits = Double.doubleToRawLongBits(abs);
+        long significand = (bits & (HIDDEN_BIT - 1)) | HIDDEN_BIT;
+        // abs is significand / 2^shift, shift is 29 to 62 in this range
+        int shift = 1075 - (int) (bits >>> 52);
+        // 17 significant digits always round trip, and if s fraction digits
+        // do then so does s + 1, so search for the fewest.
+        int low = 1;
+        int high = maxFractionDigits(abs);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (nearestDecimal(significand, shift, mid) >= 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        long mantissa = nearestDecimal(significand, shift, low);
+        if (mantissa < 0) {
+            return writeAscii(Double.toString(value), out, pos);
+        }
+        return writeFixed(value < 0, mantissa, low, out, pos);
+    }
+
+    /**
+     * Fraction digits of the 17 significant digit form of abs.
+     */
+    private static int maxFractionDigits(double abs) {
+        if (abs < 1) {
+            int leadingZeros = abs < 0.01 ? 2 : abs < 0.1 ? 1 : 0;
+            return leadingZeros + 17;
+        }
+        int integerDigits = 1;
+        for (double power = 10; power <= abs; power *= 10) {
+            integerDigits++;
+        }
+        return Math.max(1, 17 - integerDigits);
+    }
+
+    /**
+     * The mantissa m of the decimal m / 10^scale nearest to
+     * significand / 2^shift, or -1 if that decimal would not parse back to
+     * the same double.
+     */
+    private static long nearestDecimal(long significand, int shift, int scale) {
+        long power = POWERS_OF_TEN[scale];
+        // significand * 10^scale as 128 bits, at most 2^117
+        long aLow = significand & LOW_32_BITS;
+        long aHigh = significand >>> 32;
+        long bLow = power & LOW_32_BITS;
+        long bHigh = power >>> 32;
+        long lowLow = aLow * bLow;
+        long highLow = aHigh * bLow;
+        long lowHigh = aLow * bHigh;
+        long cross = (lowLow >>> 32) + (highLow & LOW_32_BITS) + (lowHigh & LOW_32_BITS);
+        long low = (cross << 32) | (lowLow & LOW_32_BITS);
+        long high = aHigh * bHigh + (highLow >>> 32) + (lowHigh >>> 32) + (cross >>> 32);
+
+        // error is the distance to the value in units of 2^-shift / 10^scale
+        long mantissa = (high << (64 - shift)) | (low >>> shift);
+        long error = low & ((1L << shift) - 1);
+        boolean below = true;
+        if (error >= 1L << (shift - 1)) {
+            mantissa++;
+            error = (1L << shift) - error;
+            below = false;
+        }
+        // The rounding interval reaches half an ulp either side, but only a
+        // quarter below a power of two.
+        long reach = below && significand == HIDDEN_BIT ? 4 * error : 2 * error;
+        return Long.compareUnsigned(reach, power) < 0 ? mantissa : -1;
+    }
+
+    private static int writeFixed(boolean negative, long mantissa, int scale, byte[] out, int pos) {
+        long power = POWERS_OF_TEN[scale];
+        long integer = Long.divideUnsigned(mantissa, power);
+        long fraction = Long.remainderUnsigned(mantissa, power);
+        if (negative) {
+            out[pos++] = '-';
+        }
+        int integerDigits = 1;
+        for (long rest = integer / 10; rest > 0; rest /= 10) {
+            integerDigits++;
+        }
+        int end = pos + integerDigits + 1 + scale;
+        int at = end;
+        for (int i = 0; i < scale; i++) {
+            out[--at] = (byte) ('0' + fraction % 10);
+            fraction /= 10;
+        }
+        out[--at] = '.';
+        do {
+            out[--at] = (byte) ('0' + integer % 10);
+            integer /= 10;
+        } while (integer > 0);
+        return end;
+    }
+
+    private static int writeAscii(String text, byte[] out, int pos) {
+        for (int i = 0; i < text.length(); i++) {
+            out[pos++] = (byte) text.charAt(i);
+        }
+        return pos;
+    }
+}
@@ -16,8 +16,8 @@ public class FileParser {
         Validate.isTrue(augtrain.size() >= 4, "Cannot parse file with no data");
 
         Iterator<String> fileLineIterator = augtrain.iterator();
-        parseSizeLine(netTrainingSpecBuilder, fileLineIterator);
-        parseTrainingInfoLine(netTrainingSpecBuilder, fileLineIterator);
+        parseSizeLine(netTrainingSpecBuilder, fileLineIterator.next());
+        parseTrainingInfoLine(netTrainingSpecBuilder, fileLineIterator.next());
         // skip the titles line
         fileLineIterator.next();
         while (fileLineIterator.hasNext()) {
@@ -26,6 +26,34 @@ public class FileParser {
         return netTrainingSpecBuilder.build();
     }
 
+    /**
+     * Reads the size and training info lines of augtrain into builder and
+     * returns the number of rows, prediction rows included, counting lines
+     * without parsing them.
+     */
+    public static int readHeader(String augtrain, NetTrainSpecification.Builder builder) {
+        int sizeLineEnd = lineEnd(augtrain, 0);
+        int trainingInfoLineEnd = lineEnd(augtrain, sizeLineEnd + 1);
+        int titlesLineEnd = lineEnd(augtrain, trainingInfoLineEnd + 1);
+        Validate.isTrue(titlesLineEnd < augtrain.length(), "Cannot parse file with no data");
+        parseSizeLine(builder, augtrain.substring(0, sizeLineEnd).trim());
+        parseTrainingInfoLine(builder, augtrain.substring(sizeLineEnd + 1, trainingInfoLineEnd).trim());
+        int rows = 0;
+        for (int start = titlesLineEnd + 1; start < augtrain.length(); ) {
+            int end = lineEnd(augtrain, start);
+            if (end > start && !(end == start + 1 && augtrain.charAt(start) == '\r')) {
+                rows++;
+            }
+            start = end + 1;
+        }
+        return rows;
+    }
+
+    private static int lineEnd(String text, int from) {
+        int end = text.indexOf('\n', from);
+        return end < 0 ? text.length() : end;
+    }
+
     private static void parseDataLine(
             NetTrainSpecification.Builder netTrainingSpec,
             Iterator<String> fileLineIterator) {
@@ -48,10 +76,9 @@ public class FileParser {
         }
     }
 
-    private static void parseTrainingInfoLine(
+    static void parseTrainingInfoLine(
             NetTrainSpecification.Builder netTrainingSpec,
-            Iterator<String> fileLineIterator) {
-        String trainingInfoLine = fileLineIterator.next();
+            String trainingInfoLine) {
         String[] trainingInfoLineSplit = trainingInfoLine.split(" ");
         trainingInfoLineSplit = trainingInfoLineSplit[1].split(",");
         int rowInterations = Integer.valueOf(trainingInfoLineSplit[0]);
@@ -59,6 +86,10 @@ public class FileParser {
         BigDecimal learningConstant = BigDecimal.valueOf(Double.valueOf(trainingInfoLineSplit[2]));
         int minTrainingRounds = Integer.valueOf(trainingInfoLineSplit[3]);
         BigDecimal cutoff = BigDecimal.valueOf(Double.valueOf(trainingInfoLineSplit[4]));
+        // optional, older files stop after the cutoff
+        if (trainingInfoLineSplit.length > 5) {
+            netTrainingSpec.batchSize(Integer.valueOf(trainingInfoLineSplit[5]));
+        }
 
         netTrainingSpec.minTrainingRounds(minTrainingRounds);
         netTrainingSpec.learningConstant(learningConstant);
@@ -67,10 +98,9 @@ public class FileParser {
         netTrainingSpec.performanceCutoff(cutoff);
     }
 
-    private static void parseSizeLine(
+    static void parseSizeLine(
             NetTrainSpecification.Builder netTrainingSpec,
-            Iterator<String> fileLineIterator) {
-        String sizeLine = fileLineIterator.next();
+            String sizeLine) {
         String[] sizeLineSplit = sizeLine.split(" ");
         sizeLineSplit = sizeLineSplit[1].split(",");
         netTrainingSpec.side(Integer.valueOf(sizeLineSplit[0]));
@@ -0,0 +1,41 @@
+package com.augurworks.alfred.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public final class Hashes {
+
+    private Hashes() {
+        // utility class
+    }
+
+    /**
+     * Lower case hex SHA-256 of the UTF-8 bytes of value.
+     */
+    public static String sha256Hex(String value) {
+        return sha256Hex(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String sha256Hex(byte[] bytes) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE has to provide SHA-256.
+            throw new IllegalStateException(e);
+        }
+        return hex(digest.digest(bytes));
+    }
+
+    /**
+     * Lower case hex of bytes, e.g. of a digest.
+     */
+    public static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
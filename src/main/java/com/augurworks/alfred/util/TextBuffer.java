@@ -0,0 +1,111 @@
+package com.augurworks.alfred.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Growable UTF-8 text buffer that can be reset and reused, so large
+ * outputs like augout files are built without a StringBuilder, a String
+ * and an encoded copy of it. Doubles are written by {@link DoubleFormat}.
+ */
+public class TextBuffer extends OutputStream {
+
+    private byte[] bytes;
+    private int size;
+
+    public TextBuffer() {
+        this(1024);
+    }
+
+    public TextBuffer(int capacity) {
+        this.bytes = new byte[Math.max(capacity, DoubleFormat.MAX_LENGTH)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * The backing array, valid up to {@link #size()} until the next write.
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    public int capacity() {
+        return bytes.length;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    /**
+     * Writes the text to out and empties the buffer.
+     */
+    public void flushTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+        size = 0;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(bytes, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, 0, size, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(b, off, bytes, size, len);
+        size += len;
+    }
+
+    public TextBuffer append(char c) {
+        if (c < 0x80) {
+            write(c);
+        } else {
+            append(String.valueOf(c));
+        }
+        return this;
+    }
+
+    public TextBuffer append(String value) {
+        int length = value.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                // Dates and the like are ASCII, anything else is encoded
+                byte[] encoded = value.substring(i).getBytes(StandardCharsets.UTF_8);
+                write(encoded, 0, encoded.length);
+                return this;
+            }
+            bytes[size++] = (byte) c;
+        }
+        return this;
+    }
+
+    public TextBuffer append(double value) {
+        ensureCapacity(DoubleFormat.MAX_LENGTH);
+        size = DoubleFormat.write(value, bytes, size);
+        return this;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (bytes.length - size < extra) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.augurworks.alfred;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.function.Supplier;
+
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+import com.augurworks.alfred.util.AugtrainParser;
+import com.augurworks.alfred.util.FileParser;
+
+/**
+ * Compares {@link FileParser} on split lines, as training messages used to
+ * be parsed, against {@link AugtrainParser} on the message's bytes, for a
+ * generated augtrain file. Prints the best parse time, the bytes allocated
+ * by one parse and the heap still held by the parsed spec. AugtrainParserTest
+ * checks that both read the same values.
+ *
+ * Usage: AugtrainParserBenchmark [rows] [side] [runs]
+ */
+public class AugtrainParserBenchmark {
+
+    public static void main(String[] args) {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int side = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        String augtrain = generate(rows, side);
+        byte[] body = augtrain.getBytes(StandardCharsets.UTF_8);
+        System.out.printf("%d rows x %d inputs, %.1f MB%n", rows, side, body.length / 1e6);
+
+        Supplier<NetTrainSpecification> fileParser = () -> FileParser.parseLines(
+                Arrays.asList(augtrain.split("\n")), ScaleFunctionType.SIGMOID);
+        Supplier<NetTrainSpecification> fromString = () -> AugtrainParser.parse(
+                augtrain.getBytes(StandardCharsets.UTF_8), ScaleFunctionType.SIGMOID);
+        Supplier<NetTrainSpecification> fromBytes = () -> AugtrainParser.parse(body, ScaleFunctionType.SIGMOID);
+
+        System.out.printf("%-26s %10s %14s %13s%n", "parser", "best ms", "allocated MB", "retained MB");
+        measure("FileParser", fileParser, runs);
+        measure("AugtrainParser, String", fromString, runs);
+        measure("AugtrainParser, byte[]", fromBytes, runs);
+    }
+
+    private static String generate(int rows, int side) {
+        Random random = new Random(1);
+        StringBuilder sb = new StringBuilder();
+        sb.append("net ").append(side).append(",3\n");
+        sb.append("train 1,100,0.1,50,0.0001\n");
+        sb.append("date target inputs\n");
+        for (int row = 0; row < rows + 2; row++) {
+            sb.append("2016-01-").append(String.format("%05d", row)).append(' ');
+            if (row < rows) {
+                sb.append(String.format(Locale.ROOT, "%.4f", random.nextDouble() * 100));
+            } else {
+                sb.append("NULL");
+            }
+            sb.append(' ');
+            for (int i = 0; i < side; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(String.format(Locale.ROOT, "%.5f", random.nextDouble()));
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void measure(String name, Supplier<NetTrainSpecification> parser, int runs) {
+        long best = Long.MAX_VALUE;
+        long allocated = -1;
+        for (int run = 0; run < runs; run++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            parser.get();
+            best = Math.min(best, System.nanoTime() - start);
+            if (allocatedBefore >= 0) {
+                allocated = allocatedBytes() - allocatedBefore;
+            }
+        }
+        long usedBefore = usedHeapAfterGc();
+        NetTrainSpecification spec = parser.get();
+        long retained = usedHeapAfterGc() - usedBefore;
+        System.out.printf("%-26s %10.1f %14s %13.1f%n", name, best / 1e6,
+                allocated < 0 ? "n/a" : String.format("%.1f", allocated / 1e6), retained / 1e6);
+        if (spec.getSide() < 0) {
+            // Keeps spec reachable until the heap was measured.
+            System.out.println();
+        }
+    }
+
+    /**
+     * Bytes allocated by this thread so far, -1 if the JVM can't tell.
+     */
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,69 @@
+package com.augurworks.alfred;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generated augtrain files for tests.
+ */
+public class Augtrains {
+
+    /**
+     * Lines of an augtrain with random targets and inputs that trains all of
+     * its file iterations: the minimum rounds are all of them and the
+     * cutoff can't be hit. Two trailing rows have no target.
+     */
+    public static List<String> generate(int side, int depth, int rows, int rowIterations, int fileIterations,
+            long seed) {
+        Random random = new Random(seed);
+        List<String> lines = new ArrayList<>();
+        lines.add("net " + side + "," + depth);
+        lines.add("train " + rowIterations + "," + fileIterations + ",0.1," + fileIterations + ",0");
+        lines.add("date target inputs");
+        for (int row = 0; row < rows + 2; row++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("2016-01-").append(String.format("%05d", row)).append(' ');
+            sb.append(row < rows ? String.format(Locale.ROOT, "%.4f", random.nextDouble() * 100) : "NULL");
+            sb.append(' ');
+            for (int i = 0; i < side; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(String.format(Locale.ROOT, "%.5f", random.nextDouble()));
+            }
+            lines.add(sb.toString());
+        }
+        return lines;
+    }
+
+    /**
+     * Like {@link #generate}, but each target is a smooth function of its
+     * row's inputs, so training lowers the RMS error well below that of
+     * predicting the mean.
+     */
+    public static List<String> generateLearnable(int side, int depth, int rows, int rowIterations,
+            int fileIterations, long seed) {
+        List<String> lines = generate(side, depth, rows, rowIterations, fileIterations, seed);
+        for (int row = 0; row < rows; row++) {
+            String[] fields = lines.get(row + 3).split(" ");
+            String[] inputs = fields[2].split(",");
+            double weighted = 0;
+            for (int i = 0; i < inputs.length; i++) {
+                weighted += (i % 2 == 0 ? 1 : -1) * Double.parseDouble(inputs[i]);
+            }
+            double target = 100 / (1 + Math.exp(-4 * weighted / Math.sqrt(side)));
+            lines.set(row + 3, fields[0] + ' ' + String.format(Locale.ROOT, "%.4f", target) + ' ' + fields[2]);
+        }
+        return lines;
+    }
+
+    public static String join(List<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+}
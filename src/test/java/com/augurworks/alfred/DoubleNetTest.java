@@ -0,0 +1,171 @@
+package com.augurworks.alfred;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
+public class DoubleNetTest {
+
+    private static final TrainingOptions DOUBLE = new TrainingOptions.Builder()
+            .precision(Precision.DOUBLE)
+            .seed(1L)
+            .build();
+
+    /**
+     * Trains the same net for a short and a long run, so the bytes of
+     * setting up a net and its stats cancel out and what is left is the
+     * bytes of the extra epochs.
+     */
+    @Test
+    public void epochsAllocateNothing() throws InterruptedException {
+        // Warms up class loading and the JIT
+        allocatedBytes(100);
+        long shortRun = allocatedBytes(100);
+        long longRun = allocatedBytes(500);
+        double bytesPerEpoch = (longRun - shortRun) / 400.0;
+        // A stat snapshot every 100 epochs is all the long run adds, where
+        // the BigDecimal loop allocated kilobytes per epoch
+        assertTrue("Allocated " + bytesPerEpoch + " bytes per epoch", bytesPerEpoch < 64);
+    }
+
+    private static long allocatedBytes(int epochs) throws InterruptedException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        RectNetFixed net = new RectNetFixed("net", Augtrains.generate(10, 4, 200, 1, epochs, 1),
+                ScaleFunctionType.SIGMOID, DOUBLE);
+        long before = threads.getThreadAllocatedBytes(thread);
+        net.train(0, 1);
+        return threads.getThreadAllocatedBytes(thread) - before;
+    }
+
+    /**
+     * One mini-batch step moves each weight by the learning constant times
+     * the mean of the per-row gradients, all taken at the weights before
+     * the step. Sides and batches that don't fill the 4 x 4 blocks of the
+     * batch products run their edge loops.
+     */
+    @Test
+    public void batchStepAveragesPerRowGradients() {
+        int[][] shapes = {{6, 4, 7}, {8, 3, 8}, {5, 2, 3}};
+        for (int[] shape : shapes) {
+            int side = shape[0];
+            int depth = shape[1];
+            int count = shape[2];
+            Random random = new Random(side);
+            double[] inputs = new double[(count + 2) * side];
+            double[] targets = new double[count + 2];
+            for (int i = 0; i < inputs.length; i++) {
+                inputs[i] = random.nextDouble();
+            }
+            for (int i = 0; i < targets.length; i++) {
+                targets[i] = random.nextDouble();
+            }
+            DoubleNet net = new DoubleNet(side, depth, 8, Activation.SIGMOID, new Random(1));
+            double[][][] weights = weights(net.getWeights());
+            double[][][] gradient = new double[depth + 1][side][side];
+            double errorsSquared = 0;
+            // Rows 1 to count, so the batch starts at an offset
+            for (int row = 1; row <= count; row++) {
+                errorsSquared += addGradient(weights, inputs, row * side, targets[row], gradient);
+            }
+
+            double learningConstant = 0.3;
+            assertEquals(errorsSquared, net.trainBatch(inputs, targets, 1, count, learningConstant), 1e-12);
+            for (int col = 1; col <= depth; col++) {
+                for (int right = 0; right < (col == depth ? 1 : side); right++) {
+                    for (int left = 0; left < side; left++) {
+                        double expected = weights[col][right][left]
+                                + learningConstant / count * gradient[col][right][left];
+                        double actual = col == depth ? net.getWeights().getOutputWeight(left)
+                                : net.getWeight(col - 1, left, col, right);
+                        assertEquals(side + "x" + depth + " weight " + col + "/" + right + "/" + left, expected,
+                                actual, 1e-12);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Weights as [col][right row][left row], the output neuron's as row 0
+     * of column depth.
+     */
+    private static double[][][] weights(NetWeights netWeights) {
+        int side = netWeights.getSide();
+        int depth = netWeights.getDepth();
+        double[][][] weights = new double[depth + 1][side][side];
+        for (int row = 0; row < side; row++) {
+            weights[0][row][row] = netWeights.getBlock(0)[row];
+            weights[depth][0][row] = netWeights.getOutputWeight(row);
+        }
+        for (int col = 1; col < depth; col++) {
+            for (int right = 0; right < side; right++) {
+                for (int left = 0; left < side; left++) {
+                    weights[col][right][left] = netWeights.getWeight(col - 1, left, col, right);
+                }
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Back-propagates one row neuron by neuron and adds its weight changes
+     * for a learning constant of 1 to gradient. Returns its squared error.
+     */
+    private static double addGradient(double[][][] weights, double[] inputs, int offset, double target,
+            double[][][] gradient) {
+        int depth = weights.length - 1;
+        int side = weights[0].length;
+        double alpha = RectNetFixed.SIGMOID_ALPHA;
+        double[][] outputs = new double[depth][side];
+        for (int row = 0; row < side; row++) {
+            outputs[0][row] = DoubleNet.exactSigmoid(weights[0][row][row] * inputs[offset + row]);
+        }
+        for (int col = 1; col < depth; col++) {
+            for (int right = 0; right < side; right++) {
+                double sum = 0;
+                for (int left = 0; left < side; left++) {
+                    sum += weights[col][right][left] * outputs[col - 1][left];
+                }
+                outputs[col][right] = DoubleNet.exactSigmoid(sum);
+            }
+        }
+        double sum = 0;
+        for (int left = 0; left < side; left++) {
+            sum += weights[depth][0][left] * outputs[depth - 1][left];
+        }
+        double output = DoubleNet.exactSigmoid(sum);
+        double deltaF = alpha * output * (1 - output) * (target - output);
+
+        double[][] deltas = new double[depth][side];
+        for (int left = 0; left < side; left++) {
+            double out = outputs[depth - 1][left];
+            deltas[depth - 1][left] = alpha * out * (1 - out) * weights[depth][0][left] * deltaF;
+            gradient[depth][0][left] += deltaF * out;
+        }
+        for (int col = depth - 2; col >= 0; col--) {
+            for (int right = 0; right < side; right++) {
+                for (int left = 0; left < side; left++) {
+                    gradient[col + 1][right][left] += deltas[col + 1][right] * outputs[col][left];
+                }
+            }
+            if (col >= 1) {
+                for (int left = 0; left < side; left++) {
+                    double back = 0;
+                    for (int right = 0; right < side; right++) {
+                        back += weights[col + 1][right][left] * deltas[col + 1][right];
+                    }
+                    double out = outputs[col][left];
+                    deltas[col][left] = alpha * out * (1 - out) * back;
+                }
+            }
+        }
+        return (target - output) * (target - output);
+    }
+}
@@ -0,0 +1,61 @@
+package com.augurworks.alfred;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FloatNetTest {
+
+    private static final int SIDE = 8;
+    private static final int DEPTH = 3;
+    private static final int ROWS = 50;
+    private static final int EPOCHS = 200;
+
+    @Test
+    public void tracksDoubleNetRowByRow() {
+        assertTracksDoubleNet(1);
+    }
+
+    @Test
+    public void tracksDoubleNetInBatches() {
+        assertTracksDoubleNet(8);
+    }
+
+    /**
+     * Trains a double and a float net from the same weights and checks that
+     * their outputs stay within float rounding of each other.
+     */
+    private static void assertTracksDoubleNet(int batchSize) {
+        DoubleNet doubleNet = new DoubleNet(SIDE, DEPTH, batchSize, Activation.SIGMOID, new Random(1));
+        FloatNet floatNet = new FloatNet(SIDE, DEPTH, batchSize, Activation.SIGMOID, new Random(2));
+        floatNet.copyWeightsFrom(doubleNet.getWeights());
+        Random random = new Random(3);
+        double[] rows = new double[ROWS * SIDE];
+        double[] targets = new double[ROWS];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = random.nextDouble();
+        }
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = 0.1 + 0.8 * random.nextDouble();
+        }
+        for (int epoch = 0; epoch < EPOCHS; epoch++) {
+            for (int from = 0; from < ROWS; from += batchSize) {
+                if (batchSize > 1) {
+                    int count = Math.min(batchSize, ROWS - from);
+                    doubleNet.trainBatch(rows, targets, from, count, 0.1);
+                    floatNet.trainBatch(rows, targets, from, count, 0.1);
+                } else {
+                    doubleNet.train(rows, from * SIDE, targets[from], 0.1);
+                    floatNet.train(rows, from * SIDE, targets[from], 0.1);
+                }
+            }
+        }
+        for (int row = 0; row < ROWS; row++) {
+            doubleNet.setInputs(rows, row * SIDE);
+            floatNet.setInputs(rows, row * SIDE);
+            assertEquals("Row " + row, doubleNet.getOutput(), floatNet.getOutput(), 1e-5);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.augurworks.alfred;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.models.Model;
+import com.augurworks.alfred.scaling.ScaleFunctions;
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
+public class FrozenNetTest {
+
+    // Around and across the 64 rows FrozenNet pushes through at once
+    private static final int[] ROW_COUNTS = {1, 5, 63, 64, 65, 128, 130};
+
+    /**
+     * Every way of predicting gives exactly what DoubleNet computes for the
+     * same weights, one row at a time.
+     */
+    @Test
+    public void predictsLikeDoubleNet() {
+        for (Activation activation : Activation.values()) {
+            for (int[] shape : new int[][] {{1, 1}, {4, 1}, {5, 3}, {8, 4}}) {
+                DoubleNet net = new DoubleNet(shape[0], shape[1], 1, activation, new Random(shape[0] + shape[1]));
+                FrozenNet frozen = FrozenNet.of(new Model(net.getWeights(), activation,
+                        ScaleFunctions.create(ScaleFunctionType.SIGMOID, new double[] {50, 10})));
+                Random random = new Random(1);
+                for (int rowCount : ROW_COUNTS) {
+                    double[][] rows = new double[rowCount][shape[0]];
+                    double[] flat = new double[rowCount * shape[0]];
+                    double[] expected = new double[rowCount];
+                    for (int r = 0; r < rowCount; r++) {
+                        for (int j = 0; j < shape[0]; j++) {
+                            rows[r][j] = random.nextDouble() * 2 - 0.5;
+                            flat[r * shape[0] + j] = rows[r][j];
+                        }
+                        net.setInputs(rows[r]);
+                        expected[r] = net.getOutput();
+                        assertEquals(expected[r], frozen.predict(rows[r]), 0);
+                    }
+                    assertArrayEquals(expected, frozen.predict(rows), 0);
+                    assertArrayEquals(expected, frozen.predictRows(flat), 0);
+                    double[] denormalized = expected.clone();
+                    for (int r = 0; r < rowCount; r++) {
+                        denormalized[r] = frozen.denormalize(expected[r]);
+                    }
+                    assertArrayEquals(denormalized, frozen.predictDenormalized(rows), 0);
+                    assertArrayEquals(denormalized, frozen.predictRowsDenormalized(flat), 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.augurworks.alfred;
+
+import java.util.List;
+
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
+/**
+ * Compares serial SGD with Hogwild at each thread count on a generated
+ * augtrain whose targets depend on the inputs. Prints the mean RMS error
+ * over a few seeds after the same epochs and the mean wall clock time, so
+ * the accuracy lost to unsynchronized updates can be weighed against the
+ * speedup.
+ *
+ * Usage: HogwildBenchmark [side] [depth] [rows] [epochs] [threads...]
+ */
+public class HogwildBenchmark {
+
+    private static final int SEEDS = 3;
+
+    public static void main(String[] args) throws InterruptedException {
+        int side = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int depth = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        int rows = args.length > 2 ? Integer.parseInt(args[2]) : 5000;
+        int epochs = args.length > 3 ? Integer.parseInt(args[3]) : 200;
+        int[] threadCounts = {2, 4, Runtime.getRuntime().availableProcessors()};
+        if (args.length > 4) {
+            threadCounts = new int[args.length - 4];
+            for (int i = 4; i < args.length; i++) {
+                threadCounts[i - 4] = Integer.parseInt(args[i]);
+            }
+        }
+        List<String> lines = Augtrains.generateLearnable(side, depth, rows, 1, epochs, 1);
+        System.out.printf("%d cores, side %d, depth %d, %d rows, %d epochs, %d seeds%n",
+                Runtime.getRuntime().availableProcessors(), side, depth, rows, epochs, SEEDS);
+        System.out.printf("%-10s %12s %12s %10s %9s%n", "mode", "rms error", "rms ratio", "seconds", "speedup");
+        // Warm up so serial, timed first, isn't charged for compilation
+        run(lines, new TrainingOptions.Builder());
+        double[] serial = run(lines, new TrainingOptions.Builder());
+        print("serial", serial, serial);
+        for (int threads : threadCounts) {
+            double[] hogwild = run(lines, new TrainingOptions.Builder()
+                    .parallelMode(ParallelMode.HOGWILD)
+                    .trainingThreads(threads));
+            print("hogwild " + threads, hogwild, serial);
+        }
+    }
+
+    /**
+     * Mean RMS error and seconds over the seeds.
+     */
+    private static double[] run(List<String> lines, TrainingOptions.Builder options) throws InterruptedException {
+        double rms = 0;
+        double seconds = 0;
+        for (long seed = 1; seed <= SEEDS; seed++) {
+            RectNetFixed net = new RectNetFixed("net", lines, ScaleFunctionType.SIGMOID,
+                    options.precision(Precision.DOUBLE).seed(seed).build());
+            long start = System.nanoTime();
+            net.train(0, 1);
+            seconds += (System.nanoTime() - start) / 1e9;
+            rms += net.computeRmsError();
+        }
+        return new double[] {rms / SEEDS, seconds / SEEDS};
+    }
+
+    private static void print(String mode, double[] result, double[] serial) {
+        System.out.printf("%-10s %12.6f %12.3f %10.3f %8.2fx%n",
+                mode, result[0], result[0] / serial[0], result[1], serial[1] / result[1]);
+    }
+}
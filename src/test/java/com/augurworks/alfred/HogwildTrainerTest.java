@@ -0,0 +1,37 @@
+package com.augurworks.alfred;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
+public class HogwildTrainerTest {
+
+    // Lost updates cost Hogwild some accuracy for the same epochs, about 15%
+    // at worst over a handful of seeds.
+    private static final double RMS_TOLERANCE = 1.5;
+
+    @Test
+    public void convergesLikeSerialTraining() throws InterruptedException {
+        List<String> lines = Augtrains.generateLearnable(8, 3, 2000, 1, 200, 1);
+        for (long seed = 1; seed <= 2; seed++) {
+            double serial = rmsError(lines, new TrainingOptions.Builder().seed(seed));
+            double hogwild = rmsError(lines, new TrainingOptions.Builder()
+                    .seed(seed)
+                    .parallelMode(ParallelMode.HOGWILD)
+                    .trainingThreads(4));
+            assertTrue("Serial net did not learn, RMS " + serial, serial < 0.1);
+            assertTrue("Hogwild RMS " + hogwild + " against serial " + serial, hogwild <= serial * RMS_TOLERANCE);
+        }
+    }
+
+    private static double rmsError(List<String> lines, TrainingOptions.Builder options)
+            throws InterruptedException {
+        RectNetFixed net = new RectNetFixed("net", lines, ScaleFunctionType.SIGMOID,
+                options.precision(Precision.DOUBLE).build());
+        return net.train(0, 1).computeRmsError();
+    }
+}
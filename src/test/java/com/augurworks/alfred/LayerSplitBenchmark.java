@@ -0,0 +1,72 @@
+package com.augurworks.alfred;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Finds the side width from which splitting layers across cores pays off
+ * on this machine. Times single row training steps of a serial and a split
+ * double net for each width and prints the first width where splitting
+ * wins clearly, as a starting point for -Dalfred.splitLayersMinSide.
+ *
+ * Usage: LayerSplitBenchmark [depth] [side...]
+ */
+public class LayerSplitBenchmark {
+
+    private static final int[] DEFAULT_SIDES = {32, 64, 128, 192, 256, 384, 512, 768, 1024};
+    // Splitting has to beat serial by this much to count, so timing noise
+    // doesn't pick the crossover.
+    private static final double MIN_SPEEDUP = 1.1;
+    // Roughly constant work per measurement whatever the width.
+    private static final long MULTIPLY_ADDS_PER_RUN = 400_000_000L;
+
+    public static void main(String[] args) {
+        int depth = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int[] sides = DEFAULT_SIDES;
+        if (args.length > 1) {
+            sides = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sides[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+        LayerSplitter splitter = new LayerSplitter(ForkJoinPool.commonPool());
+        System.out.printf("%d cores, common pool parallelism %d, depth %d%n",
+                Runtime.getRuntime().availableProcessors(), ForkJoinPool.commonPool().getParallelism(), depth);
+        System.out.printf("%8s %14s %14s %9s%n", "side", "serial us/row", "split us/row", "speedup");
+        Integer crossover = null;
+        for (int side : sides) {
+            int steps = (int) Math.max(20, MULTIPLY_ADDS_PER_RUN / (3L * side * side * depth));
+            double serial = time(new DoubleNet(side, depth, 1, Activation.SIGMOID, new Random(1), null), steps);
+            double split = time(new DoubleNet(side, depth, 1, Activation.SIGMOID, new Random(1), splitter), steps);
+            System.out.printf("%8d %14.2f %14.2f %8.2fx%n", side, serial, split, serial / split);
+            if (crossover == null && serial / split >= MIN_SPEEDUP) {
+                crossover = side;
+            }
+        }
+        if (crossover == null) {
+            System.out.println("Splitting never won, keep layers serial on this machine");
+        } else {
+            System.out.println("Splitting wins from side " + crossover + ", try -D"
+                    + LayerSplitter.MIN_SIDE_PROPERTY + "=" + crossover);
+        }
+    }
+
+    /**
+     * Microseconds per training step, after a warm up of the same length.
+     */
+    private static double time(DoubleNet net, int steps) {
+        Random random = new Random(2);
+        double[] inputs = new double[net.getWeights().getSide()];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = random.nextDouble();
+        }
+        for (int i = 0; i < steps; i++) {
+            net.train(inputs, 0.5, 0.01);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < steps; i++) {
+            net.train(inputs, 0.5, 0.01);
+        }
+        return (System.nanoTime() - start) / 1000.0 / steps;
+    }
+}
@@ -0,0 +1,89 @@
+package com.augurworks.alfred;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+public class LayerSplitterTest {
+
+    private static final int SIDE = 64;
+    private static final int DEPTH = 4;
+    // Splits a side 64 layer into four chunks
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterClass
+    public static void shutdownPool() {
+        POOL.shutdownNow();
+    }
+
+    /**
+     * A split only changes which thread computes a neuron, never its
+     * arithmetic, so the weights must come out bit for bit the same.
+     */
+    @Test
+    public void splitMatchesSerial() {
+        DoubleNet serial = new DoubleNet(SIDE, DEPTH, 1, Activation.SIGMOID, new Random(1), null);
+        DoubleNet split = new DoubleNet(SIDE, DEPTH, 1, Activation.SIGMOID, new Random(1),
+                new LayerSplitter(POOL));
+        double[] rows = rows(20);
+        for (int step = 0; step < 100; step++) {
+            int row = step % 20;
+            serial.train(rows, row * SIDE, 0.1 + 0.04 * row, 0.1);
+            split.train(rows, row * SIDE, 0.1 + 0.04 * row, 0.1);
+        }
+        for (int col = 0; col <= DEPTH; col++) {
+            assertArrayEquals("Column " + col, serial.getWeights().getBlock(col), split.getWeights().getBlock(col),
+                    0);
+        }
+    }
+
+    @Test
+    public void reusesSplitTasks() {
+        DoubleNet net = new DoubleNet(SIDE, DEPTH, 1, Activation.SIGMOID, new Random(1), new LayerSplitter(POOL));
+        double[] rows = rows(20);
+        // Warms up the JIT and the pool's queues
+        train(net, rows, 2000);
+        long before = allocatedBytes();
+        train(net, rows, 2000);
+        // Forward, back-propagation and update splits of a step
+        int splits = (DEPTH - 1) + (DEPTH - 2) + (DEPTH - 1);
+        double bytesPerSplit = (allocatedBytes() - before) / 2000.0 / splits;
+        // Java 9 and later allocate a small node when the calling thread
+        // waits for the pool, a task tree per split was over 300 bytes
+        assertTrue("Allocated " + bytesPerSplit + " bytes per split", bytesPerSplit < 64);
+    }
+
+    private static void train(DoubleNet net, double[] rows, int steps) {
+        for (int step = 0; step < steps; step++) {
+            int row = step % 20;
+            net.train(rows, row * SIDE, 0.1 + 0.04 * row, 0.1);
+        }
+    }
+
+    /**
+     * Bytes allocated by every thread, the pool's workers included.
+     */
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    private static double[] rows(int count) {
+        Random random = new Random(2);
+        double[] rows = new double[count * SIDE];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = random.nextDouble();
+        }
+        return rows;
+    }
+}
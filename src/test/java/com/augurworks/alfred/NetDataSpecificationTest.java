@@ -0,0 +1,58 @@
+package com.augurworks.alfred;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.scaling.ScaleFunctions;
+
+public class NetDataSpecificationTest {
+
+    @Test
+    public void keepsRowsGivenAsList() {
+        List<InputsAndTarget> train = Arrays.asList(
+                row("2016-01-04", BigDecimal.valueOf(0.25), 1.5, -2),
+                row("day 2", BigDecimal.valueOf(0.75), 3, 4.25));
+        List<InputsAndTarget> prediction = Collections.singletonList(row("2016-01-06", null, 5, 6));
+        NetDataSpecification data = new NetDataSpecification(train, prediction,
+                ScaleFunctions.createLinearScaleFunction(0, 1, 0.1, 0.9));
+
+        Dataset trainData = data.getTrainDataset();
+        assertEquals(2, trainData.getSide());
+        assertArrayEquals(new double[] {1.5, -2, 3, 4.25}, trainData.getInputs(), 0);
+        assertArrayEquals(new double[] {0.25, 0.75}, trainData.getTargets(), 0);
+        assertEquals("day 2", trainData.getDate(1));
+        Dataset predictionData = data.getPredictionDataset();
+        assertEquals(1, predictionData.size());
+        assertNull(predictionData.getTargets());
+        assertEquals("2016-01-06", predictionData.getDate(0));
+        assertEquals(train, data.getTrainData());
+    }
+
+    @Test
+    public void buildsTrainRowsOnce() {
+        NetDataSpecification data = new NetDataSpecification(
+                Collections.singletonList(row("2016-01-04", BigDecimal.ONE, 1, 2)),
+                Collections.<InputsAndTarget>emptyList(),
+                ScaleFunctions.createLinearScaleFunction(0, 1, 0.1, 0.9));
+        List<InputsAndTarget> rows = data.getTrainData();
+        assertSame(rows, data.getTrainData());
+        assertSame(rows.get(0), data.getTrainData().get(0));
+    }
+
+    private static InputsAndTarget row(String date, BigDecimal target, double... inputs) {
+        BigDecimal[] values = new BigDecimal[inputs.length];
+        for (int i = 0; i < inputs.length; i++) {
+            values[i] = BigDecimal.valueOf(inputs[i]);
+        }
+        return new InputsAndTarget(date, target, values);
+    }
+}
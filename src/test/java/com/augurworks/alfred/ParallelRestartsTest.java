@@ -0,0 +1,31 @@
+package com.augurworks.alfred;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+import com.augurworks.alfred.util.FileParser;
+
+public class ParallelRestartsTest {
+
+    /**
+     * With a cutoff every epoch reaches, the first restart to finish cancels
+     * the rest, and a cancelled restart must not be kept over it.
+     */
+    @Test
+    public void keepsAFinishedRestart() throws InterruptedException {
+        List<String> lines = Augtrains.generate(8, 3, 500, 1, 1000, 1);
+        // Sigmoid outputs and targets are in (0, 1), so the mean squared
+        // error is below 1
+        lines.set(1, "train 1,1000,0.1,1000,1");
+        NetTrainSpecification netSpec = FileParser.parseLines(lines, ScaleFunctionType.SIGMOID);
+        TrainingOptions options = new TrainingOptions.Builder().precision(Precision.DOUBLE).seed(1L).build();
+        for (int run = 0; run < 5; run++) {
+            RectNetFixed net = ParallelRestarts.train("net", netSpec, options, 0, 4);
+            assertEquals(TrainingStopReason.HIT_PERFORMANCE_CUTOFF, net.getTrainingStopReason());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.augurworks.alfred;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+import com.augurworks.alfred.stats.TrainingStat;
+
+/**
+ * Accuracy regression harness for {@link Precision}. Trains every given
+ * .augtrain file in each precision and prints the training RMS error, its
+ * difference from the BIGDECIMAL baseline and the wall clock time, so the
+ * cheapest mode that is accurate enough can be picked from evidence.
+ *
+ * Weights start random in every run, so use several runs per file before
+ * reading anything into small RMS deltas.
+ *
+ * Usage: PrecisionComparison [-runs n] [-timeout seconds]
+ *        [-activation SIGMOID|FAST_SIGMOID] file.augtrain...
+ */
+public class PrecisionComparison {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = 3;
+        long timeoutMillis = 0;
+        Activation activation = Activation.SIGMOID;
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-runs".equals(args[i])) {
+                runs = Integer.parseInt(args[++i]);
+            } else if ("-timeout".equals(args[i])) {
+                timeoutMillis = Long.parseLong(args[++i]) * 1000;
+            } else if ("-activation".equals(args[i])) {
+                activation = Activation.valueOf(args[++i].toUpperCase());
+            } else {
+                files.add(Paths.get(args[i]));
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: PrecisionComparison [-runs n] [-timeout seconds] "
+                    + "[-activation SIGMOID|FAST_SIGMOID] file.augtrain...");
+            System.exit(1);
+        }
+        for (Path file : files) {
+            compare(file, runs, timeoutMillis, activation);
+        }
+    }
+
+    private static void compare(Path file, int runs, long timeoutMillis, Activation activation)
+            throws IOException, InterruptedException {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        System.out.printf("%s, %d run(s), activation %s%n", file, runs, activation);
+        System.out.printf("%-10s %10s %10s %12s %12s %9s %s%n",
+                "precision", "seconds", "rounds", "rms error", "rms delta", "speedup", "stop reasons");
+        double baselineRms = Double.NaN;
+        double baselineSeconds = Double.NaN;
+        for (Precision precision : Precision.values()) {
+            TrainingOptions options = new TrainingOptions.Builder()
+                    .precision(precision)
+                    .activation(activation)
+                    .build();
+            double totalSeconds = 0;
+            double totalRms = 0;
+            long totalRounds = 0;
+            StringBuilder stopReasons = new StringBuilder();
+            for (int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                RectNetFixed net = new RectNetFixed(file.getFileName().toString(), lines,
+                        ScaleFunctionType.SIGMOID, options);
+                String stopReason;
+                try {
+                    net.train(timeoutMillis, 1);
+                    stopReason = String.valueOf(net.getTrainingStopReason());
+                } catch (IllegalStateException e) {
+                    stopReason = "LOCAL_MAX";
+                }
+                totalSeconds += (System.nanoTime() - start) / 1e9;
+                totalRms += rmsError(net);
+                totalRounds += roundsTrained(net);
+                stopReasons.append(run == 0 ? "" : ",").append(stopReason);
+            }
+            double seconds = totalSeconds / runs;
+            double rms = totalRms / runs;
+            if (precision == Precision.BIGDECIMAL) {
+                baselineRms = rms;
+                baselineSeconds = seconds;
+            }
+            System.out.printf("%-10s %10.3f %10d %12.6g %12.3g %8.1fx %s%n",
+                    precision, seconds, totalRounds / runs, rms, rms - baselineRms,
+                    baselineSeconds / seconds, stopReasons);
+        }
+        System.out.println();
+    }
+
+    /**
+     * RMS error over the training rows, computed the same way for every
+     * precision through the public net interface.
+     */
+    private static double rmsError(RectNetFixed net) {
+        List<InputsAndTarget> rows = net.getNetSpec().getNetData().getTrainData();
+        double errorsSquared = 0;
+        for (InputsAndTarget row : rows) {
+            net.setInputs(row.getInputs());
+            BigDecimal difference = row.getTarget().subtract(net.getOutput());
+            errorsSquared += difference.doubleValue() * difference.doubleValue();
+        }
+        return Math.sqrt(errorsSquared / rows.size());
+    }
+
+    private static int roundsTrained(RectNetFixed net) {
+        List<TrainingStat> stats = net.getTrainingStats();
+        return stats.isEmpty() ? 0 : stats.get(stats.size() - 1).getRoundsTrained();
+    }
+}
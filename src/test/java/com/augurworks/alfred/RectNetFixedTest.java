@@ -0,0 +1,120 @@
+package com.augurworks.alfred;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.augurworks.alfred.models.Checkpoint;
+import com.augurworks.alfred.models.CheckpointStore;
+import com.augurworks.alfred.models.DirectoryCheckpointStore;
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+import com.augurworks.alfred.stats.TrainingStage;
+import com.augurworks.alfred.stats.TrainingStat;
+
+public class RectNetFixedTest {
+
+    private static final int RESUMED_EPOCH = 20;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * A net of another seed resumed from the checkpoint a run left part way
+     * through trains the remaining epochs to the same weights as that run.
+     */
+    @Test
+    public void resumesFromTheCheckpointsEpochAndWeights() throws InterruptedException, IOException {
+        List<String> lines = Augtrains.generateLearnable(8, 3, 200, 1, 50, 1);
+        DirectoryCheckpointStore directory = new DirectoryCheckpointStore(folder.getRoot().toPath());
+        Checkpoint[] saved = new Checkpoint[1];
+        CheckpointStore store = new CheckpointStore() {
+            @Override
+            public Optional<Checkpoint> load(String netId) throws IOException {
+                return directory.load(netId);
+            }
+
+            @Override
+            public void save(Checkpoint checkpoint) throws IOException {
+                directory.save(checkpoint);
+                if (checkpoint.getEpoch() == RESUMED_EPOCH) {
+                    saved[0] = directory.load(checkpoint.getNetId()).get();
+                }
+            }
+
+            @Override
+            public void delete(String netId) throws IOException {
+                directory.delete(netId);
+            }
+        };
+        RectNetFixed full = net(lines, 1);
+        full.enableCheckpoints(store, "hash", 0);
+        full.train(0, 1);
+        assertFalse(store.load("net").isPresent());
+        assertEquals(RESUMED_EPOCH, saved[0].getEpoch());
+
+        RectNetFixed resumed = net(lines, 2);
+        resumed.resumeFrom(saved[0]);
+        resumed.train(0, 1);
+        for (int col = 0; col <= 3; col++) {
+            assertArrayEquals(full.exportWeights().getBlock(col), resumed.exportWeights().getBlock(col), 0);
+        }
+        List<TrainingStat> stats = resumed.getTrainingStats();
+        int carried = saved[0].getTrainingStats().size();
+        assertEquals(TrainingStage.STARTING, stats.get(carried).getTrainingStage());
+        assertEquals(RESUMED_EPOCH, (int) stats.get(carried).getRoundsTrained());
+        assertEquals(50, (int) stats.get(stats.size() - 1).getRoundsTrained());
+    }
+
+    /**
+     * BigDecimal nets estimate through their own forward pass, primitive
+     * nets through a FrozenNet.
+     */
+    @Test
+    public void augoutEstimatesComeFromTheNetsOwnPrecision() throws InterruptedException {
+        List<String> lines = Augtrains.generateLearnable(4, 3, 30, 1, 5, 1);
+        for (Precision precision : new Precision[] {Precision.BIGDECIMAL, Precision.DOUBLE}) {
+            TrainingOptions options = new TrainingOptions.Builder().precision(precision).seed(1L).build();
+            RectNetFixed net = new RectNetFixed("net", lines, ScaleFunctionType.SIGMOID, options).train(0, 1);
+            NetDataSpecification netData = net.getNetSpec().getNetData();
+            Augout augout = net.computeAugout();
+            assertEquals(30, augout.getTrainRows());
+            assertEquals(2, augout.getPredictionRows());
+            double[] expected = new double[32];
+            if (precision == Precision.BIGDECIMAL) {
+                int row = 0;
+                for (InputsAndTarget inputsAndTarget : netData.getTrainData()) {
+                    expected[row++] = estimate(net, inputsAndTarget.getInputs());
+                }
+                for (InputsAndTarget inputsAndTarget : netData.getPredictionData()) {
+                    expected[row++] = estimate(net, inputsAndTarget.getInputs());
+                }
+            } else {
+                FrozenNet frozen = net.freeze();
+                double[] train = frozen.predictRowsDenormalized(netData.getTrainDataset().getInputs());
+                double[] prediction = frozen.predictRowsDenormalized(netData.getPredictionDataset().getInputs());
+                System.arraycopy(train, 0, expected, 0, 30);
+                System.arraycopy(prediction, 0, expected, 30, 2);
+            }
+            assertArrayEquals(precision.name(), expected, augout.getEstimates(), 0);
+        }
+    }
+
+    private static double estimate(RectNetFixed net, BigDecimal[] inputs) {
+        net.setInputs(inputs);
+        return net.getNetSpec().getNetData().denormalize(net.getOutput()).doubleValue();
+    }
+
+    private static RectNetFixed net(List<String> lines, long seed) {
+        TrainingOptions options = new TrainingOptions.Builder().precision(Precision.DOUBLE).seed(seed).build();
+        return new RectNetFixed("net", lines, ScaleFunctionType.SIGMOID, options);
+    }
+}
@@ -0,0 +1,97 @@
+package com.augurworks.alfred;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.augurworks.alfred.messaging.Compression;
+import com.augurworks.alfred.messaging.TrainingMessage;
+import com.augurworks.alfred.messaging.TrainingMessageCodec;
+import com.augurworks.alfred.messaging.WireFormat;
+import com.augurworks.alfred.models.ResultCache;
+import com.augurworks.alfred.server.AlfredWrapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Times {@link ResultCache}. Prints the time to key a job, to train it and
+ * to answer it from memory and from disk.
+ *
+ * Usage: ResultCacheBenchmark [rows] [side]
+ */
+public class ResultCacheBenchmark {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int side = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        TrainingMessage text = message(Augtrains.join(Augtrains.generate(side, 3, rows, 1, 20, 1)));
+        NetTrainSpecification netSpec = AlfredWrapper.parseSpec(text);
+        String key = ResultCache.key(text, netSpec).get();
+        System.out.printf("%d rows x %d inputs%n", rows, side);
+
+        long keyNanos = best(() -> ResultCache.key(text, netSpec));
+        long start = System.nanoTime();
+        RectNetFixed net = new RectNetFixed("net", netSpec, TrainingOptions.fromMetadata(text.getMetadata()));
+        net.train(0, 5);
+        long trainNanos = System.nanoTime() - start;
+        Augout augout = net.computeAugout();
+
+        TrainingMessageCodec codec = new TrainingMessageCodec(new ObjectMapper());
+        byte[] fresh = codec.encodeResult(net, WireFormat.JSON, Compression.NONE);
+        long[] now = {0};
+        Path directory = Files.createTempDirectory("alfred-results");
+        try {
+            ResultCache cache = new ResultCache(64L << 20, 60, directory, 1L << 30, () -> now[0]);
+            cache.put(key, net, augout);
+            long memoryNanos = best(() -> cache.get(key));
+            long memoryBytes = cache.getBytes();
+
+            // Smaller than one entry, so each put spills the one before
+            ResultCache small = new ResultCache(1, 60, directory, 1L << 30, () -> now[0]);
+            small.put(key, net, augout);
+            long diskNanos = best(() -> {
+                small.put("other", net, augout);
+                return small.get(key);
+            });
+
+            System.out.printf("key %.1f ms, train %.1f ms, hit from memory %.3f ms, from disk %.1f ms, "
+                    + "result %.1f KB, %d KB in memory%n", keyNanos / 1e6, trainNanos / 1e6, memoryNanos / 1e6,
+                    diskNanos / 1e6, fresh.length / 1e3, memoryBytes >> 10);
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    private static long best(Supplier<?> run) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 20; i++) {
+            long start = System.nanoTime();
+            run.get();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+
+    /**
+     * A job for an augtrain that trains all of its 20 rounds.
+     */
+    private static TrainingMessage message(String data) {
+        TrainingMessage message = new TrainingMessage();
+        message.setNetId("net");
+        message.setData(data);
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(TrainingOptions.PRECISION_KEY, Precision.DOUBLE.name());
+        // Only seeded jobs are cached
+        metadata.put(TrainingOptions.SEED_KEY, "1");
+        message.setMetadata(metadata);
+        message.setTrainingStats(Collections.emptyList());
+        return message;
+    }
+}
@@ -0,0 +1,81 @@
+package com.augurworks.alfred;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+import com.augurworks.alfred.stats.RuntimeEstimator;
+import com.augurworks.alfred.stats.TrainingStat;
+
+/**
+ * Checks the predictions of {@link RuntimeEstimator}. Trains generated
+ * nets over a grid of sides, depths and row counts for a few seconds each
+ * and feeds their stats to an estimator in a temporary file, then trains
+ * nets of sizes off the grid and prints the seconds per epoch predicted for
+ * them against the measured ones.
+ *
+ * Usage: RuntimeEstimatorBenchmark [seconds per net]
+ */
+public class RuntimeEstimatorBenchmark {
+
+    private static final int[][] TRAINED = {
+            {8, 3, 500}, {8, 3, 5000}, {16, 3, 2000}, {16, 5, 500}, {24, 3, 5000},
+            {32, 3, 500}, {32, 5, 2000}, {48, 3, 1000}, {64, 3, 500},
+    };
+    private static final int[][] CHECKED = {
+            {12, 3, 3000}, {20, 4, 1500}, {40, 3, 800}, {56, 4, 600},
+    };
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        long millis = (args.length > 0 ? Long.parseLong(args[0]) : 3) * 1000;
+        Path directory = Files.createTempDirectory("alfred-runtime");
+        Path file = directory.resolve("runtime.stats");
+        try {
+            TrainingOptions options = new TrainingOptions.Builder().precision(Precision.DOUBLE).build();
+            RuntimeEstimator estimator = new RuntimeEstimator(file);
+            for (int[] size : TRAINED) {
+                RectNetFixed net = train(size, options, millis);
+                estimator.observe(net.getNetSpec(), options, net.getTrainingStats());
+            }
+            // Read back, as a new process would
+            estimator = new RuntimeEstimator(file);
+            System.out.printf("fit on %d nets of %d s each, %s precision%n", TRAINED.length, millis / 1000,
+                    options.getPrecision());
+            System.out.printf("%5s %5s %6s %14s %14s %9s%n", "side", "depth", "rows", "predicted ms", "measured ms",
+                    "error");
+            for (int[] size : CHECKED) {
+                long start = System.nanoTime();
+                RectNetFixed net = train(size, options, millis);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                List<TrainingStat> stats = net.getTrainingStats();
+                // The epoch that ran out of time is not counted in the rounds
+                int epochs = stats.get(stats.size() - 1).getRoundsTrained() + 1;
+                double measured = seconds / epochs;
+                double predicted = estimator.predictEpochSeconds(net.getNetSpec(), options)
+                        .orElseThrow(() -> new IllegalStateException("No prediction"));
+                System.out.printf("%5d %5d %6d %14.3f %14.3f %8.1f%%%n", size[0], size[1], size[2],
+                        predicted * 1000, measured * 1000, (predicted / measured - 1) * 100);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    private static RectNetFixed train(int[] size, TrainingOptions options, long millis)
+            throws InterruptedException {
+        RectNetFixed net = new RectNetFixed("net-" + size[0] + "-" + size[1] + "-" + size[2],
+                generate(size), ScaleFunctionType.SIGMOID, options);
+        net.train(millis, 1);
+        return net;
+    }
+
+    /**
+     * Lines of an augtrain file that trains until it runs out of time.
+     */
+    private static List<String> generate(int[] size) {
+        return Augtrains.generate(size[0], size[1], size[2], 1, 1000000, size[0] * 31 + size[2]);
+    }
+}
@@ -0,0 +1,136 @@
+package com.augurworks.alfred;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.augurworks.alfred.messaging.SchedulingPolicy;
+import com.augurworks.alfred.messaging.TrainingScheduler;
+
+/**
+ * Simulates a worker draining the training queue under each
+ * {@link SchedulingPolicy} on a virtual clock, for a mix of many small
+ * nets and a few large ones arriving at random. Jobs beyond the prefetch
+ * wait on the broker in order, as they would on RabbitMQ, and a job's run
+ * time is proportional to its {@link TrainingScheduler#cost}. Prints the
+ * mean and tail latency from delivery to result, and the worst latency of
+ * a large job to show it is not starved.
+ *
+ * Usage: SchedulerBenchmark [jobs] [workers] [prefetch] [load]
+ */
+public class SchedulerBenchmark {
+
+    // Weight updates per second of one worker
+    private static final double UPDATES_PER_SECOND = 2e8;
+    private static final double LARGE_FRACTION = 0.05;
+
+    public static void main(String[] args) {
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int workers = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int prefetch = args.length > 2 ? Integer.parseInt(args[2]) : 4 * workers;
+        double load = args.length > 3 ? Double.parseDouble(args[3]) : 0.8;
+
+        double[] costs = new double[jobs];
+        Random random = new Random(1);
+        double meanSeconds = 0;
+        for (int i = 0; i < jobs; i++) {
+            costs[i] = random.nextDouble() < LARGE_FRACTION
+                    ? TrainingScheduler.cost(64 + random.nextInt(37), 10, 20000 + random.nextInt(30001), 1, 50)
+                    : TrainingScheduler.cost(8 + random.nextInt(9), 3, 300 + random.nextInt(1701), 1, 50);
+            meanSeconds += costs[i] / UPDATES_PER_SECOND / jobs;
+        }
+        // Poisson arrivals at the given share of the workers' capacity
+        long[] arrivals = new long[jobs];
+        double meanGapNanos = meanSeconds * 1e9 / workers / load;
+        long time = 0;
+        for (int i = 0; i < jobs; i++) {
+            time += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+            arrivals[i] = time;
+        }
+        System.out.printf("%d jobs, %d workers, prefetch %d, load %.2f, mean run %.1f s, %.0f%% large%n",
+                jobs, workers, prefetch, load, meanSeconds, LARGE_FRACTION * 100);
+        System.out.printf("%-28s %12s %12s %12s %14s %14s%n", "policy", "mean s", "small mean s", "p99 s",
+                "large mean s", "large max s");
+        simulate("FIFO", SchedulingPolicy.FIFO, Long.MAX_VALUE / 1_000_000_000L, costs, arrivals, workers, prefetch);
+        simulate("SHORTEST_FIRST, no aging", SchedulingPolicy.SHORTEST_FIRST, Long.MAX_VALUE / 1_000_000_000L,
+                costs, arrivals, workers, prefetch);
+        simulate("SHORTEST_FIRST, 600 s", SchedulingPolicy.SHORTEST_FIRST, 600, costs, arrivals, workers, prefetch);
+        simulate("SHORTEST_FIRST, 60 s", SchedulingPolicy.SHORTEST_FIRST, 60, costs, arrivals, workers, prefetch);
+    }
+
+    private static void simulate(String name, SchedulingPolicy policy, long agingHalfLifeSeconds, double[] costs,
+            long[] arrivals, int workers, int prefetch) {
+        long[] now = {0};
+        TrainingScheduler<Integer> scheduler = new TrainingScheduler<>(policy, agingHalfLifeSeconds, () -> now[0]);
+        Deque<Integer> broker = new ArrayDeque<>();
+        long[] finishes = new long[workers];
+        int[] running = new int[workers];
+        Arrays.fill(finishes, Long.MAX_VALUE);
+        double[] latencies = new double[costs.length];
+        int held = 0;
+        int next = 0;
+        int done = 0;
+        while (done < costs.length) {
+            int worker = 0;
+            for (int i = 1; i < workers; i++) {
+                if (finishes[i] < finishes[worker]) {
+                    worker = i;
+                }
+            }
+            if (next < arrivals.length && arrivals[next] <= finishes[worker]) {
+                now[0] = arrivals[next];
+                broker.add(next++);
+            } else {
+                now[0] = finishes[worker];
+                latencies[running[worker]] = (now[0] - arrivals[running[worker]]) / 1e9;
+                finishes[worker] = Long.MAX_VALUE;
+                held--;
+                done++;
+            }
+            while (held < prefetch && !broker.isEmpty()) {
+                int job = broker.poll();
+                scheduler.submit(job, costs[job], null);
+                held++;
+            }
+            for (int i = 0; i < workers; i++) {
+                if (finishes[i] == Long.MAX_VALUE) {
+                    Integer job = scheduler.poll();
+                    if (job == null) {
+                        break;
+                    }
+                    running[i] = job;
+                    finishes[i] = now[0] + (long) (costs[job] / UPDATES_PER_SECOND * TimeUnit.SECONDS.toNanos(1));
+                }
+            }
+        }
+        report(name, costs, latencies);
+    }
+
+    private static void report(String name, double[] costs, double[] latencies) {
+        double threshold = TrainingScheduler.cost(32, 5, 5000, 1, 50);
+        double sum = 0;
+        double smallSum = 0;
+        double largeSum = 0;
+        double largeMax = 0;
+        int small = 0;
+        List<Double> sorted = new ArrayList<>();
+        for (int i = 0; i < costs.length; i++) {
+            sum += latencies[i];
+            sorted.add(latencies[i]);
+            if (costs[i] < threshold) {
+                smallSum += latencies[i];
+                small++;
+            } else {
+                largeSum += latencies[i];
+                largeMax = Math.max(largeMax, latencies[i]);
+            }
+        }
+        sorted.sort(null);
+        System.out.printf("%-28s %12.1f %12.1f %12.1f %14.1f %14.1f%n", name, sum / costs.length, smallSum / small,
+                sorted.get((int) (0.99 * (sorted.size() - 1))), largeSum / (costs.length - small), largeMax);
+    }
+}
@@ -0,0 +1,71 @@
+package com.augurworks.alfred;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
+public class ScoringModeTest {
+
+    /**
+     * With no minimum rounds every fused epoch is scored exactly, so the
+     * local max checks and the net they leave are the same as with exact
+     * scoring.
+     */
+    @Test
+    public void fusedDecidesLikeExactWithoutMinimumRounds() throws InterruptedException {
+        for (long seed = 1; seed <= 3; seed++) {
+            List<String> lines = Augtrains.generateLearnable(8, 3, 300, 1, 500, seed);
+            lines.set(1, "train 1,500,0.5,0,0");
+            RectNetFixed exact = train(lines, seed, ScoringMode.EXACT);
+            RectNetFixed fused = train(lines, seed, ScoringMode.FUSED);
+            assertEquals(exact.getTrainingStopReason(), fused.getTrainingStopReason());
+            assertEquals(exact.getTrainingStats().size(), fused.getTrainingStats().size());
+            NetWeights exactWeights = exact.exportWeights();
+            NetWeights fusedWeights = fused.exportWeights();
+            for (int col = 0; col <= 3; col++) {
+                assertArrayEquals(exactWeights.getBlock(col), fusedWeights.getBlock(col), 0);
+            }
+        }
+    }
+
+    /**
+     * Epochs before the minimum rounds are only screened with the training
+     * pass errors, which trail the weights; the cutoff stops training once
+     * the weights themselves reach it.
+     */
+    @Test
+    public void fusedStopsAtACutoffTheWeightsReach() throws InterruptedException {
+        List<String> lines = Augtrains.generateLearnable(8, 3, 300, 1, 500, 1);
+        double cutoff = 0.05 * 0.05;
+        lines.set(1, "train 1,500,0.5,500," + cutoff);
+        RectNetFixed fused = train(lines, 1, ScoringMode.FUSED);
+        assertEquals(TrainingStopReason.HIT_PERFORMANCE_CUTOFF, fused.getTrainingStopReason());
+        double rmsError = fused.computeRmsError();
+        assertTrue("RMS error " + rmsError, rmsError * rmsError <= cutoff);
+    }
+
+    /**
+     * A net that gives up at a local max on every try is returned as it
+     * stands, for comparison.
+     */
+    private static RectNetFixed train(List<String> lines, long seed, ScoringMode scoring) throws InterruptedException {
+        TrainingOptions options = new TrainingOptions.Builder()
+                .precision(Precision.DOUBLE)
+                .seed(seed)
+                .scoring(scoring)
+                .build();
+        RectNetFixed net = new RectNetFixed("net", lines, ScaleFunctionType.SIGMOID, options);
+        try {
+            net.train(0, 3);
+        } catch (IllegalStateException e) {
+            // compared as it stands
+        }
+        return net;
+    }
+}
@@ -0,0 +1,54 @@
+package com.augurworks.alfred;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
+public class SynchronousTrainerTest {
+
+    @Test
+    public void sameSeedAndThreadsGiveTheSameWeights() throws InterruptedException {
+        for (int batchSize : new int[] {16, 50}) {
+            List<String> lines = lines(batchSize);
+            for (int col = 0; col <= 3; col++) {
+                assertArrayEquals(weights(lines, ParallelMode.SYNCHRONOUS).getBlock(col),
+                        weights(lines, ParallelMode.SYNCHRONOUS).getBlock(col), 0);
+            }
+        }
+    }
+
+    /**
+     * Without a batch size, synchronous training is per-row SGD like the
+     * serial loop, not one full-batch step per epoch.
+     */
+    @Test
+    public void trainsRowByRowWithoutABatchSize() throws InterruptedException {
+        List<String> lines = lines(1);
+        NetWeights serial = weights(lines, ParallelMode.SERIAL);
+        NetWeights synchronous = weights(lines, ParallelMode.SYNCHRONOUS);
+        for (int col = 0; col <= 3; col++) {
+            assertArrayEquals(serial.getBlock(col), synchronous.getBlock(col), 0);
+        }
+    }
+
+    private static List<String> lines(int batchSize) {
+        List<String> lines = Augtrains.generateLearnable(8, 3, 300, 2, 20, 1);
+        lines.set(1, lines.get(1) + "," + batchSize);
+        return lines;
+    }
+
+    private static NetWeights weights(List<String> lines, ParallelMode parallelMode) throws InterruptedException {
+        TrainingOptions options = new TrainingOptions.Builder()
+                .precision(Precision.DOUBLE)
+                .seed(1L)
+                .parallelMode(parallelMode)
+                .trainingThreads(4)
+                .build();
+        RectNetFixed net = new RectNetFixed("net", lines, ScaleFunctionType.SIGMOID, options);
+        return net.train(0, 1).exportWeights();
+    }
+}
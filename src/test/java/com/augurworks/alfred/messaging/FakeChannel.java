@@ -0,0 +1,136 @@
+package com.augurworks.alfred.messaging;
+
+import static org.junit.Assert.assertNotNull;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+
+/**
+ * In-memory stand-in for a RabbitMQ channel. Publishes, acks and nacks are
+ * recorded as events a test waits for, and the test sends the broker's
+ * confirms and shuts the channel down itself. Other methods do nothing.
+ */
+class FakeChannel {
+
+    static final class Event {
+
+        enum Type { PUBLISH, ACK, NACK }
+
+        final Type type;
+        // delivery tag, or the sequence number of a publish
+        final long tag;
+        final boolean multiple;
+        final boolean requeue;
+
+        Event(Type type, long tag, boolean multiple, boolean requeue) {
+            this.type = type;
+            this.tag = tag;
+            this.multiple = multiple;
+            this.requeue = requeue;
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + tag + (multiple ? " multiple" : "") + (requeue ? " requeue" : "");
+        }
+    }
+
+    private static final long WAIT_SECONDS = 5;
+
+    private final Channel channel;
+    private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+    private final List<ShutdownListener> shutdownListeners = new CopyOnWriteArrayList<>();
+    private volatile ConfirmListener confirmListener;
+    // 0 until confirmSelect, as on a real channel
+    private long nextPublishSeqNo;
+
+    FakeChannel() {
+        this.channel = (Channel) Proxy.newProxyInstance(Channel.class.getClassLoader(),
+                new Class<?>[] {Channel.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "confirmSelect":
+                            synchronized (this) {
+                                nextPublishSeqNo = 1;
+                            }
+                            return null;
+                        case "getNextPublishSeqNo":
+                            synchronized (this) {
+                                return nextPublishSeqNo;
+                            }
+                        case "basicPublish":
+                            synchronized (this) {
+                                events.add(new Event(Event.Type.PUBLISH, nextPublishSeqNo, false, false));
+                                if (nextPublishSeqNo > 0) {
+                                    nextPublishSeqNo++;
+                                }
+                            }
+                            return null;
+                        case "basicAck":
+                            events.add(new Event(Event.Type.ACK, (Long) args[0], (Boolean) args[1], false));
+                            return null;
+                        case "basicNack":
+                            events.add(new Event(Event.Type.NACK, (Long) args[0], (Boolean) args[1],
+                                    (Boolean) args[2]));
+                            return null;
+                        case "addConfirmListener":
+                            confirmListener = (ConfirmListener) args[0];
+                            return null;
+                        case "addShutdownListener":
+                            shutdownListeners.add((ShutdownListener) args[0]);
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "FakeChannel";
+                        default:
+                            return method.getReturnType() == boolean.class ? false : null;
+                    }
+                });
+    }
+
+    Channel channel() {
+        return channel;
+    }
+
+    /**
+     * The next event, failing if none comes within a few seconds.
+     */
+    Event next() throws InterruptedException {
+        Event event = events.poll(WAIT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("No event within " + WAIT_SECONDS + " s", event);
+        return event;
+    }
+
+    /**
+     * The next event, null if none comes within millis.
+     */
+    Event poll(long millis) throws InterruptedException {
+        return events.poll(millis, TimeUnit.MILLISECONDS);
+    }
+
+    void ackConfirm(long sequenceNumber, boolean multiple) throws Exception {
+        confirmListener.handleAck(sequenceNumber, multiple);
+    }
+
+    void nackConfirm(long sequenceNumber, boolean multiple) throws Exception {
+        confirmListener.handleNack(sequenceNumber, multiple);
+    }
+
+    void shutdown() {
+        ShutdownSignalException cause = new ShutdownSignalException(false, false, null, channel);
+        for (ShutdownListener listener : shutdownListeners) {
+            listener.shutdownCompleted(cause);
+        }
+    }
+}
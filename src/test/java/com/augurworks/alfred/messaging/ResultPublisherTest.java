@@ -0,0 +1,123 @@
+package com.augurworks.alfred.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.augurworks.alfred.messaging.FakeChannel.Event;
+
+public class ResultPublisherTest {
+
+    private static final byte[] RESULT = {1, 2, 3};
+
+    private final FakeChannel training = new FakeChannel();
+    private final FakeChannel results = new FakeChannel();
+    private ResultPublisher publisher;
+
+    @Before
+    public void startPublisher() throws Exception {
+        publisher = new ResultPublisher(training.channel(), results.channel());
+    }
+
+    @After
+    public void closePublisher() {
+        publisher.close();
+    }
+
+    @Test
+    public void acksOnlyAfterTheConfirm() throws Exception {
+        publisher.track(7);
+        publisher.publish(7, "results", null, RESULT);
+        assertEvent(Event.Type.PUBLISH, 1, results.next());
+        assertNull("Acked before the confirm", training.poll(200));
+
+        results.ackConfirm(1, false);
+        assertEvent(Event.Type.ACK, 7, training.next());
+        assertEquals(0, publisher.getOutstanding());
+    }
+
+    @Test
+    public void requeuesOnNack() throws Exception {
+        publisher.track(7);
+        publisher.publish(7, "results", null, RESULT);
+        results.next();
+
+        results.nackConfirm(1, false);
+        Event event = training.next();
+        assertEvent(Event.Type.NACK, 7, event);
+        assertTrue(event.requeue);
+        assertEquals(0, publisher.getOutstanding());
+    }
+
+    @Test
+    public void requeuesOnChannelShutdown() throws Exception {
+        publisher.track(7);
+        publisher.track(8);
+        publisher.publish(7, "results", null, RESULT);
+        publisher.publish(8, "results", null, RESULT);
+        results.next();
+        results.next();
+
+        results.shutdown();
+        Set<Long> requeued = new TreeSet<>();
+        for (int i = 0; i < 2; i++) {
+            Event event = training.next();
+            assertEquals(Event.Type.NACK, event.type);
+            assertTrue(event.requeue);
+            requeued.add(event.tag);
+        }
+        assertEquals(new TreeSet<>(Arrays.asList(7L, 8L)), requeued);
+    }
+
+    /**
+     * Results of 1, 2 and 4 are confirmed together while 3 still trains, so
+     * 1 and 2 may go out as one multiple ack but 4 must be acked alone.
+     */
+    @Test
+    public void multipleAckNeverCoversAnOutstandingTag() throws Exception {
+        for (long tag = 1; tag <= 4; tag++) {
+            publisher.track(tag);
+        }
+        publisher.publish(1, "results", null, RESULT);
+        publisher.publish(2, "results", null, RESULT);
+        publisher.publish(4, "results", null, RESULT);
+        for (int i = 0; i < 3; i++) {
+            results.next();
+        }
+
+        results.ackConfirm(3, true);
+        Set<Long> acked = new TreeSet<>();
+        while (acked.size() < 3) {
+            Event event = training.next();
+            assertEquals(Event.Type.ACK, event.type);
+            if (event.multiple) {
+                assertTrue("Multiple ack " + event.tag + " covers outstanding 3", event.tag < 3);
+                for (long tag = 1; tag <= event.tag; tag++) {
+                    acked.add(tag);
+                }
+            } else {
+                acked.add(event.tag);
+            }
+        }
+        assertEquals(new TreeSet<>(Arrays.asList(1L, 2L, 4L)), acked);
+        assertEquals(1, publisher.getOutstanding());
+
+        publisher.reject(3, false);
+        Event event = training.next();
+        assertEvent(Event.Type.NACK, 3, event);
+        assertFalse(event.requeue);
+    }
+
+    private static void assertEvent(Event.Type type, long tag, Event event) {
+        assertEquals(type + " " + tag, event.type + " " + event.tag);
+    }
+}
@@ -0,0 +1,146 @@
+package com.augurworks.alfred.messaging;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.Augtrains;
+import com.augurworks.alfred.TrainingStopReason;
+import com.augurworks.alfred.stats.TrainingStat;
+import com.augurworks.alfred.util.BinaryAugtrain;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class TrainingMessageCodecTest {
+
+    private final TrainingMessageCodec codec = new TrainingMessageCodec(new ObjectMapper());
+
+    @Test
+    public void roundTripsBinaryMessages() throws IOException {
+        for (Compression compression : Compression.values()) {
+            assertRoundTrip(request(), WireFormat.BINARY, compression);
+            assertRoundTrip(result(), WireFormat.BINARY, compression);
+        }
+    }
+
+    @Test
+    public void roundTripsEmptyMessages() throws IOException {
+        TrainingMessage empty = new TrainingMessage();
+        TrainingMessage emptySets = new TrainingMessage("", "", Collections.<TrainingStat>emptyList());
+        emptySets.setMetadata(Collections.<String, String>emptyMap());
+        emptySets.setBinaryData(new byte[0]);
+        for (Compression compression : Compression.values()) {
+            assertRoundTrip(empty, WireFormat.BINARY, compression);
+            assertRoundTrip(emptySets, WireFormat.BINARY, compression);
+        }
+        assertRoundTrip(empty, WireFormat.JSON, Compression.NONE);
+    }
+
+    @Test
+    public void roundTripsText() throws IOException {
+        for (WireFormat format : WireFormat.values()) {
+            for (Compression compression : Compression.values()) {
+                TrainingMessage message = result();
+                if (format == WireFormat.JSON) {
+                    message.setBinaryData(null);
+                }
+                String text = codec.encodeText(message, format, compression);
+                assertEquals(format, TrainingMessageCodec.detectTextFormat(text));
+                assertSame(message, codec.decodeText(text));
+            }
+        }
+    }
+
+    @Test
+    public void truncatedInputThrowsIOException() throws IOException {
+        for (Compression compression : Compression.values()) {
+            byte[] bytes = codec.encode(request(), WireFormat.BINARY, compression);
+            for (int length = 0; length < bytes.length; length++) {
+                try {
+                    codec.decode(Arrays.copyOf(bytes, length), WireFormat.BINARY);
+                    fail("Decoded " + length + " of " + bytes.length + " bytes with " + compression);
+                } catch (IOException e) {
+                    // expected
+                }
+            }
+        }
+    }
+
+    /**
+     * The binary request asks for deflated results, which must not change
+     * how the request itself is encoded.
+     */
+    @Test
+    public void setsAMetadataEntryOfBinaryText() throws IOException {
+        for (Compression compression : Compression.values()) {
+            String text = codec.encodeText(request(), WireFormat.BINARY, compression);
+            String updated = codec.withMetadataEntry(text, "resumes", "1");
+            TrainingMessage expected = request();
+            expected.getMetadata().put("resumes", "1");
+            assertEquals(codec.encodeText(expected, WireFormat.BINARY, compression), updated);
+            assertEquals(Base64.getDecoder().decode(text)[5], Base64.getDecoder().decode(updated)[5]);
+            assertSame(expected, codec.decodeText(updated));
+        }
+    }
+
+    @Test
+    public void setsAMetadataEntryOfJsonText() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        String text = "{\"netId\":\"net\",\"data\":\"x\",\"metadata\":{\"precision\":\"double\",\"resumes\":\"1\"},"
+                + "\"trainingStats\":[],\"extra\":{\"kept\":[1.50,2]}}";
+        ObjectNode updated = (ObjectNode) mapper.readTree(codec.withMetadataEntry(text, "resumes", "2"));
+        ObjectNode expected = (ObjectNode) mapper.readTree(text);
+        ((ObjectNode) expected.get("metadata")).put("resumes", "2");
+        assertEquals(expected, updated);
+
+        String withoutMetadata = "{\"netId\":\"net\",\"data\":\"x\",\"metadata\":null}";
+        updated = (ObjectNode) mapper.readTree(codec.withMetadataEntry(withoutMetadata, "resumes", "1"));
+        assertEquals("1", updated.get("metadata").get("resumes").asText());
+        assertEquals("x", updated.get("data").asText());
+    }
+
+    private void assertRoundTrip(TrainingMessage message, WireFormat format, Compression compression)
+            throws IOException {
+        assertSame(message, codec.decode(codec.encode(message, format, compression), format));
+    }
+
+    /**
+     * binaryData is transient, so equals leaves it out.
+     */
+    private static void assertSame(TrainingMessage expected, TrainingMessage actual) {
+        assertEquals(expected, actual);
+        assertArrayEquals(expected.getBinaryData(), actual.getBinaryData());
+    }
+
+    private static TrainingMessage request() {
+        TrainingMessage message = new TrainingMessage();
+        message.setNetId("net");
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("precision", "double");
+        metadata.put(TrainingMessageCodec.COMPRESSION_KEY, "deflate");
+        message.setMetadata(metadata);
+        message.setBinaryData(BinaryAugtrain.encode(Augtrains.join(Augtrains.generate(4, 3, 50, 1, 10, 1))
+                .getBytes(StandardCharsets.UTF_8)));
+        return message;
+    }
+
+    private static TrainingMessage result() {
+        TrainingStat stat = new TrainingStat("net", 4, 0.1, 1);
+        stat.setRmsError(Double.NaN);
+        stat.setRoundsTrained(10);
+        stat.setTrainingStopReason(TrainingStopReason.HIT_TRAINING_LIMIT);
+        TrainingMessage message = new TrainingMessage("net", "2016-01-01 1.5 1.25 0.25\n", Arrays.asList(stat));
+        message.setBinaryData(new byte[] {0, 1, 2, (byte) 0xFF});
+        return message;
+    }
+}
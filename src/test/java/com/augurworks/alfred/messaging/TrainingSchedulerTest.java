@@ -0,0 +1,106 @@
+package com.augurworks.alfred.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.Augtrains;
+import com.augurworks.alfred.NetTrainSpecification;
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+import com.augurworks.alfred.util.AugtrainParser;
+import com.augurworks.alfred.util.BinaryAugtrain;
+
+public class TrainingSchedulerTest {
+
+    private final long[] now = {0};
+
+    @Test
+    public void fifoKeepsDeliveryOrder() {
+        TrainingScheduler<String> scheduler = scheduler(SchedulingPolicy.FIFO);
+        scheduler.submit("large", 100, null);
+        scheduler.submit("small", 1, 1L);
+        assertEquals("large", scheduler.poll());
+        assertEquals("small", scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void shortestFirstStartsTheCheapestJob() {
+        TrainingScheduler<String> scheduler = scheduler(SchedulingPolicy.SHORTEST_FIRST);
+        scheduler.submit("large", 100, null);
+        scheduler.submit("small", 1, null);
+        scheduler.submit("medium", 10, null);
+        scheduler.submit("other small", 1, null);
+        assertEquals("small", scheduler.poll());
+        assertEquals("other small", scheduler.poll());
+        assertEquals("medium", scheduler.poll());
+        assertEquals("large", scheduler.poll());
+    }
+
+    /**
+     * Seven half-lives bring a cost of 100 below 1.
+     */
+    @Test
+    public void agingStartsALargeJobThatWaited() {
+        TrainingScheduler<String> scheduler = scheduler(SchedulingPolicy.SHORTEST_FIRST);
+        scheduler.submit("large", 100, null);
+        now[0] = TimeUnit.SECONDS.toNanos(7 * 60);
+        scheduler.submit("small", 1, null);
+        assertEquals("large", scheduler.poll());
+    }
+
+    @Test
+    public void deadlineFirstStartsTheEarliestDeadline() {
+        TrainingScheduler<String> scheduler = scheduler(SchedulingPolicy.DEADLINE_FIRST);
+        scheduler.submit("no deadline", 1, null);
+        scheduler.submit("late", 1, 2000L);
+        scheduler.submit("early", 100, 1000L);
+        scheduler.submit("other no deadline", 0.5, null);
+        assertEquals("early", scheduler.poll());
+        assertEquals("late", scheduler.poll());
+        assertEquals("other no deadline", scheduler.poll());
+        assertEquals("no deadline", scheduler.poll());
+    }
+
+    @Test
+    public void parsesDeadlines() {
+        assertEquals(1464782400000L, TrainingScheduler.parseDeadline(" 1464782400000 "));
+        assertEquals(1464782400000L, TrainingScheduler.parseDeadline("2016-06-01T12:00:00Z"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOtherDeadlines() {
+        TrainingScheduler.parseDeadline("tomorrow");
+    }
+
+    /**
+     * A message is costed from its header and row count alone. Text
+     * augtrains count the two prediction rows as well.
+     */
+    @Test
+    public void costsMessagesWithoutParsingThem() throws IOException {
+        List<String> lines = Augtrains.generate(6, 4, 40, 2, 30, 1);
+        byte[] augtrain = Augtrains.join(lines).getBytes(StandardCharsets.UTF_8);
+        NetTrainSpecification netSpec = AugtrainParser.parse(augtrain, ScaleFunctionType.SIGMOID);
+        double perRow = TrainingScheduler.cost(netSpec) / netSpec.getNetData().getTrainDataset().size();
+        assertEquals(TrainingScheduler.cost(6, 4, 40, 2, 30), TrainingScheduler.cost(netSpec), 0);
+
+        TrainingMessage text = new TrainingMessage();
+        text.setData(Augtrains.join(lines).replace("\n", "\r\n") + "\n");
+        assertEquals(42 * perRow, TrainingScheduler.cost(text), 0);
+
+        TrainingMessage binary = new TrainingMessage();
+        binary.setBinaryData(BinaryAugtrain.encode(augtrain));
+        assertEquals(40 * perRow, TrainingScheduler.cost(binary), 0);
+    }
+
+    private TrainingScheduler<String> scheduler(SchedulingPolicy policy) {
+        return new TrainingScheduler<>(policy, 60, () -> now[0]);
+    }
+}
@@ -0,0 +1,117 @@
+package com.augurworks.alfred.models;
+
+import static com.augurworks.alfred.models.ModelStoreTest.assertModelsEqual;
+import static com.augurworks.alfred.models.ModelStoreTest.model;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.augurworks.alfred.Activation;
+import com.augurworks.alfred.scaling.ScaleFunctions;
+
+public class ModelFormatTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = folder.newFile("net.model").toPath();
+    }
+
+    @Test
+    public void readsWhatWasWritten() throws IOException {
+        for (int[] shape : new int[][] {{1, 1}, {4, 3}, {7, 1}, {5, 6}}) {
+            Model model = model(shape[0], shape[1], shape[0] * 10 + shape[1]);
+            ModelFormat.write(file, model);
+            assertModelsEqual(model, ModelFormat.read(file));
+        }
+        Model linear = new Model(model(4, 3, 1).getWeights(), Activation.SIGMOID,
+                ScaleFunctions.createLinearScaleFunction(-3, 12, 0.1, 0.9));
+        ModelFormat.write(file, linear);
+        assertModelsEqual(linear, ModelFormat.read(file));
+    }
+
+    /**
+     * Decodes a written file by hand from the documented layout.
+     */
+    @Test
+    public void writesTheDocumentedLayout() throws IOException {
+        Model model = model(4, 3, 1);
+        ModelFormat.write(file, model);
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(ModelFormat.fileSize(4, 3, 2), buffer.limit());
+        assertEquals('A', buffer.get(0));
+        assertEquals('L', buffer.get(1));
+        assertEquals('F', buffer.get(2));
+        assertEquals('M', buffer.get(3));
+        assertEquals(ModelFormat.MAGIC, buffer.getInt());
+        assertEquals(ModelFormat.VERSION, buffer.getInt());
+        assertEquals(4, buffer.getInt());
+        assertEquals(3, buffer.getInt());
+        // FAST_SIGMOID and SIGMOID scaling
+        assertEquals(1, buffer.getInt());
+        assertEquals(1, buffer.getInt());
+        assertEquals(2, buffer.getInt());
+        assertEquals(0, buffer.getInt());
+        assertEquals(ModelFormat.HEADER_BYTES, buffer.position());
+        double[] scaleParameters = model.getScaleFunction().getParameters();
+        for (double parameter : scaleParameters) {
+            assertEquals(Double.doubleToRawLongBits(parameter), buffer.getLong());
+        }
+        for (int col = 0; col <= 3; col++) {
+            for (double weight : model.getWeights().getBlock(col)) {
+                assertEquals(Double.doubleToRawLongBits(weight), buffer.getLong());
+            }
+        }
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void rejectsOtherFiles() throws IOException {
+        ModelFormat.write(file, model(4, 3, 1));
+        byte[] valid = Files.readAllBytes(file);
+
+        assertRejected(withInt(valid, 0, 0x4D464C42));
+        assertRejected(withInt(valid, 4, ModelFormat.VERSION + 1));
+        assertRejected(withInt(valid, 4, 0));
+        assertRejected(withInt(valid, 8, 5));
+        assertRejected(withInt(valid, 16, 2));
+        assertRejected(withInt(valid, 20, -1));
+        assertRejected(Arrays.copyOf(valid, valid.length - 8));
+        assertRejected(Arrays.copyOf(valid, ModelFormat.HEADER_BYTES - 1));
+        // Big endian magic
+        byte[] bigEndian = valid.clone();
+        ByteBuffer.wrap(bigEndian).putInt(0, ModelFormat.MAGIC);
+        assertRejected(bigEndian);
+    }
+
+    private void assertRejected(byte[] bytes) throws IOException {
+        Files.write(file, bytes);
+        try {
+            ModelFormat.read(file);
+            fail("Read a bad model file");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static byte[] withInt(byte[] bytes, int offset, int value) {
+        byte[] copy = bytes.clone();
+        ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).putInt(offset, value);
+        return copy;
+    }
+}
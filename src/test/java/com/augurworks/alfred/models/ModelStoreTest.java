@@ -0,0 +1,143 @@
+package com.augurworks.alfred.models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.augurworks.alfred.Activation;
+import com.augurworks.alfred.NetWeights;
+import com.augurworks.alfred.scaling.ScaleFunctions;
+
+public class ModelStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = folder.newFolder("models").toPath();
+    }
+
+    @Test
+    public void loadsWhatWasSaved() {
+        ModelStore store = new ModelStore(directory, 4);
+        Model model = model(4, 3, 1);
+        store.save("net", model);
+        assertSame(model, store.load("net", 4, 3).get());
+
+        // A new store over the same directory reads the file
+        Model loaded = new ModelStore(directory, 4).load("net", 4, 3).get();
+        assertNotSame(model, loaded);
+        assertModelsEqual(model, loaded);
+    }
+
+    @Test
+    public void keysByNetIdAndShape() {
+        ModelStore store = new ModelStore(directory, 0);
+        Model small = model(4, 3, 1);
+        Model wide = model(5, 3, 2);
+        Model deep = model(4, 4, 3);
+        Model other = model(4, 3, 4);
+        store.save("net", small);
+        store.save("net", wide);
+        store.save("net", deep);
+        store.save("net/other", other);
+        assertModelsEqual(small, store.load("net", 4, 3).get());
+        assertModelsEqual(wide, store.load("net", 5, 3).get());
+        assertModelsEqual(deep, store.load("net", 4, 4).get());
+        assertModelsEqual(other, store.load("net/other", 4, 3).get());
+        assertFalse(store.load("net", 5, 4).isPresent());
+        assertFalse(store.load("missing", 4, 3).isPresent());
+    }
+
+    /**
+     * A file under the key of one shape holding another is not handed out.
+     */
+    @Test
+    public void shapeMismatchIsEmpty() throws IOException {
+        ModelFormat.write(directory.resolve("net-4x3.model"), model(5, 3, 1));
+        assertFalse(new ModelStore(directory, 4).load("net", 4, 3).isPresent());
+    }
+
+    @Test
+    public void unreadableFileIsEmpty() throws IOException {
+        Files.write(directory.resolve("net-4x3.model"), new byte[] {1, 2, 3});
+        assertFalse(new ModelStore(directory, 4).load("net", 4, 3).isPresent());
+    }
+
+    /**
+     * Evicted models are read back from disk, cached ones are not, which
+     * shows once the files are gone.
+     */
+    @Test
+    public void evictsTheLeastRecentlyUsedModel() throws IOException {
+        ModelStore store = new ModelStore(directory, 2);
+        Model first = model(4, 3, 1);
+        Model second = model(4, 3, 2);
+        Model third = model(4, 3, 3);
+        store.save("first", first);
+        store.save("second", second);
+        store.load("first", 4, 3);
+        store.save("third", third);
+        for (String netId : new String[] {"first", "second", "third"}) {
+            Files.delete(directory.resolve(netId + "-4x3.model"));
+        }
+        assertSame(first, store.load("first", 4, 3).get());
+        assertSame(third, store.load("third", 4, 3).get());
+        assertFalse(store.load("second", 4, 3).isPresent());
+    }
+
+    @Test
+    public void reloadsEvictedModelsFromDisk() {
+        ModelStore store = new ModelStore(directory, 1);
+        Model first = model(4, 3, 1);
+        store.save("first", first);
+        store.save("second", model(4, 3, 2));
+        Model loaded = store.load("first", 4, 3).get();
+        assertNotSame(first, loaded);
+        assertModelsEqual(first, loaded);
+        assertSame(loaded, store.load("first", 4, 3).get());
+    }
+
+    /**
+     * Random weights under a sigmoid scale function.
+     */
+    static Model model(int side, int depth, long seed) {
+        Random random = new Random(seed);
+        NetWeights weights = new NetWeights(side, depth);
+        for (int col = 0; col <= depth; col++) {
+            double[] block = weights.getBlock(col);
+            for (int i = 0; i < block.length; i++) {
+                block[i] = random.nextGaussian();
+            }
+        }
+        return new Model(weights, Activation.FAST_SIGMOID,
+                ScaleFunctions.create(ScaleFunctions.ScaleFunctionType.SIGMOID,
+                        new double[] {random.nextDouble() * 100, random.nextDouble() * 10}));
+    }
+
+    static void assertModelsEqual(Model expected, Model actual) {
+        assertEquals(expected.getSide(), actual.getSide());
+        assertEquals(expected.getDepth(), actual.getDepth());
+        assertEquals(expected.getActivation(), actual.getActivation());
+        assertEquals(expected.getScaleFunction().getType(), actual.getScaleFunction().getType());
+        assertArrayEquals(expected.getScaleFunction().getParameters(), actual.getScaleFunction().getParameters(), 0);
+        for (int col = 0; col <= expected.getDepth(); col++) {
+            assertArrayEquals(expected.getWeights().getBlock(col), actual.getWeights().getBlock(col), 0);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.augurworks.alfred.models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.augurworks.alfred.Augout;
+import com.augurworks.alfred.Augtrains;
+import com.augurworks.alfred.Precision;
+import com.augurworks.alfred.RectNetFixed;
+import com.augurworks.alfred.TrainingOptions;
+import com.augurworks.alfred.messaging.Compression;
+import com.augurworks.alfred.messaging.TrainingMessage;
+import com.augurworks.alfred.messaging.TrainingMessageCodec;
+import com.augurworks.alfred.messaging.WireFormat;
+import com.augurworks.alfred.server.AlfredWrapper;
+import com.augurworks.alfred.util.BinaryAugtrain;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ResultCacheTest {
+
+    private static final String AUGTRAIN = Augtrains.join(Augtrains.generate(4, 3, 50, 1, 20, 1));
+
+    private static final TrainingMessageCodec codec = new TrainingMessageCodec(new ObjectMapper());
+    private static String key;
+    private static RectNetFixed net;
+    private static Augout augout;
+    private static byte[] trained;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final long[] now = {0};
+
+    @BeforeClass
+    public static void trainNet() throws Exception {
+        TrainingMessage message = message(AUGTRAIN, "1");
+        key = key(message);
+        net = new RectNetFixed("net", AlfredWrapper.parseSpec(message),
+                TrainingOptions.fromMetadata(message.getMetadata()));
+        net.train(0, 1);
+        augout = net.computeAugout();
+        trained = codec.encodeResult(net, WireFormat.JSON, Compression.NONE);
+    }
+
+    /**
+     * Text with the trailing zeros of its numbers dropped and the binary
+     * form hold the same rows, so they get the same key.
+     */
+    @Test
+    public void sameAugtrainHasOneKey() throws IOException {
+        String reformatted = AUGTRAIN.replaceAll("(\\.\\d*?)0+(?=[ ,\\n])", "$1");
+        assertNotEquals(AUGTRAIN, reformatted);
+        assertEquals(key, key(message(reformatted, "1")));
+
+        TrainingMessage binary = message(null, "1");
+        binary.setBinaryData(BinaryAugtrain.encode(AUGTRAIN.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(key, key(binary));
+    }
+
+    @Test
+    public void otherDataOrOptionsHaveAnotherKey() throws IOException {
+        assertNotEquals(key, key(message(Augtrains.join(Augtrains.generate(4, 3, 50, 1, 20, 2)), "1")));
+        assertNotEquals(key, key(message(AUGTRAIN, "7")));
+        assertNotEquals(key, key(message(AUGTRAIN.replace("train 1,20,", "train 1,21,"), "1")));
+    }
+
+    /**
+     * Without a seed a resubmission asks for a new net, not the old one.
+     */
+    @Test
+    public void unseededIsNotCached() throws IOException {
+        TrainingMessage unseeded = message(AUGTRAIN, null);
+        assertFalse(ResultCache.key(unseeded, AlfredWrapper.parseSpec(unseeded)).isPresent());
+    }
+
+    @Test
+    public void warmStartIsNotCached() throws IOException {
+        TrainingMessage warm = message(AUGTRAIN, "1");
+        warm.getMetadata().put(TrainingOptions.WARM_START_KEY, "true");
+        assertFalse(ResultCache.key(warm, AlfredWrapper.parseSpec(warm)).isPresent());
+    }
+
+    @Test
+    public void hitEncodesTheTrainedResult() throws IOException {
+        ResultCache cache = new ResultCache(64L << 20, 60, folder.getRoot().toPath(), 1L << 30, () -> now[0]);
+        assertFalse(cache.get(key).isPresent());
+        cache.put(key, net, augout);
+        assertArrayEquals(trained, encode(cache));
+        assertTrue(cache.getBytes() > 0);
+    }
+
+    /**
+     * A cache smaller than one entry spills each put to disk.
+     */
+    @Test
+    public void spilledHitEncodesTheTrainedResult() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        ResultCache cache = new ResultCache(1, 60, directory, 1L << 30, () -> now[0]);
+        cache.put(key, net, augout);
+        cache.put("other", net, augout);
+        assertArrayEquals(trained, encode(cache));
+
+        // A new cache over the same directory answers from disk too
+        ResultCache restarted = new ResultCache(64L << 20, 60, directory, 1L << 30, () -> now[0]);
+        assertArrayEquals(trained, encode(restarted));
+    }
+
+    @Test
+    public void entriesExpire() {
+        Path directory = folder.getRoot().toPath();
+        ResultCache cache = new ResultCache(64L << 20, 60, directory, 1L << 30, () -> now[0]);
+        ResultCache spilling = new ResultCache(1, 60, directory, 1L << 30, () -> now[0]);
+        cache.put(key, net, augout);
+        spilling.put(key, net, augout);
+        spilling.put("other", net, augout);
+
+        now[0] = 60000;
+        assertTrue(cache.get(key).isPresent());
+        now[0] = 60001;
+        assertFalse(cache.get(key).isPresent());
+        assertFalse(spilling.get(key).isPresent());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void zeroBytesDisablesTheCache() {
+        ResultCache cache = new ResultCache(0, 60, folder.getRoot().toPath(), 1L << 30, () -> now[0]);
+        cache.put(key, net, augout);
+        assertFalse(cache.get(key).isPresent());
+    }
+
+    private static byte[] encode(ResultCache cache) throws IOException {
+        ResultCache.Entry entry = cache.get(key).orElseThrow(() -> new AssertionError("Missed " + key));
+        return codec.encodeResult("net", entry.getAugout(), entry.getTrainingStats(), WireFormat.JSON,
+                Compression.NONE);
+    }
+
+    private static String key(TrainingMessage message) throws IOException {
+        return ResultCache.key(message, AlfredWrapper.parseSpec(message)).get();
+    }
+
+    private static TrainingMessage message(String data, String seed) {
+        TrainingMessage message = new TrainingMessage();
+        message.setNetId("net");
+        message.setData(data);
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(TrainingOptions.PRECISION_KEY, Precision.DOUBLE.name());
+        if (seed != null) {
+            metadata.put(TrainingOptions.SEED_KEY, seed);
+        }
+        message.setMetadata(metadata);
+        message.setTrainingStats(Collections.emptyList());
+        return message;
+    }
+}
@@ -0,0 +1,154 @@
+package com.augurworks.alfred.server;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.augurworks.alfred.Augtrains;
+import com.augurworks.alfred.NetTrainSpecification;
+import com.augurworks.alfred.NetWeights;
+import com.augurworks.alfred.Precision;
+import com.augurworks.alfred.RectNetFixed;
+import com.augurworks.alfred.TrainingOptions;
+import com.augurworks.alfred.messaging.TrainingMessage;
+import com.augurworks.alfred.models.Checkpoint;
+import com.augurworks.alfred.models.CheckpointStore;
+import com.augurworks.alfred.models.DirectoryCheckpointStore;
+import com.augurworks.alfred.models.Model;
+import com.augurworks.alfred.models.ModelStore;
+import com.augurworks.alfred.models.ResultCache;
+import com.augurworks.alfred.stats.TrainingStage;
+import com.augurworks.alfred.util.Hashes;
+
+public class AlfredWrapperTest {
+
+    private static final String AUGTRAIN = Augtrains.join(Augtrains.generate(4, 3, 50, 1, 20, 1));
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void invalidOptionsAreNotTrained() throws IOException {
+        for (String[] option : new String[][] {
+                {TrainingOptions.PRECISION_KEY, "quadruple"},
+                {TrainingOptions.PARALLEL_RESTARTS_KEY, "two"},
+                {TrainingOptions.PARALLEL_RESTARTS_KEY, "0"},
+                {TrainingOptions.SEED_KEY, "1.5"}}) {
+            // Seeded, so a valid job would have a result cache key
+            TrainingMessage message = seeded();
+            message.getMetadata().put(option[0], option[1]);
+            NetTrainSpecification netSpec = AlfredWrapper.parseSpec(message);
+            assertNull(option[0], AlfredWrapper.trainStatic(message, 1000, null));
+            assertFalse(option[0], AlfredWrapper.predictTrainingMillis(message, netSpec).isPresent());
+            assertFalse(option[0], ResultCache.key(message, netSpec).isPresent());
+        }
+    }
+
+    /**
+     * A warm started job stores its model, and the next one for the net
+     * carries on from it like a net given those weights by hand.
+     */
+    @Test
+    public void warmStartCarriesOnFromTheStoredModel() throws IOException, InterruptedException {
+        TrainingMessage message = seeded();
+        message.getMetadata().put(TrainingOptions.WARM_START_KEY, "true");
+        // The default store outlives the test, keep clear of other nets
+        message.setNetId("warm-start-" + UUID.randomUUID());
+
+        RectNetFixed first = AlfredWrapper.trainStatic(message, 0, null);
+        Model stored = ModelStore.getDefault().load(message.getNetId(), 4, 3).get();
+        assertWeightsEqual(first.exportWeights(), stored.getWeights());
+
+        RectNetFixed expected = new RectNetFixed(message.getNetId(), AlfredWrapper.parseSpec(message),
+                TrainingOptions.fromMetadata(message.getMetadata()));
+        expected.importWeights(stored.getWeights());
+        expected.train(0, 1);
+        RectNetFixed second = AlfredWrapper.trainStatic(message, 0, null);
+        assertWeightsEqual(expected.exportWeights(), second.exportWeights());
+        assertWeightsEqual(second.exportWeights(),
+                ModelStore.getDefault().load(message.getNetId(), 4, 3).get().getWeights());
+    }
+
+    @Test
+    public void resumesACheckpointOfTheSameData() throws IOException, InterruptedException {
+        TrainingMessage message = seeded();
+        Checkpoint checkpoint = checkpoint(Hashes.sha256Hex(AUGTRAIN));
+        CheckpointStore store = new DirectoryCheckpointStore(folder.getRoot().toPath());
+        store.save(checkpoint);
+
+        RectNetFixed expected = new RectNetFixed("net", AlfredWrapper.parseSpec(message),
+                TrainingOptions.fromMetadata(message.getMetadata()));
+        expected.resumeFrom(checkpoint);
+        expected.train(0, 1);
+        RectNetFixed net = AlfredWrapper.trainStatic(message, 0, store);
+        assertWeightsEqual(expected.exportWeights(), net.exportWeights());
+        assertEquals(TrainingStage.STARTING, net.getTrainingStats().get(0).getTrainingStage());
+        assertEquals(15, (int) net.getTrainingStats().get(0).getRoundsTrained());
+        assertFalse(store.load("net").isPresent());
+    }
+
+    /**
+     * A checkpoint left by a job on other data is ignored, and replaced as
+     * the net trains from scratch.
+     */
+    @Test
+    public void ignoresACheckpointOfOtherData() throws IOException, InterruptedException {
+        TrainingMessage message = seeded();
+        CheckpointStore store = new DirectoryCheckpointStore(folder.getRoot().toPath());
+        store.save(checkpoint(Hashes.sha256Hex(AUGTRAIN + "\n")));
+
+        RectNetFixed expected = new RectNetFixed("net", AlfredWrapper.parseSpec(message),
+                TrainingOptions.fromMetadata(message.getMetadata()));
+        expected.train(0, 1);
+        RectNetFixed net = AlfredWrapper.trainStatic(message, 0, store);
+        assertWeightsEqual(expected.exportWeights(), net.exportWeights());
+        assertEquals(0, (int) net.getTrainingStats().get(0).getRoundsTrained());
+        assertFalse(store.load("net").isPresent());
+    }
+
+    private static TrainingMessage seeded() {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(TrainingOptions.PRECISION_KEY, Precision.DOUBLE.name());
+        metadata.put(TrainingOptions.SEED_KEY, "1");
+        return message(metadata);
+    }
+
+    /**
+     * Checkpoint of net "net" at round 15, with the weights of another seed.
+     */
+    private static Checkpoint checkpoint(String dataHash) throws IOException {
+        TrainingMessage message = seeded();
+        message.getMetadata().put(TrainingOptions.SEED_KEY, "2");
+        RectNetFixed net = new RectNetFixed("net", AlfredWrapper.parseSpec(message),
+                TrainingOptions.fromMetadata(message.getMetadata()));
+        return new Checkpoint("net", dataHash, 15, BigDecimal.valueOf(-1), net.exportModel(), new ArrayList<>());
+    }
+
+    private static void assertWeightsEqual(NetWeights expected, NetWeights actual) {
+        for (int col = 0; col <= expected.getDepth(); col++) {
+            assertArrayEquals(expected.getBlock(col), actual.getBlock(col), 0);
+        }
+    }
+
+    static TrainingMessage message(Map<String, String> metadata) {
+        TrainingMessage message = new TrainingMessage();
+        message.setNetId("net");
+        message.setData(AUGTRAIN);
+        message.setMetadata(new HashMap<>(metadata));
+        message.setTrainingStats(Collections.emptyList());
+        return message;
+    }
+}
@@ -0,0 +1,159 @@
+package com.augurworks.alfred.stats;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.augurworks.alfred.Augtrains;
+import com.augurworks.alfred.NetTrainSpecification;
+import com.augurworks.alfred.Precision;
+import com.augurworks.alfred.TrainingOptions;
+import com.augurworks.alfred.TrainingStopReason;
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+import com.augurworks.alfred.util.AugtrainParser;
+
+/**
+ * Feeds the estimator stats of tries whose seconds per epoch follow a
+ * known overhead, cost per neuron evaluation and cost per weight update.
+ */
+public class RuntimeEstimatorTest {
+
+    private static final double OVERHEAD = 0.01;
+    private static final double PER_NEURON = 1e-7;
+    private static final double PER_WEIGHT = 1e-8;
+    // Enough epochs that whole seconds barely round the time of a try
+    private static final int EPOCHS = 20000;
+
+    private static final int[][] TRAINED = {
+            {4, 2, 100, 1}, {8, 3, 500, 1}, {16, 3, 200, 2}, {16, 5, 1000, 1}, {32, 3, 300, 1}, {48, 2, 600, 1},
+    };
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final TrainingOptions options = new TrainingOptions.Builder().precision(Precision.DOUBLE).build();
+    private Path file;
+
+    @Before
+    public void createFile() throws IOException {
+        file = folder.getRoot().toPath().resolve("runtime.stats");
+    }
+
+    @Test
+    public void recoversTheCostOfUnseenSizes() throws IOException {
+        RuntimeEstimator estimator = fit();
+        for (int[] size : new int[][] {{12, 4, 700, 1}, {40, 3, 250, 3}}) {
+            NetTrainSpecification netSpec = spec(size);
+            double expected = epochSeconds(size);
+            assertEquals(expected, estimator.predictEpochSeconds(netSpec, options).get(), expected * 0.02);
+            assertEquals(expected * 1000 * netSpec.getNumberFileIterations(),
+                    estimator.predictMillis(netSpec, options).get(), expected * 1000 * 0.02);
+        }
+    }
+
+    @Test
+    public void keepsTheFitAcrossInstances() throws IOException {
+        RuntimeEstimator estimator = fit();
+        NetTrainSpecification netSpec = spec(new int[] {12, 4, 700, 1});
+        assertEquals(estimator.predictEpochSeconds(netSpec, options).get(),
+                new RuntimeEstimator(file).predictEpochSeconds(netSpec, options).get(), 0);
+    }
+
+    @Test
+    public void predictsNothingForOtherOptions() throws IOException {
+        NetTrainSpecification netSpec = spec(TRAINED[0]);
+        assertFalse(new RuntimeEstimator(file).predictEpochSeconds(netSpec, options).isPresent());
+
+        RuntimeEstimator estimator = fit();
+        TrainingOptions other = new TrainingOptions.Builder().precision(Precision.FLOAT).build();
+        assertFalse(estimator.predictEpochSeconds(netSpec, other).isPresent());
+        assertFalse(estimator.predictMillis(netSpec, other).isPresent());
+    }
+
+    @Test
+    public void ignoresTriesUnderASecond() throws IOException {
+        RuntimeEstimator estimator = new RuntimeEstimator(file);
+        NetTrainSpecification netSpec = spec(TRAINED[0]);
+        TrainingStat start = stat(TrainingStage.STARTING, 0, 0);
+        TrainingStat done = stat(TrainingStage.DONE, 100, 0);
+        estimator.observe(netSpec, options, Arrays.asList(start, done));
+        assertFalse(estimator.predictEpochSeconds(netSpec, options).isPresent());
+    }
+
+    /**
+     * Restarts in one list of stats are separate tries, each from its own
+     * start.
+     */
+    @Test
+    public void splitsTriesAtEachStart() throws IOException {
+        RuntimeEstimator separate = new RuntimeEstimator(folder.getRoot().toPath().resolve("separate.stats"));
+        for (int[] size : TRAINED) {
+            List<TrainingStat> tries = new ArrayList<>();
+            for (int restart = 0; restart < 2; restart++) {
+                List<TrainingStat> single = oneTry(size);
+                for (TrainingStat stat : single) {
+                    stat.setRestart(restart);
+                }
+                separate.observe(spec(size), options, single);
+                tries.addAll(single);
+            }
+            new RuntimeEstimator(file).observe(spec(size), options, tries);
+        }
+        NetTrainSpecification netSpec = spec(new int[] {12, 4, 700, 1});
+        assertEquals(separate.predictEpochSeconds(netSpec, options).get(),
+                new RuntimeEstimator(file).predictEpochSeconds(netSpec, options).get(), 1e-9);
+    }
+
+    private RuntimeEstimator fit() throws IOException {
+        RuntimeEstimator estimator = new RuntimeEstimator(file);
+        for (int[] size : TRAINED) {
+            estimator.observe(spec(size), options, oneTry(size));
+        }
+        return estimator;
+    }
+
+    /**
+     * Stats of one try that ran out of time, so its last epoch is not in
+     * the rounds trained.
+     */
+    private static List<TrainingStat> oneTry(int[] size) {
+        TrainingStat start = stat(TrainingStage.STARTING, 0, 0);
+        TrainingStat running = stat(TrainingStage.RUNNING, EPOCHS / 2, (int) (epochSeconds(size) * EPOCHS / 2));
+        TrainingStat done = stat(TrainingStage.DONE, EPOCHS - 1, (int) (epochSeconds(size) * EPOCHS));
+        done.setTrainingStopReason(TrainingStopReason.OUT_OF_TIME);
+        return new ArrayList<>(Arrays.asList(start, running, done));
+    }
+
+    private static TrainingStat stat(TrainingStage stage, int rounds, int seconds) {
+        TrainingStat stat = new TrainingStat("net", 1, 0.1, 0);
+        stat.setTrainingStage(stage);
+        stat.setRoundsTrained(rounds);
+        stat.setSecondsElapsed(seconds);
+        return stat;
+    }
+
+    private static double epochSeconds(int[] size) {
+        double passes = (double) size[2] * (size[3] + 1);
+        double neurons = (double) size[0] * size[1];
+        return OVERHEAD + PER_NEURON * neurons * passes + PER_WEIGHT * neurons * size[0] * passes;
+    }
+
+    /**
+     * Net of side, depth, rows and row iterations.
+     */
+    private static NetTrainSpecification spec(int[] size) throws IOException {
+        String augtrain = Augtrains.join(Augtrains.generate(size[0], size[1], size[2], size[3], 10, 1));
+        return AugtrainParser.parse(augtrain.getBytes(StandardCharsets.UTF_8), ScaleFunctionType.SIGMOID);
+    }
+}
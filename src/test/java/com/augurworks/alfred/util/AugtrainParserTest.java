@@ -0,0 +1,66 @@
+package com.augurworks.alfred.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.Augtrains;
+import com.augurworks.alfred.Dataset;
+import com.augurworks.alfred.NetTrainSpecification;
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
+public class AugtrainParserTest {
+
+    @Test
+    public void readsWhatFileParserReads() {
+        assertSameAsFileParser(Augtrains.generate(16, 3, 500, 2, 100, 1));
+    }
+
+    /**
+     * Values off the fast path, too many digits or a large exponent, must
+     * still come out bit for bit the same.
+     */
+    @Test
+    public void readsUnusualNumbersLikeFileParser() {
+        List<String> lines = Arrays.asList(
+                "net 4,3",
+                "train 1,100,0.1,50,0.0001",
+                "date target inputs",
+                "2016-01-01 12.5 0.12345678901234567,-3,1e-30,1.5E+300",
+                "2016-01-02 -7 123456789012345678,0.1,4.9e-324,+2",
+                "2016-01-03 0.000001 1,2,3,4",
+                "2016-01-04 NULL 0.5,0.25,0.125,1e22");
+        assertSameAsFileParser(lines);
+    }
+
+    private static void assertSameAsFileParser(List<String> lines) {
+        NetTrainSpecification expected = FileParser.parseLines(lines, ScaleFunctionType.SIGMOID);
+        NetTrainSpecification actual = AugtrainParser.parse(Augtrains.join(lines).getBytes(StandardCharsets.UTF_8),
+                ScaleFunctionType.SIGMOID);
+        assertEquals(expected.getSide(), actual.getSide());
+        assertEquals(expected.getDepth(), actual.getDepth());
+        assertEquals(expected.getNumberRowIterations(), actual.getNumberRowIterations());
+        assertEquals(expected.getNumberFileIterations(), actual.getNumberFileIterations());
+        assertEquals(expected.getLearningConstant(), actual.getLearningConstant());
+        assertEquals(expected.getMinTrainingRounds(), actual.getMinTrainingRounds());
+        assertEquals(expected.getPerformanceCutoff(), actual.getPerformanceCutoff());
+        assertSame(expected.getNetData().getTrainDataset(), actual.getNetData().getTrainDataset());
+        assertSame(expected.getNetData().getPredictionDataset(), actual.getNetData().getPredictionDataset());
+    }
+
+    private static void assertSame(Dataset expected, Dataset actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertEquals(expected.getDate(row), actual.getDate(row));
+        }
+        assertArrayEquals(expected.getInputs(), actual.getInputs(), 0);
+        if (expected.hasTargets()) {
+            assertArrayEquals(expected.getTargets(), actual.getTargets(), 0);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.augurworks.alfred.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.Augout;
+
+public class BinaryAugoutTest {
+
+    @Test
+    public void roundTrips() throws IOException {
+        Augout augout = new Augout(
+                new String[] {"2016-01-29", "2016-02-01", "2016-02-02"},
+                new double[] {12.5, -3.25},
+                new double[] {12.4375, -3.1, 7.000001});
+        assertRoundTrip(augout);
+    }
+
+    @Test
+    public void roundTripsEmptyAugout() throws IOException {
+        Augout augout = assertRoundTrip(new Augout(new String[0], new double[0], new double[0]));
+        assertEquals(0, augout.getTrainRows());
+        assertEquals(0, augout.getPredictionRows());
+    }
+
+    /**
+     * Estimates of a diverged net and values with no short decimal form
+     * are written raw, bit for bit.
+     */
+    @Test
+    public void keepsNaNAndExtremeValues() throws IOException {
+        Augout augout = assertRoundTrip(new Augout(
+                new String[] {"row 1", "row 2", "row 3", "row 4"},
+                new double[] {Double.MAX_VALUE, -0.0, Double.MIN_VALUE},
+                new double[] {Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 1e-300}));
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(augout.getTargets()[1]));
+    }
+
+    @Test
+    public void truncatedInputThrowsIOException() {
+        byte[] binary = BinaryAugout.encode(new Augout(
+                new String[] {"2016-01-29", "2016-02-01", "2016-02-02"},
+                new double[] {12.5, Math.PI},
+                new double[] {12.4375, -3.1, 7.000001}));
+        for (int length = 0; length < binary.length; length++) {
+            try {
+                BinaryAugout.decode(Arrays.copyOf(binary, length));
+                fail("Decoded " + length + " of " + binary.length + " bytes");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    private static Augout assertRoundTrip(Augout expected) throws IOException {
+        Augout actual = BinaryAugout.decode(BinaryAugout.encode(expected));
+        assertArrayEquals(expected.getDates(), actual.getDates());
+        assertArrayEquals(expected.getTargets(), actual.getTargets(), 0);
+        assertArrayEquals(expected.getEstimates(), actual.getEstimates(), 0);
+        assertEquals(expected.toText(), actual.toText());
+        return actual;
+    }
+}
@@ -0,0 +1,100 @@
+package com.augurworks.alfred.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.Augtrains;
+import com.augurworks.alfred.Dataset;
+import com.augurworks.alfred.NetTrainSpecification;
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
+public class BinaryAugtrainTest {
+
+    @Test
+    public void decodesToTheParsedSpec() throws IOException {
+        assertRoundTrip(Augtrains.generate(16, 3, 500, 2, 100, 1));
+    }
+
+    /**
+     * ISO dates go through the epoch day column, and a file may have no
+     * prediction rows.
+     */
+    @Test
+    public void keepsIsoDatesWithoutPredictionRows() throws IOException {
+        NetTrainSpecification spec = assertRoundTrip(Arrays.asList(
+                "net 2,3",
+                "train 1,100,0.1,50,0.0001",
+                "date target inputs",
+                "2016-01-29 1.25 0.5,1",
+                "2016-02-01 2.5 -0.25,3"));
+        assertEquals(0, spec.getNetData().getPredictionDataset().size());
+    }
+
+    /**
+     * Inputs that have no short decimal form are written raw, bit for bit.
+     */
+    @Test
+    public void keepsNaNAndExtremeInputs() throws IOException {
+        NetTrainSpecification spec = assertRoundTrip(Arrays.asList(
+                "net 4,3",
+                "train 1,100,0.1,50,0.0001",
+                "date target inputs",
+                "2016-01-01 12.5 NaN,Infinity,-Infinity,-0.0",
+                "2016-01-02 -7 1.7976931348623157E308,4.9e-324,-2.2250738585072014E-308,0.1",
+                "2016-01-03 NULL NaN,1e22,-1e-300,0"));
+        double[] inputs = spec.getNetData().getTrainDataset().getInputs();
+        assertEquals(Double.doubleToRawLongBits(-0.0), Double.doubleToRawLongBits(inputs[3]));
+        assertEquals(Double.MIN_VALUE, inputs[5], 0);
+    }
+
+    @Test
+    public void truncatedInputThrowsIOException() {
+        byte[] binary = BinaryAugtrain.encode(Augtrains.join(Augtrains.generate(3, 3, 20, 1, 10, 1))
+                .getBytes(StandardCharsets.UTF_8));
+        for (int length = 0; length < binary.length; length++) {
+            try {
+                BinaryAugtrain.decode(Arrays.copyOf(binary, length), ScaleFunctionType.SIGMOID);
+                fail("Decoded " + length + " of " + binary.length + " bytes");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    private static NetTrainSpecification assertRoundTrip(List<String> lines) throws IOException {
+        byte[] augtrain = Augtrains.join(lines).getBytes(StandardCharsets.UTF_8);
+        NetTrainSpecification expected = AugtrainParser.parse(augtrain, ScaleFunctionType.SIGMOID);
+        NetTrainSpecification actual = BinaryAugtrain.decode(BinaryAugtrain.encode(augtrain),
+                ScaleFunctionType.SIGMOID);
+        assertEquals(expected.getSide(), actual.getSide());
+        assertEquals(expected.getDepth(), actual.getDepth());
+        assertEquals(expected.getNumberRowIterations(), actual.getNumberRowIterations());
+        assertEquals(expected.getNumberFileIterations(), actual.getNumberFileIterations());
+        assertEquals(expected.getLearningConstant(), actual.getLearningConstant());
+        assertEquals(expected.getMinTrainingRounds(), actual.getMinTrainingRounds());
+        assertEquals(expected.getPerformanceCutoff(), actual.getPerformanceCutoff());
+        assertEquals(expected.getBatchSize(), actual.getBatchSize());
+        assertSame(expected.getNetData().getTrainDataset(), actual.getNetData().getTrainDataset());
+        assertSame(expected.getNetData().getPredictionDataset(), actual.getNetData().getPredictionDataset());
+        return actual;
+    }
+
+    private static void assertSame(Dataset expected, Dataset actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int row = 0; row < expected.size(); row++) {
+            assertEquals(expected.getDate(row), actual.getDate(row));
+        }
+        assertArrayEquals(expected.getInputs(), actual.getInputs(), 0);
+        if (expected.hasTargets()) {
+            assertArrayEquals(expected.getTargets(), actual.getTargets(), 0);
+        }
+    }
+}
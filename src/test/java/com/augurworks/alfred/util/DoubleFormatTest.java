@@ -0,0 +1,91 @@
+package com.augurworks.alfred.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class DoubleFormatTest {
+
+    private static final int RANDOM_VALUES = 300_000;
+    // Before Java 19 Double.toString may write more digits than it needs
+    // (JDK-4511638), where DoubleFormat writes the shortest.
+    private static final boolean SHORTEST_TO_STRING = javaVersion() >= 19;
+
+    @Test
+    public void edgeValues() {
+        List<Double> values = new ArrayList<>();
+        double[] edges = {0.0, Double.MIN_VALUE, Double.MIN_NORMAL, Math.nextDown(Double.MIN_NORMAL),
+                Double.MAX_VALUE, Double.NaN, Double.POSITIVE_INFINITY, 1e-3, 1e7, 0.1, 0.2, 0.3, 1.0 / 3,
+                2.0 / 3, 100.0 / 3, 9999999.999999998, 0.0010000000000000002, 123456.789, 4.35, 0.07, 1e23,
+                5e-324, 2.2250738585072014E-308};
+        for (double edge : edges) {
+            values.add(edge);
+            values.add(Math.nextUp(edge));
+            values.add(Math.nextDown(edge));
+        }
+        for (int exponent = -325; exponent <= 308; exponent++) {
+            double power = Double.parseDouble("1e" + exponent);
+            values.add(power);
+            values.add(Math.nextUp(power));
+            values.add(Math.nextDown(power));
+        }
+        for (int exponent = -1074; exponent <= 1023; exponent++) {
+            double power = Math.scalb(1.0, exponent);
+            values.add(power);
+            values.add(Math.nextUp(power));
+            values.add(Math.nextDown(power));
+        }
+        for (long digits = 1; digits < 10_000; digits++) {
+            values.add(digits / 1000.0);
+            values.add(digits * 1000.0);
+        }
+        for (double value : values) {
+            assertFormats(value);
+            assertFormats(-value);
+        }
+    }
+
+    @Test
+    public void randomBits() {
+        Random random = new Random(1);
+        for (int i = 0; i < RANDOM_VALUES; i++) {
+            assertFormats(Double.longBitsToDouble(random.nextLong()));
+        }
+    }
+
+    /**
+     * Random bits rarely land in the fast path's range, so also draw values
+     * spread evenly over its exponents.
+     */
+    @Test
+    public void randomFastPathValues() {
+        Random random = new Random(1);
+        for (int i = 0; i < RANDOM_VALUES; i++) {
+            assertFormats(random.nextDouble() * Math.pow(10, random.nextInt(10) - 3));
+        }
+    }
+
+    private static void assertFormats(double value) {
+        byte[] out = new byte[DoubleFormat.MAX_LENGTH];
+        int length = DoubleFormat.write(value, out, 0);
+        String text = new String(out, 0, length, StandardCharsets.US_ASCII);
+        String expected = Double.toString(value);
+        if (!text.equals(expected)) {
+            assertTrue("Wrote " + text + " for " + expected,
+                    !SHORTEST_TO_STRING && text.length() < expected.length());
+        }
+        // Tells -0.0 from 0.0, and every NaN from anything else
+        assertEquals(Double.doubleToLongBits(value), Double.doubleToLongBits(Double.parseDouble(text)));
+    }
+
+    private static int javaVersion() {
+        String version = System.getProperty("java.specification.version");
+        return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+    }
+}
@@ -0,0 +1,84 @@
+package com.augurworks.alfred.util;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.augurworks.alfred.Activation;
+import com.augurworks.alfred.Augtrains;
+import com.augurworks.alfred.FrozenNet;
+import com.augurworks.alfred.NetWeights;
+import com.augurworks.alfred.Precision;
+import com.augurworks.alfred.RectNetFixed;
+import com.augurworks.alfred.TrainingOptions;
+import com.augurworks.alfred.models.Model;
+import com.augurworks.alfred.scaling.ScaleFunctions.ScaleFunctionType;
+
+public class FastSigmoidTest {
+
+    @Test
+    public void withinMaxError() {
+        for (double x = -20; x <= 20; x += 1e-4) {
+            double exact = 1.0 / (1.0 + Math.exp(-RectNetFixed.SIGMOID_ALPHA * x));
+            double error = Math.abs(FastSigmoid.sigmoid(x) - exact);
+            assertTrue("Error " + error + " at " + x, error < FastSigmoid.MAX_ERROR);
+        }
+    }
+
+    /**
+     * Runs the weights of one trained net under both activations. The
+     * normalized outputs must agree within what MAX_ERROR per activation
+     * adds up to through the layers of the exact net.
+     */
+    @Test
+    public void netsAgree() throws InterruptedException {
+        RectNetFixed net = train();
+        Model model = net.exportModel();
+        FrozenNet exact = FrozenNet.of(new Model(model.getWeights(), Activation.SIGMOID, model.getScaleFunction()));
+        FrozenNet fast = FrozenNet.of(
+                new Model(model.getWeights(), Activation.FAST_SIGMOID, model.getScaleFunction()));
+        double[] inputs = net.getNetSpec().getNetData().getTrainDataset().getInputs();
+        double[] exactOutputs = exact.predictRows(inputs);
+        double[] fastOutputs = fast.predictRows(inputs);
+        double bound = errorBound(model);
+        for (int i = 0; i < exactOutputs.length; i++) {
+            double error = Math.abs(exactOutputs[i] - fastOutputs[i]);
+            assertTrue("Row " + i + " differs by " + error + ", bound " + bound, error <= bound);
+        }
+    }
+
+    private static RectNetFixed train() throws InterruptedException {
+        TrainingOptions options = new TrainingOptions.Builder()
+                .precision(Precision.DOUBLE)
+                .seed(1L)
+                .build();
+        RectNetFixed net = new RectNetFixed("net", Augtrains.generate(8, 3, 200, 1, 20, 1),
+                ScaleFunctionType.SIGMOID, options);
+        return net.train(0, 1);
+    }
+
+    /**
+     * An error e in each input of a neuron moves its output by at most
+     * alpha / 4 * sum |w| * e, alpha / 4 being the steepest the sigmoid
+     * gets, and the table adds MAX_ERROR on top.
+     */
+    private static double errorBound(Model model) {
+        NetWeights weights = model.getWeights();
+        int side = weights.getSide();
+        double error = FastSigmoid.MAX_ERROR;
+        for (int col = 1; col <= weights.getDepth(); col++) {
+            double[] block = weights.getBlock(col);
+            int rows = col == weights.getDepth() ? 1 : side;
+            double maxWeights = 0;
+            for (int j = 0; j < rows; j++) {
+                double sum = 0;
+                for (int k = 0; k < side; k++) {
+                    sum += Math.abs(block[j * side + k]);
+                }
+                maxWeights = Math.max(maxWeights, sum);
+            }
+            error = FastSigmoid.MAX_ERROR + RectNetFixed.SIGMOID_ALPHA / 4 * maxWeights * error;
+        }
+        return error;
+    }
+}